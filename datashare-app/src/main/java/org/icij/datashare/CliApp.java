@@ -1,9 +1,13 @@
 package org.icij.datashare;
 
+import com.google.inject.Key;
+import com.google.inject.name.Names;
 import org.icij.datashare.cli.CliExtensionService;
 import org.icij.datashare.cli.DatashareCli;
 import org.icij.datashare.cli.DatashareCliOptions;
 import org.icij.datashare.cli.spi.CliExtension;
+import org.icij.datashare.com.Publisher;
+import org.icij.datashare.com.bus.AsyncBatchPublisher;
 import org.icij.datashare.extension.PipelineRegistry;
 import org.icij.datashare.extract.RedisUserDocumentQueue;
 import org.icij.datashare.mode.CommonMode;
@@ -12,6 +16,7 @@ import org.icij.datashare.tasks.TaskManagerMemory;
 import org.icij.datashare.tasks.TaskView;
 import org.icij.datashare.text.Document;
 import org.icij.datashare.text.indexing.Indexer;
+import org.icij.datashare.text.indexing.elasticsearch.ElasticsearchSpewer;
 import org.icij.datashare.text.nlp.Pipeline;
 import org.icij.extract.queue.DocumentQueue;
 import org.slf4j.Logger;
@@ -143,6 +148,10 @@ class CliApp {
             }
         }
         taskManager.shutdownAndAwaitTermination(Integer.MAX_VALUE, SECONDS);
+        Publisher nlpPublisher = mode.get(Key.get(Publisher.class, Names.named(ElasticsearchSpewer.NLP_PUBLISHER)));
+        if (nlpPublisher instanceof AsyncBatchPublisher) {
+            closeAndLogException((AsyncBatchPublisher) nlpPublisher).run();
+        }
         indexer.close();
     }
 
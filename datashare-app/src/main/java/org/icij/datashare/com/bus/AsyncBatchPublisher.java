@@ -0,0 +1,178 @@
+package org.icij.datashare.com.bus;
+
+import org.icij.datashare.com.Channel;
+import org.icij.datashare.com.Message;
+import org.icij.datashare.com.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+import static org.icij.datashare.com.Message.Type.SHUTDOWN;
+
+/**
+ * Publisher that buffers messages in a lock-free queue and publishes them from a dedicated thread
+ * by batches, when the batch size is reached or when the first message of the batch is older than the flush interval.
+ *
+ * Messages are published in the order they were received. Publishing a SHUTDOWN message
+ * waits for it (and all the messages before it) to be published.
+ *
+ * The errors of the batches are thrown to the next caller waiting for its messages to be published
+ * (with {@link #flush()} or a SHUTDOWN message).
+ */
+public class AsyncBatchPublisher implements Publisher, Flushable, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncBatchPublisher.class);
+    private final BiConsumer<Channel, List<Message>> batchPublisher;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final Thread publisherThread;
+    private volatile boolean running = true;
+    private RuntimeException failure; // only used by the publisher thread
+
+    public AsyncBatchPublisher(BiConsumer<Channel, List<Message>> batchPublisher, int batchSize, long flushIntervalMillis) {
+        this.batchPublisher = batchPublisher;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.publisherThread = new Thread(this::publishLoop, "async-batch-publisher");
+        this.publisherThread.setDaemon(true);
+        this.publisherThread.start();
+    }
+
+    @Override
+    public void publish(Channel channel, Message message) {
+        if (message.type == SHUTDOWN) {
+            await(enqueue(new Entry(channel, message, new CountDownLatch(1))));
+        } else {
+            enqueue(new Entry(channel, message, null));
+        }
+    }
+
+    /**
+     * waits for all the messages published before the call to be sent
+     */
+    @Override
+    public void flush() {
+        await(enqueue(new Entry(null, null, new CountDownLatch(1))));
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            running = false;
+            LockSupport.unpark(publisherThread);
+            try {
+                publisherThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Entry enqueue(Entry entry) {
+        if (!running) {
+            throw new IllegalStateException("publisher is closed");
+        }
+        queue.offer(entry);
+        if (entry.latch != null) {
+            LockSupport.unpark(publisherThread);
+        }
+        return entry;
+    }
+
+    private void await(Entry entry) {
+        try {
+            entry.latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (entry.failure != null) {
+            throw new IllegalStateException("cannot publish messages", entry.failure);
+        }
+    }
+
+    private void publishLoop() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        long batchStart = 0;
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            Entry entry = queue.poll();
+            if (entry != null) {
+                if (batch.isEmpty()) {
+                    batchStart = System.nanoTime();
+                }
+                batch.add(entry);
+                if (batch.size() >= batchSize || entry.latch != null) {
+                    publishBatch(batch);
+                }
+            } else if (!batch.isEmpty() && (!running || System.nanoTime() - batchStart >= flushIntervalNanos)) {
+                publishBatch(batch);
+            } else if (running) {
+                LockSupport.parkNanos(this, batch.isEmpty() ? flushIntervalNanos : flushIntervalNanos - (System.nanoTime() - batchStart));
+            }
+        }
+    }
+
+    private void publishBatch(List<Entry> batch) {
+        int start = 0;
+        for (int i = 1; i <= batch.size(); i++) {
+            if (i == batch.size() || batch.get(i).channel != batch.get(start).channel) {
+                publishChannelBatch(batch.subList(start, i));
+                start = i;
+            }
+        }
+        // a waiting entry is always the last one of its batch
+        Entry last = batch.get(batch.size() - 1);
+        if (last.latch != null) {
+            last.failure = failure;
+            failure = null;
+            last.latch.countDown();
+        }
+        batch.clear();
+    }
+
+    private void publishChannelBatch(List<Entry> sameChannelBatch) {
+        Channel channel = sameChannelBatch.get(0).channel;
+        if (channel == null) { // flush markers
+            return;
+        }
+        List<Message> messages = new ArrayList<>(sameChannelBatch.size());
+        for (Entry entry : sameChannelBatch) {
+            messages.add(entry.message);
+        }
+        try {
+            batchPublisher.accept(channel, messages);
+        } catch (RuntimeException e) {
+            logger.error("cannot publish {} message(s) to {}", messages.size(), channel, e);
+            if (failure == null) {
+                failure = e;
+            } else {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    private static class Entry {
+        final Channel channel;
+        final Message message;
+        final CountDownLatch latch;
+        volatile RuntimeException failure;
+
+        Entry(Channel channel, Message message, CountDownLatch latch) {
+            this.channel = channel;
+            this.message = message;
+            this.latch = latch;
+        }
+    }
+}
@@ -12,12 +12,14 @@ import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.exceptions.JedisException;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -73,6 +75,14 @@ public class RedisDataBus implements Publisher, DataBus, Closeable {
         }
     }
 
+    public void publish(Channel channel, List<Message> messages) {
+        try (Jedis jedis = redis.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            messages.forEach(message -> pipeline.publish(channel.name(), message.toJson()));
+            pipeline.sync();
+        }
+    }
+
     @Override
     public void close() {
         this.redis.close();
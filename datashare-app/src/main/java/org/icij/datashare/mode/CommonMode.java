@@ -4,9 +4,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.google.inject.Key;
 import com.google.inject.Module;
 import com.google.inject.TypeLiteral;
 import com.google.inject.assistedinject.FactoryModuleBuilder;
+import com.google.inject.name.Names;
 import net.codestory.http.Configuration;
 import net.codestory.http.annotations.Get;
 import net.codestory.http.annotations.Prefix;
@@ -25,6 +27,7 @@ import org.icij.datashare.cli.QueueType;
 import org.icij.datashare.com.DataBus;
 import org.icij.datashare.com.MemoryDataBus;
 import org.icij.datashare.com.Publisher;
+import org.icij.datashare.com.bus.AsyncBatchPublisher;
 import org.icij.datashare.com.bus.RedisDataBus;
 import org.icij.datashare.db.RepositoryFactoryImpl;
 import org.icij.datashare.extension.ExtensionLoader;
@@ -39,6 +42,7 @@ import org.icij.datashare.tasks.*;
 import org.icij.datashare.text.indexing.Indexer;
 import org.icij.datashare.text.indexing.LanguageGuesser;
 import org.icij.datashare.text.indexing.elasticsearch.ElasticsearchIndexer;
+import org.icij.datashare.text.indexing.elasticsearch.ElasticsearchSpewer;
 import org.icij.datashare.text.nlp.Pipeline;
 import org.icij.datashare.user.ApiKeyRepository;
 import org.icij.datashare.web.OpenApiResource;
@@ -110,6 +114,7 @@ public abstract class CommonMode extends AbstractModule {
 
     public Mode getMode() {return mode;}
     public <T> T get(Class<T> type) {return injector.getInstance(type);}
+    public <T> T get(Key<T> key) {return injector.getInstance(key);}
     public Injector createChildInjector(Module... modules) {
         return injector.createChildInjector(modules);
     }
@@ -134,7 +139,8 @@ public abstract class CommonMode extends AbstractModule {
 
         RestHighLevelClient esClient = createESClient(propertiesProvider);
         bind(RestHighLevelClient.class).toInstance(esClient);
-        bind(Indexer.class).to(ElasticsearchIndexer.class).asEagerSingleton();
+        bind(ElasticsearchIndexer.class).asEagerSingleton();
+        bind(Indexer.class).to(ElasticsearchIndexer.class);
 
         bind(TesseractOCRParserWrapper.class).toInstance(new TesseractOCRParserWrapper());
 
@@ -151,9 +157,15 @@ public abstract class CommonMode extends AbstractModule {
             MemoryDataBus memoryDataBus = new MemoryDataBus();
             bind(DataBus.class).toInstance(memoryDataBus);
             bind(Publisher.class).toInstance(memoryDataBus);
+            bind(Publisher.class).annotatedWith(Names.named(ElasticsearchSpewer.NLP_PUBLISHER)).toInstance(memoryDataBus);
         } else {
-            bind(DataBus.class).to(RedisDataBus.class).asEagerSingleton();
-            bind(Publisher.class).to(RedisDataBus.class).asEagerSingleton();
+            RedisDataBus redisDataBus = new RedisDataBus(propertiesProvider);
+            bind(DataBus.class).toInstance(redisDataBus);
+            bind(Publisher.class).toInstance(redisDataBus);
+            // the EXTRACT_NLP messages of the spewer are sent by batches
+            bind(Publisher.class).annotatedWith(Names.named(ElasticsearchSpewer.NLP_PUBLISHER)).toInstance(new AsyncBatchPublisher(redisDataBus::publish,
+                    propertiesProvider.get("busPublishBatchSize").map(Integer::parseInt).orElse(100),
+                    propertiesProvider.get("busPublishIntervalMilliseconds").map(Long::parseLong).orElse(10L)));
         }
     }
 
@@ -189,7 +201,7 @@ public abstract class CommonMode extends AbstractModule {
             logger.info("extensions dir not found " + e.getMessage());
         }
         bind(PipelineRegistry.class).toInstance(pipelineRegistry);
-        bind(LanguageGuesser.class).to(OptimaizeLanguageGuesser.class);
+        bind(LanguageGuesser.class).to(OptimaizeLanguageGuesser.class).asEagerSingleton();
     }
 
     public Properties properties() {
@@ -0,0 +1,139 @@
+package org.icij.datashare.nlp;
+
+import org.icij.datashare.text.NamedEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Splits the content of large documents into chunks for the NLP pipelines.
+ *
+ * A chunk ends at the last end of sentence (or else the last whitespace) of its second half, and starts
+ * <code>overlap</code> chars before the end of the previous one, so that the named entities cut by a
+ * chunk boundary are found whole in one of the chunks. Each chunk owns the half of the overlaps it shares
+ * with its neighbours: the named entities found in the overlap are only kept by the chunk owning their offset.
+ */
+public class ContentChunker {
+    private final int maxLength;
+    private final int overlap;
+
+    /**
+     * @param maxLength maximum length of a chunk in chars
+     * @param overlap number of chars shared by two consecutive chunks (at most a quarter of <code>maxLength</code>)
+     */
+    public ContentChunker(int maxLength, int overlap) {
+        this.maxLength = maxLength;
+        this.overlap = Math.max(0, Math.min(overlap, maxLength / 4));
+    }
+
+    public boolean needsChunks(String content) {
+        return content.length() >= maxLength;
+    }
+
+    List<Chunk> split(String content) {
+        int length = content.length();
+        if (length <= maxLength) {
+            return singletonList(new Chunk(0, length, 0, length));
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        int start = 0;
+        int ownStart = 0;
+        while (start + maxLength < length) {
+            int end = boundary(content, start + Math.max(maxLength / 2, 1), start + maxLength);
+            int next = overlap == 0 ? end : wordStart(content, Math.max(end - 2 * overlap, start + 1), end - overlap, end);
+            int ownEnd = (next + end) / 2;
+            chunks.add(new Chunk(start, end, ownStart, ownEnd));
+            start = next;
+            ownStart = ownEnd;
+        }
+        chunks.add(new Chunk(start, length, ownStart, length));
+        return chunks;
+    }
+
+    /**
+     * @return the position after the last end of sentence between min and max, or else after the last whitespace, or else max
+     */
+    static int boundary(String content, int min, int max) {
+        for (int i = max; i >= min; i--) {
+            char previous = content.charAt(i - 1);
+            if (previous == '\n' || (isEndOfSentence(previous) && Character.isWhitespace(content.charAt(i)))) {
+                return i;
+            }
+        }
+        for (int i = max; i >= min; i--) {
+            if (Character.isWhitespace(content.charAt(i - 1))) {
+                return i;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return the first start of word between from and to, or else the last one between min and from, or else from
+     */
+    private static int wordStart(String content, int min, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (Character.isWhitespace(content.charAt(i - 1))) {
+                return i;
+            }
+        }
+        for (int i = from - 1; i >= min; i--) {
+            if (Character.isWhitespace(content.charAt(i - 1))) {
+                return i;
+            }
+        }
+        return from;
+    }
+
+    private static boolean isEndOfSentence(char c) {
+        return c == '.' || c == '!' || c == '?';
+    }
+
+    static class Chunk {
+        final int start;
+        final int end;
+        final int ownStart;
+        final int ownEnd;
+
+        Chunk(int start, int end, int ownStart, int ownEnd) {
+            this.start = start;
+            this.end = end;
+            this.ownStart = ownStart;
+            this.ownEnd = ownEnd;
+        }
+
+        int length() {
+            return end - start;
+        }
+
+        /**
+         * @return the named entities with the offsets owned by this chunk. The entities without offset in the content
+         * (like the ones of the metadata) are owned by the first chunk.
+         */
+        List<NamedEntity> ownEntities(List<NamedEntity> namedEntities) {
+            List<NamedEntity> owned = new ArrayList<>(namedEntities.size());
+            for (NamedEntity ne : namedEntities) {
+                List<Long> offsets = ne.getOffsets().stream().filter(this::owns).collect(toList());
+                if (offsets.size() == ne.getOffsets().size()) {
+                    owned.add(ne);
+                } else if (!offsets.isEmpty()) {
+                    owned.add(NamedEntity.create(ne.getCategory(), ne.getMention(), offsets, ne.getDocumentId(),
+                            ne.getRootDocument(), ne.getExtractor(), ne.getExtractorLanguage()));
+                }
+            }
+            return owned;
+        }
+
+        private boolean owns(Long offset) {
+            return offset < 0 ? ownStart == 0 : offset >= ownStart && offset < ownEnd;
+        }
+
+        @Override
+        public String toString() {
+            return "Chunk{" + start + "-" + end + ", owns " + ownStart + "-" + ownEnd + "}";
+        }
+    }
+}
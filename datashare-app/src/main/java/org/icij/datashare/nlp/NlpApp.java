@@ -5,12 +5,16 @@ import com.google.inject.AbstractModule;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import com.google.inject.assistedinject.FactoryModuleBuilder;
+import org.icij.datashare.HumanReadableSize;
 import org.icij.datashare.PropertiesProvider;
 import org.icij.datashare.com.DataBus;
 import org.icij.datashare.com.Message;
 import org.icij.datashare.com.ShutdownMessage;
 import org.icij.datashare.monitoring.Monitorable;
+import org.icij.datashare.text.Language;
 import org.icij.datashare.text.indexing.Indexer;
+import org.icij.datashare.text.indexing.elasticsearch.ElasticsearchIndexer;
+import org.icij.datashare.text.indexing.elasticsearch.NamedEntityBulkBuffer;
 import org.icij.datashare.text.nlp.AbstractPipeline;
 import org.icij.datashare.text.nlp.Pipeline;
 import org.icij.datashare.user.User;
@@ -18,19 +22,33 @@ import org.icij.datashare.user.UserTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 
 import static java.lang.Integer.parseInt;
 import static java.lang.Integer.toHexString;
+import static java.lang.Long.parseLong;
+import static java.util.Arrays.stream;
+import static java.util.Collections.emptyList;
 import static java.util.Optional.ofNullable;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Stream.generate;
+import static org.icij.datashare.cli.DatashareCliOptions.NLP_BATCH_LINGER_OPT;
+import static org.icij.datashare.cli.DatashareCliOptions.NLP_BATCH_SIZE_OPT;
+import static org.icij.datashare.cli.DatashareCliOptions.NLP_BULK_ACTIONS_OPT;
+import static org.icij.datashare.cli.DatashareCliOptions.NLP_BULK_CONCURRENT_REQUESTS_OPT;
+import static org.icij.datashare.cli.DatashareCliOptions.NLP_BULK_FLUSH_INTERVAL_OPT;
+import static org.icij.datashare.cli.DatashareCliOptions.NLP_BULK_SIZE_OPT;
+import static org.icij.datashare.cli.DatashareCliOptions.NLP_CHUNK_OVERLAP_OPT;
 import static org.icij.datashare.cli.DatashareCliOptions.NLP_PARALLELISM_OPT;
+import static org.icij.datashare.cli.DatashareCliOptions.NLP_PRELOAD_LANGUAGES_OPT;
 
 public class NlpApp implements Runnable, Monitorable, UserTask {
     private static final long DEFAULT_TIMEOUT_MILLIS = 30 * 60 * 1000;
@@ -43,6 +61,13 @@ public class NlpApp implements Runnable, Monitorable, UserTask {
     private final int parallelism;
     private final NlpForwarder forwarder;
     private final User user;
+    private final NamedEntityBulkBuffer bulkBuffer;
+    private final int batchSize;
+    private final long batchLingerMillis;
+    private final int chunkOverlap;
+    private final ForkJoinPool chunkPool;
+    private final Semaphore nlpPermits;
+    private final List<Language> preloadLanguages;
     private ExecutorService threadPool = null;
 
     @AssistedInject
@@ -67,23 +92,66 @@ public class NlpApp implements Runnable, Monitorable, UserTask {
 
         parallelism = parseInt(ofNullable(properties.getProperty(NLP_PARALLELISM_OPT)).orElse("1"));
         forwarder = new NlpForwarder(dataBus, queue, subscribedCb);
+        bulkBuffer = createBulkBuffer(indexer, properties);
+        batchSize = parseInt(ofNullable(properties.getProperty(NLP_BATCH_SIZE_OPT)).orElse(String.valueOf(NlpConsumer.DEFAULT_BATCH_SIZE)));
+        chunkOverlap = parseInt(ofNullable(properties.getProperty(NLP_CHUNK_OVERLAP_OPT)).orElse(String.valueOf(NlpConsumer.DEFAULT_CHUNK_OVERLAP)));
+        chunkPool = new ForkJoinPool(parallelism);
+        nlpPermits = new Semaphore(parallelism);
+        preloadLanguages = ofNullable(properties.getProperty(NLP_PRELOAD_LANGUAGES_OPT)).map(languages -> stream(languages.split(","))
+                .map(String::trim).filter(language -> !language.isEmpty()).map(Language::parse).collect(toList())).orElse(emptyList());
+        batchLingerMillis = parseLong(ofNullable(properties.getProperty(NLP_BATCH_LINGER_OPT)).orElse(String.valueOf(NlpConsumer.DEFAULT_BATCH_LINGER_MILLIS)));
+    }
+
+    /**
+     * the consumers share a buffer to write the named entities of several documents by bulks,
+     * unless nlpBulkActions is 0 or the indexer is not an elasticsearch indexer.
+     */
+    private static NamedEntityBulkBuffer createBulkBuffer(Indexer indexer, Properties properties) {
+        int bulkActions = parseInt(ofNullable(properties.getProperty(NLP_BULK_ACTIONS_OPT)).orElse("1000"));
+        if (!(indexer instanceof ElasticsearchIndexer) || bulkActions <= 0) {
+            return null;
+        }
+        return new NamedEntityBulkBuffer((ElasticsearchIndexer) indexer, bulkActions,
+                HumanReadableSize.parse(ofNullable(properties.getProperty(NLP_BULK_SIZE_OPT)).orElse("5M")),
+                parseLong(ofNullable(properties.getProperty(NLP_BULK_FLUSH_INTERVAL_OPT)).orElse("1000")),
+                parseInt(ofNullable(properties.getProperty(NLP_BULK_CONCURRENT_REQUESTS_OPT)).orElse("2")));
     }
 
     public void run() {
         try {
             logger.info("running NlpApp for {} pipeline with {} thread(s)", pipeline.getType(), parallelism);
+            preloadModels();
             this.threadPool = Executors.newFixedThreadPool(parallelism,
                     new ThreadFactoryBuilder().setNameFormat(pipeline.getType().name() + "-%d").build());
-            generate(() -> new NlpConsumer(pipeline, indexer, queue)).limit(parallelism).forEach(l -> threadPool.submit(l));
+            generate(() -> new NlpConsumer(pipeline, indexer, queue, bulkBuffer, batchSize, batchLingerMillis, chunkOverlap, chunkPool, nlpPermits))
+                    .limit(parallelism).forEach(l -> threadPool.submit(l));
             forwarder.call();
             logger.info("forwarder exited waiting for consumer(s) to finish");
             shutdown();
         } catch (Throwable throwable) {
             logger.error("error running NlpApp", throwable);
+        } finally {
+            chunkPool.shutdown();
+            if (bulkBuffer != null) {
+                bulkBuffer.close();
+            }
         }
         logger.info("exiting run");
     }
 
+    /**
+     * loads the models of the languages given by nlpPreloadLanguages before the first documents arrive.
+     * The pipelines that don't cache their models keep them in their pool after terminate.
+     */
+    private void preloadModels() throws InterruptedException {
+        for (Language language : preloadLanguages) {
+            logger.info("preloading {} models for {}", pipeline.getType(), language);
+            if (pipeline.initialize(language)) {
+                pipeline.terminate(language);
+            }
+        }
+    }
+
     private void shutdown() throws InterruptedException {
         waitForQueueToBeEmpty();
         threadPool.shutdown();
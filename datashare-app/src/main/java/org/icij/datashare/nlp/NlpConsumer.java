@@ -5,39 +5,115 @@ import org.icij.datashare.com.Message;
 import org.icij.datashare.text.Document;
 import org.icij.datashare.text.NamedEntity;
 import org.icij.datashare.text.indexing.Indexer;
+import org.icij.datashare.text.indexing.elasticsearch.AsyncIndexer;
+import org.icij.datashare.text.indexing.elasticsearch.ElasticsearchIndexer;
+import org.icij.datashare.text.indexing.elasticsearch.NamedEntityBulkBuffer;
 import org.icij.datashare.text.nlp.DatashareListener;
 import org.icij.datashare.text.nlp.Pipeline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
+import static java.util.stream.Collectors.toList;
+
 import static org.icij.datashare.com.Message.Field.*;
 
+/**
+ * Extracts the named entities of the documents sent by the {@link NlpForwarder}.
+ *
+ * The consumer polls the EXTRACT_NLP messages by batches of <code>batchSize</code> (waiting at most
+ * <code>batchLingerMillis</code> for the batch to fill up) and fetches the documents of a batch with
+ * one multi get by project, instead of one get by document.
+ *
+ * The content of large documents is split by a {@link ContentChunker}. The chunks of a document can be
+ * processed in parallel by a pool shared by the consumers; their named entities are written in order,
+ * and the last chunk marks the document as DONE. The consumers and the chunk pool share permits so that
+ * no more documents or chunks than the NLP parallelism are processed at the same time.
+ */
 public class NlpConsumer implements DatashareListener {
     private static final int DEFAULT_MAX_CONTENT_LENGTH = 1024 * 1024;
+    static final int DEFAULT_BATCH_SIZE = 16;
+    static final long DEFAULT_BATCH_LINGER_MILLIS = 10;
+    static final int DEFAULT_CHUNK_OVERLAP = 200;
     private final Indexer indexer;
-    private final int maxContentLengthChars;
+    private final AsyncIndexer asyncIndexer;
+    private final NamedEntityBulkBuffer bulkBuffer;
+    private final List<CompletableFuture<Boolean>> pendingWrites = new LinkedList<>();
+    private final ContentChunker chunker;
+    private final ExecutorService chunkPool;
+    private final Semaphore nlpPermits;
+    private final int batchSize;
+    private final long batchLingerMillis;
     private final BlockingQueue<Message> messageQueue;
     private final Pipeline nlpPipeline;
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     @Inject
     public NlpConsumer(Pipeline pipeline, Indexer indexer, BlockingQueue<Message> messageQueue) {
+        this(pipeline, indexer, messageQueue, null);
+    }
+
+    /**
+     * @param bulkBuffer buffer shared by the consumers to write the named entities of many documents by large bulks (or null)
+     */
+    public NlpConsumer(Pipeline pipeline, Indexer indexer, BlockingQueue<Message> messageQueue, NamedEntityBulkBuffer bulkBuffer) {
+        this(pipeline, indexer, messageQueue, bulkBuffer, DEFAULT_BATCH_SIZE, DEFAULT_BATCH_LINGER_MILLIS, DEFAULT_CHUNK_OVERLAP, null, null);
+    }
+
+    /**
+     * @param batchSize maximum number of documents fetched at once
+     * @param batchLingerMillis maximum delay to wait for the next messages of a batch
+     * @param chunkOverlap number of chars shared by two consecutive chunks of a large document
+     * @param chunkPool pool processing the chunks of large documents in parallel (or null to process them in the consumer thread)
+     * @param nlpPermits permits shared by the consumers and the chunk pool, taken while a document or a chunk is processed (or null)
+     */
+    public NlpConsumer(Pipeline pipeline, Indexer indexer, BlockingQueue<Message> messageQueue, NamedEntityBulkBuffer bulkBuffer,
+                       int batchSize, long batchLingerMillis, int chunkOverlap, ExecutorService chunkPool, Semaphore nlpPermits) {
         this.indexer = indexer;
+        this.asyncIndexer = asyncIndexer(indexer);
+        this.bulkBuffer = bulkBuffer;
         this.messageQueue = messageQueue;
         this.nlpPipeline = pipeline;
-        this.maxContentLengthChars = DEFAULT_MAX_CONTENT_LENGTH;
+        this.chunker = new ContentChunker(DEFAULT_MAX_CONTENT_LENGTH, chunkOverlap);
+        this.chunkPool = chunkPool;
+        this.nlpPermits = nlpPermits;
+        this.batchSize = Math.max(batchSize, 1);
+        this.batchLingerMillis = batchLingerMillis;
     }
 
     NlpConsumer(Pipeline pipeline, Indexer indexer, int maxContentLengthBytes) {
+        this(pipeline, indexer, maxContentLengthBytes, null);
+    }
+
+    NlpConsumer(Pipeline pipeline, Indexer indexer, int maxContentLengthBytes, ExecutorService chunkPool) {
+        this(pipeline, indexer, maxContentLengthBytes, chunkPool, null);
+    }
+
+    NlpConsumer(Pipeline pipeline, Indexer indexer, int maxContentLengthBytes, ExecutorService chunkPool, Semaphore nlpPermits) {
         this.indexer = indexer;
+        this.asyncIndexer = asyncIndexer(indexer);
+        this.bulkBuffer = null;
         this.messageQueue = null;
         this.nlpPipeline = pipeline;
-        this.maxContentLengthChars = maxContentLengthBytes;
+        this.chunker = new ContentChunker(maxContentLengthBytes, 0);
+        this.chunkPool = chunkPool;
+        this.nlpPermits = nlpPermits;
+        this.batchSize = 1;
+        this.batchLingerMillis = 0;
     }
 
     @Override
@@ -48,12 +124,16 @@ public class NlpConsumer implements DatashareListener {
             try {
                 Message message = messageQueue.poll(30, TimeUnit.SECONDS);
                 if (message != null) {
+                    List<Message> batch = pollBatch(message);
+                    message = batch.get(batch.size() - 1);
+                    List<Message> nlpMessages = message.type == Message.Type.EXTRACT_NLP ? batch : batch.subList(0, batch.size() - 1);
+                    findNamedEntities(nlpMessages);
+                    nbMessages += nlpMessages.size();
                     switch (message.type) {
                         case EXTRACT_NLP:
-                            findNamedEntities(message.content.get(INDEX_NAME), message.content.get(DOC_ID), message.content.get(R_ID));
-                            nbMessages++;
                             break;
                         case SHUTDOWN:
+                            awaitPendingWrites();
                             exitAsked = true;
                             break;
                         default:
@@ -74,38 +154,218 @@ public class NlpConsumer implements DatashareListener {
         return nbMessages;
     }
 
+    /**
+     * @return the first message followed by the EXTRACT_NLP messages polled within the linger delay.
+     * The batch ends with the first message of another type, which is not processed by the batch.
+     */
+    private List<Message> pollBatch(Message first) throws InterruptedException {
+        List<Message> batch = new ArrayList<>(batchSize);
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchLingerMillis);
+        Message message = first;
+        while (message.type == Message.Type.EXTRACT_NLP && batch.size() < batchSize) {
+            message = messageQueue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (message == null) {
+                break;
+            }
+            batch.add(message);
+        }
+        return batch;
+    }
+
+    void findNamedEntities(List<Message> messages) throws InterruptedException {
+        Map<String, Map<String, String>> idsByProject = new LinkedHashMap<>();
+        for (Message message : messages) {
+            idsByProject.computeIfAbsent(message.content.get(INDEX_NAME), project -> new LinkedHashMap<>())
+                    .put(message.content.get(DOC_ID), message.content.get(R_ID));
+        }
+        for (Map.Entry<String, Map<String, String>> project : idsByProject.entrySet()) {
+            findNamedEntities(project.getKey(), project.getValue());
+        }
+    }
+
+    /**
+     * the documents are fetched together, then processed one by one: an error on a document
+     * does not prevent the other documents of the batch from being processed.
+     */
+    void findNamedEntities(final String projectName, final Map<String, String> idsWithRouting) throws InterruptedException {
+        if (idsWithRouting.size() == 1 || !(indexer instanceof ElasticsearchIndexer)) {
+            for (Map.Entry<String, String> idWithRouting : idsWithRouting.entrySet()) {
+                findNamedEntities(projectName, idWithRouting.getKey(), idWithRouting.getValue());
+            }
+            return;
+        }
+        Map<String, Document> documents;
+        try {
+            documents = ((ElasticsearchIndexer) indexer).get(projectName, idsWithRouting);
+        } catch (IOException e) {
+            logger.error("cannot get {} documents of {}, getting them one by one", idsWithRouting.size(), projectName, e);
+            for (Map.Entry<String, String> idWithRouting : idsWithRouting.entrySet()) {
+                findNamedEntities(projectName, idWithRouting.getKey(), idWithRouting.getValue());
+            }
+            return;
+        }
+        for (String id : idsWithRouting.keySet()) {
+            try {
+                processDocument(projectName, id, documents.get(id));
+            } catch (IOException | RuntimeException e) {
+                logger.error("cannot extract entities of doc " + id, e);
+            }
+        }
+    }
+
     void findNamedEntities(final String projectName, final String id, final String routing) throws InterruptedException {
         try {
-            Document doc = indexer.get(projectName, id, routing);
-            if (doc != null) {
-                logger.info("extracting {} entities for document {}", nlpPipeline.getType(), doc.getId());
-                if (nlpPipeline.initialize(doc.getLanguage())) {
+            processDocument(projectName, id, indexer.get(projectName, id, routing));
+        } catch (IOException | RuntimeException e) {
+            logger.error("cannot extract entities of doc " + id, e);
+        }
+    }
+
+    private void processDocument(final String projectName, final String id, final Document doc) throws IOException, InterruptedException {
+        if (doc != null) {
+            logger.info("extracting {} entities for document {}", nlpPipeline.getType(), doc.getId());
+            if (nlpPipeline.initialize(doc.getLanguage())) {
+                try {
                     int nbEntities = 0;
-                    if (doc.getContent().length() < this.maxContentLengthChars) {
-                        List<NamedEntity> namedEntities = nlpPipeline.process(doc);
-                        indexer.bulkAdd(projectName, nlpPipeline.getType(), namedEntities, doc);
+                    if (!chunker.needsChunks(doc.getContent())) {
+                        List<NamedEntity> namedEntities = process(() -> nlpPipeline.process(doc));
+                        addNamedEntities(projectName, namedEntities, doc, List.of());
                         nbEntities = namedEntities.size();
                     } else {
-                        int nbChunks = doc.getContent().length() / this.maxContentLengthChars + 1;
-                        logger.info("document is too large, extracting entities for {} document chunks", nbChunks);
-                        for (int chunkIndex = 0; chunkIndex < nbChunks; chunkIndex++) {
-                            List<NamedEntity> namedEntities = nlpPipeline.process(doc, maxContentLengthChars, chunkIndex * maxContentLengthChars);
-                            if (chunkIndex < nbChunks - 1) {
-                                indexer.bulkAdd(projectName, namedEntities);
-                            } else {
-                                indexer.bulkAdd(projectName, nlpPipeline.getType(), namedEntities, doc);
-                            }
-                            nbEntities += namedEntities.size();
-                        }
+                        nbEntities = findChunksNamedEntities(projectName, doc);
                     }
                     logger.info("added {} named entities to document {}", nbEntities, doc.getId());
+                } finally {
                     nlpPipeline.terminate(doc.getLanguage());
                 }
-            } else {
-                logger.warn("no document found in index with id " + id);
             }
-        } catch (IOException e) {
-            logger.error("cannot extract entities of doc " + id, e);
+        } else {
+            logger.warn("no document found in index with id " + id);
+        }
+    }
+
+    private List<NamedEntity> process(Processing processing) throws InterruptedException {
+        if (nlpPermits == null) {
+            return processing.process();
+        }
+        nlpPermits.acquire();
+        try {
+            return processing.process();
+        } finally {
+            nlpPermits.release();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Processing {
+        List<NamedEntity> process() throws InterruptedException;
+    }
+
+    /**
+     * the chunks are submitted at once to the chunk pool and their named entities written in the order
+     * of the chunks, as soon as the chunk and its predecessors are processed.
+     */
+    private int findChunksNamedEntities(String projectName, Document doc) throws IOException, InterruptedException {
+        List<ContentChunker.Chunk> chunks = chunker.split(doc.getContent());
+        logger.info("document is too large, extracting entities for {} document chunks", chunks.size());
+        List<FutureTask<List<NamedEntity>>> results = chunks.stream().map(chunk -> new FutureTask<List<NamedEntity>>(
+                () -> chunk.ownEntities(process(() -> nlpPipeline.process(doc, chunk.length(), chunk.start))))).collect(toList());
+        if (chunkPool != null) {
+            results.forEach(chunkPool::execute);
+        }
+        List<CompletableFuture<Boolean>> chunkWrites = new ArrayList<>();
+        int nbEntities = 0;
+        boolean added = false;
+        try {
+            for (int chunkIndex = 0; chunkIndex < chunks.size(); chunkIndex++) {
+                if (chunkPool == null) {
+                    results.get(chunkIndex).run();
+                }
+                List<NamedEntity> namedEntities = results.get(chunkIndex).get();
+                if (chunkIndex < chunks.size() - 1) {
+                    addChunkNamedEntities(projectName, namedEntities, doc, chunkWrites);
+                } else {
+                    addNamedEntities(projectName, namedEntities, doc, chunkWrites);
+                    added = true;
+                }
+                nbEntities += namedEntities.size();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("cannot extract entities of a chunk of doc " + doc.getId(), e.getCause());
+        } finally {
+            results.forEach(result -> result.cancel(true));
+            if (!added && bulkBuffer != null) {
+                bulkBuffer.discardChunks(projectName, doc);
+            }
         }
+        return nbEntities;
+    }
+
+    /**
+     * when the indexer is asynchronous the named entities are sent to the index while the next document is processed.
+     * With a bulk buffer they are sent with the named entities of other documents.
+     * The document is marked as DONE only once the named entities of its previous chunks are written.
+     *
+     * @param chunkWrites the asynchronous writes of the previous chunks of the document
+     */
+    private void addNamedEntities(String projectName, List<NamedEntity> namedEntities, Document doc,
+                                  List<CompletableFuture<Boolean>> chunkWrites) throws IOException {
+        if (bulkBuffer != null) {
+            addPendingWrite(doc, bulkBuffer.add(projectName, nlpPipeline.getType(), namedEntities, doc));
+        } else if (asyncIndexer == null) {
+            indexer.bulkAdd(projectName, nlpPipeline.getType(), namedEntities, doc);
+        } else if (chunkWrites.isEmpty()) {
+            addPendingWrite(doc, asyncIndexer.bulkAddAsync(projectName, nlpPipeline.getType(), namedEntities, doc));
+        } else {
+            addPendingWrite(doc, CompletableFuture.allOf(chunkWrites.toArray(new CompletableFuture[0]))
+                    .thenCompose(v -> chunkWrites.stream().allMatch(CompletableFuture::join) ?
+                            asyncIndexer.bulkAddAsync(projectName, nlpPipeline.getType(), namedEntities, doc) :
+                            CompletableFuture.completedFuture(false)));
+        }
+    }
+
+    private void addChunkNamedEntities(String projectName, List<NamedEntity> namedEntities, Document doc,
+                                       List<CompletableFuture<Boolean>> chunkWrites) throws IOException {
+        if (bulkBuffer != null) {
+            addPendingWrite(doc, bulkBuffer.addChunk(projectName, namedEntities, doc));
+        } else if (asyncIndexer == null) {
+            indexer.bulkAdd(projectName, namedEntities);
+        } else {
+            CompletableFuture<Boolean> write = asyncIndexer.bulkAddAsync(projectName, namedEntities);
+            chunkWrites.add(write);
+            addPendingWrite(doc, write);
+        }
+    }
+
+    private void addPendingWrite(Document doc, CompletableFuture<Boolean> write) {
+        pendingWrites.removeIf(CompletableFuture::isDone);
+        pendingWrites.add(write.whenComplete((success, throwable) -> {
+            if (throwable != null) {
+                logger.error("cannot add named entities of doc " + doc.getId(), throwable);
+            } else if (!success) {
+                logger.warn("some named entities of doc {} have not been added", doc.getId());
+            }
+        }));
+    }
+
+    void awaitPendingWrites() {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+        if (bulkBuffer != null) {
+            bulkBuffer.flush();
+        }
+        logger.info("waiting for {} named entities write(s)", pendingWrites.size());
+        try {
+            CompletableFuture.allOf(pendingWrites.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            // already logged by the write callback
+        }
+        pendingWrites.clear();
+    }
+
+    private static AsyncIndexer asyncIndexer(Indexer indexer) {
+        return indexer instanceof AsyncIndexer ? (AsyncIndexer) indexer : null;
     }
 }
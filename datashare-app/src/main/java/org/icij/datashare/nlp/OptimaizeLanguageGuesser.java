@@ -1,29 +1,80 @@
 package org.icij.datashare.nlp;
 
+import com.google.inject.Inject;
 import com.optimaize.langdetect.LanguageDetector;
 import com.optimaize.langdetect.LanguageDetectorBuilder;
 import com.optimaize.langdetect.i18n.LdLocale;
 import com.optimaize.langdetect.ngram.NgramExtractors;
+import com.optimaize.langdetect.profiles.LanguageProfile;
 import com.optimaize.langdetect.profiles.LanguageProfileReader;
 import com.optimaize.langdetect.text.CommonTextObjectFactories;
 import com.optimaize.langdetect.text.TextObjectFactory;
+import org.icij.datashare.PropertiesProvider;
 import org.icij.datashare.text.Language;
 import org.icij.datashare.text.indexing.LanguageGuesser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Stream.of;
 
 public class OptimaizeLanguageGuesser implements LanguageGuesser {
+    public static final String LANGUAGE_DETECTION_LANGUAGES_PROP = "languageDetectionLanguages";
+    public static final String LANGUAGE_DETECTION_SAMPLE_SIZE_PROP = "languageDetectionSampleSize";
+    static final int NB_SAMPLE_CHUNKS = 10;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
     private final LanguageDetector languageDetector;
+    private final int sampleSize;
+    private final ThreadLocal<TextObjectFactory> textObjectFactory = ThreadLocal.withInitial(CommonTextObjectFactories::forDetectingOnLargeText);
 
     public OptimaizeLanguageGuesser() throws IOException {
+        this(new PropertiesProvider());
+    }
+
+    @Inject
+    public OptimaizeLanguageGuesser(final PropertiesProvider propertiesProvider) throws IOException {
         this.languageDetector = LanguageDetectorBuilder.create(NgramExtractors.standard())
-                        .withProfiles(new LanguageProfileReader().readAllBuiltIn())
+                        .withProfiles(readProfiles(propertiesProvider.get(LANGUAGE_DETECTION_LANGUAGES_PROP)))
                         .build();
+        this.sampleSize = propertiesProvider.get(LANGUAGE_DETECTION_SAMPLE_SIZE_PROP).map(Integer::parseInt).orElse(-1);
     }
 
     @Override
     public Language guess(String text) {
-        TextObjectFactory textObjectFactory = CommonTextObjectFactories.forDetectingOnLargeText();
-        return Language.parse(languageDetector.detect(textObjectFactory.forText(text)).or(LdLocale.fromString("en")).getLanguage());
+        return Language.parse(languageDetector.detect(textObjectFactory.get().forText(sample(text, sampleSize)))
+                .or(LdLocale.fromString("en")).getLanguage());
+    }
+
+    /**
+     * @return the text if it is shorter than sampleSize (or if sampleSize is negative), else
+     * NB_SAMPLE_CHUNKS evenly spaced chunks of the text for a total of sampleSize characters.
+     */
+    static CharSequence sample(String text, int sampleSize) {
+        if (sampleSize < 0 || text.length() <= sampleSize) {
+            return text;
+        }
+        int chunkSize = Math.max(1, sampleSize / NB_SAMPLE_CHUNKS);
+        int nbChunks = sampleSize / chunkSize;
+        long step = nbChunks > 1 ? (long)(text.length() - chunkSize) / (nbChunks - 1) : 0;
+        StringBuilder sample = new StringBuilder(sampleSize + nbChunks);
+        for (int i = 0; i < nbChunks; i++) {
+            int start = (int) (i * step);
+            sample.append(text, start, start + chunkSize).append(' ');
+        }
+        return sample;
+    }
+
+    private List<LanguageProfile> readProfiles(Optional<String> languages) throws IOException {
+        if (languages.isEmpty()) {
+            return new LanguageProfileReader().readAllBuiltIn();
+        }
+        List<LdLocale> locales = of(languages.get().split(",")).map(String::trim).filter(s -> !s.isEmpty())
+                .map(LdLocale::fromString).collect(toList());
+        logger.info("loading language detection profiles for {}", locales);
+        return new LanguageProfileReader().readBuiltIn(locales);
     }
 }
@@ -83,7 +83,7 @@ public class BatchDownloadRunner implements Callable<File>, Monitorable, UserTas
 
         logger.info("running batch download for user {} on project {} with throttle {}ms and scroll size of {}",
                 batchDownload.user.getId(), batchDownload.projects, throttleMs, scrollSize);
-        Indexer.Searcher searcher = indexer.search(batchDownload.projects.stream().map(Project::getId).collect(toList()), Document.class).withoutSource("content").limit(scrollSize);
+        Indexer.Searcher searcher = TaskSearchers.search(indexer, propertiesProvider, batchDownload.projects.stream().map(Project::getId).collect(toList()), Document.class).withoutSource("content").limit(scrollSize);
         if (batchDownload.isJsonQuery()) {
             searcher.set(batchDownload.queryAsJson());
         } else {
@@ -104,6 +104,7 @@ public class BatchDownloadRunner implements Callable<File>, Monitorable, UserTas
             HashMap<String, Object> taskProperties = new HashMap<>();
             taskProperties.put("batchDownload", batchDownload);
             while (docsToProcess.size() != 0) {
+                documentVerifier.prefetchRootDocuments(docsToProcess.stream().map(Document.class::cast).collect(toList()));
                 for (int i = 0; i < docsToProcess.size() && numberOfResults.get() < maxResultSize && zippedFilesSize <= maxZipSizeBytes; i++) {
                     Document document = (Document) docsToProcess.get(i);
                     int addedBytes = documentVerifier.isRootDocumentSizeAllowed(document) ? zipper.add(document) : 0;
@@ -116,6 +117,8 @@ public class BatchDownloadRunner implements Callable<File>, Monitorable, UserTas
                 }
                 docsToProcess = searcher.scroll().collect(toList());
             }
+        } finally {
+            searcher.clearScroll();
         }
         logger.info("created batch download file {} ({} bytes/{} entries) for user {}",
                 batchDownload.filename, Files.size(batchDownload.filename), numberOfResults, batchDownload.user.getId());
@@ -85,7 +85,7 @@ public class BatchSearchRunner implements Callable<Integer>, Monitorable, UserTa
         try {
             for (String s : batchSearch.queries.keySet()) {
                 query = s;
-                Indexer.Searcher searcher = indexer.search(batchSearch.projects.stream().map(ProjectProxy::getId).collect(toList()), Document.class).
+                Indexer.Searcher searcher = TaskSearchers.search(indexer, propertiesProvider, batchSearch.projects.stream().map(ProjectProxy::getId).collect(toList()), Document.class).
                         with(query, batchSearch.fuzziness, batchSearch.phraseMatches).
                         withFieldValues("contentType", batchSearch.fileTypes.toArray(new String[]{})).
                         withFieldValues("tags", batchSearch.tags.toArray(new String[]{})).
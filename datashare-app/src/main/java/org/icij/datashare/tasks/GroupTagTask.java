@@ -0,0 +1,112 @@
+package org.icij.datashare.tasks;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.assistedinject.Assisted;
+import org.icij.datashare.Repository;
+import org.icij.datashare.monitoring.Monitorable;
+import org.icij.datashare.text.Project;
+import org.icij.datashare.text.Tag;
+import org.icij.datashare.text.indexing.Indexer;
+import org.icij.datashare.text.indexing.elasticsearch.ElasticsearchIndexer;
+import org.icij.datashare.text.indexing.elasticsearch.UpdateByQueryProgress;
+import org.icij.datashare.user.User;
+import org.icij.datashare.user.UserTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * tags (or untags) a group of documents in the background.
+ *
+ * With elasticsearch, the tags are updated by a sliced update by query that runs as a cluster task.
+ * The progress of the elasticsearch task is polled to give the progress rate of this task.
+ * The repository is updated by batches, only once the index has been updated without error.
+ */
+public class GroupTagTask implements Callable<Long>, Monitorable, UserTask {
+    private static final Logger logger = LoggerFactory.getLogger(GroupTagTask.class);
+    static final int REPOSITORY_BATCH_SIZE = 1000;
+    static final long POLL_INTERVAL_MILLISECONDS = 500;
+    private final Indexer indexer;
+    private final Repository repository;
+    private final User user;
+    private final Project project;
+    private final List<String> documentIds;
+    private final Tag[] tags;
+    private final boolean untag;
+    private final String uuid = UUID.randomUUID().toString();
+    private volatile double repositoryProgress = 0;
+    private volatile double indexProgress = 0;
+
+    @Inject
+    public GroupTagTask(Indexer indexer, Repository repository, @Assisted User user, @Assisted Project project,
+                        @Assisted List<String> documentIds, @Assisted Tag[] tags, @Assisted boolean untag) {
+        this.indexer = indexer;
+        this.repository = repository;
+        this.user = user;
+        this.project = project;
+        this.documentIds = documentIds;
+        this.tags = tags;
+        this.untag = untag;
+    }
+
+    @Override
+    public Long call() throws Exception {
+        logger.info("{} {} documents of {} for user {}", untag ? "untagging" : "tagging", documentIds.size(), project, user.getId());
+        if (!(indexer instanceof ElasticsearchIndexer)) {
+            boolean updated = untag ? indexer.untag(project, documentIds, tags) : indexer.tag(project, documentIds, tags);
+            indexProgress = 1;
+            updateRepository();
+            return updated ? (long) documentIds.size() : 0L;
+        }
+        ElasticsearchIndexer elasticsearchIndexer = (ElasticsearchIndexer) indexer;
+        String taskId = untag ?
+                elasticsearchIndexer.startGroupUntag(project, documentIds, tags) :
+                elasticsearchIndexer.startGroupTag(project, documentIds, tags);
+
+        UpdateByQueryProgress progress;
+        while (!(progress = elasticsearchIndexer.getUpdateByQueryProgress(taskId)).completed) {
+            indexProgress = progress.getProgressRate();
+            Thread.sleep(POLL_INTERVAL_MILLISECONDS);
+        }
+        indexProgress = 1;
+        if (progress.error != null) {
+            throw new IOException("group tag task " + taskId + " failed: " + progress.error);
+        }
+        updateRepository();
+        logger.info("{} documents updated by task {}", progress.updated, taskId);
+        return progress.updated;
+    }
+
+    private void updateRepository() {
+        List<List<String>> batches = Lists.partition(documentIds, REPOSITORY_BATCH_SIZE);
+        for (int i = 0; i < batches.size(); i++) {
+            if (untag) {
+                repository.untag(project, batches.get(i), tags);
+            } else {
+                repository.tag(project, batches.get(i), tags);
+            }
+            repositoryProgress = (double) (i + 1) / batches.size();
+        }
+        repositoryProgress = 1;
+    }
+
+    @Override
+    public double getProgressRate() {
+        return (repositoryProgress + indexProgress) / 2;
+    }
+
+    @Override
+    public User getUser() {
+        return user;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getName() + "@" + uuid;
+    }
+}
@@ -2,6 +2,7 @@ package org.icij.datashare.tasks;
 
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import org.elasticsearch.common.settings.Settings;
 import org.icij.datashare.PropertiesProvider;
 import org.icij.datashare.cli.DatashareCli;
 import org.icij.datashare.com.Channel;
@@ -21,6 +22,7 @@ import org.icij.task.annotation.OptionsClass;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.Properties;
 
 import static java.lang.Math.max;
@@ -38,6 +40,7 @@ public class IndexTask extends PipelineTask implements Monitorable{
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final DocumentQueueDrainer drainer;
     private final DocumentConsumer consumer;
+    private final ElasticsearchSpewer spewer;
     private final Publisher publisher;
     private long totalToProcess;
     private final Integer parallelism;
@@ -49,6 +52,7 @@ public class IndexTask extends PipelineTask implements Monitorable{
         PropertiesProvider propertiesProvider = new PropertiesProvider(properties);
         parallelism = propertiesProvider.get("parallelism").map(Integer::parseInt).orElse(Runtime.getRuntime().availableProcessors());
         this.publisher = publisher;
+        this.spewer = spewer;
         String indexName = propertiesProvider.get("defaultProject").orElse("local-datashare");
         spewer.withIndex(indexName); // TODO: remove this
         spewer.createIndex();
@@ -68,22 +72,35 @@ public class IndexTask extends PipelineTask implements Monitorable{
     @Override
     public Long call() throws Exception {
         logger.info("Processing up to {} file(s) in parallel", parallelism);
-        totalToProcess = drainer.drain(POISON).get();
-        drainer.shutdown();
-        drainer.awaitTermination(10, SECONDS); // drain is finished
-        logger.info("drained {} documents. Waiting for consumer to shutdown", totalToProcess);
-        publisher.publish(Channel.NLP, new Message(INIT_MONITORING).add(VALUE, valueOf(totalToProcess)));
-
-        consumer.shutdown();
-        // documents could be currently processed
+        Settings originalIndexSettings = spewer.startBulkIngest();
+        Exception failure = null;
         try {
-            while (!consumer.awaitTermination(30, MINUTES)) {
-                logger.info("Consumer has not terminated yet.");
+            totalToProcess = drainer.drain(POISON).get();
+            drainer.shutdown();
+            drainer.awaitTermination(10, SECONDS); // drain is finished
+            logger.info("drained {} documents. Waiting for consumer to shutdown", totalToProcess);
+            publisher.publish(Channel.NLP, new Message(INIT_MONITORING).add(VALUE, valueOf(totalToProcess)));
+
+            consumer.shutdown();
+            // documents could be currently processed
+            try {
+                while (!consumer.awaitTermination(30, MINUTES)) {
+                    logger.info("Consumer has not terminated yet.");
+                }
+            } catch (InterruptedException iex) {
+                logger.info("Got InterruptedException while waiting for the consumer shutdown.");
             }
-        } catch (InterruptedException iex) {
-            logger.info("Got InterruptedException while waiting for the consumer shutdown.");
+        } catch (Exception e) {
+            failure = e;
+            throw e;
+        } finally {
+            endBulkIngest(originalIndexSettings, failure);
+        }
+        try {
+            spewer.flushNlpMessages();
+        } finally {
+            publisher.publish(Channel.NLP, new ShutdownMessage());
         }
-        publisher.publish(Channel.NLP, new ShutdownMessage());
 
         if (consumer.getReporter() != null) consumer.getReporter().close();
         queue.close();
@@ -91,6 +108,47 @@ public class IndexTask extends PipelineTask implements Monitorable{
         return totalToProcess;
     }
 
+    /**
+     * flushes the pending bulk requests and restores the index settings, whatever the outcome of the indexing.
+     * The task fails if bulk requests have failed, as their documents are not indexed.
+     * When the indexing failed, the errors of the flush and of the settings restore are added to its exception.
+     */
+    private void endBulkIngest(Settings originalIndexSettings, Exception failure) throws IOException {
+        boolean interrupted = false;
+        IOException bulkFailure = null;
+        try {
+            if (!spewer.awaitBulkFlush(30, MINUTES)) {
+                logger.warn("bulk index requests have not completed, some documents may not be indexed");
+            }
+        } catch (InterruptedException iex) {
+            logger.warn("Got InterruptedException while waiting for the bulk index requests, some documents may not be indexed");
+            interrupted = true;
+        } catch (IOException e) {
+            if (failure == null) {
+                bulkFailure = e;
+            } else {
+                failure.addSuppressed(e);
+            }
+        }
+        try {
+            spewer.endBulkIngest(originalIndexSettings);
+        } catch (IOException | RuntimeException e) {
+            Exception previousFailure = failure == null ? bulkFailure : failure;
+            if (previousFailure == null) {
+                throw e;
+            }
+            logger.error("cannot restore index settings after bulk ingest", e);
+            previousFailure.addSuppressed(e);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (bulkFailure != null) {
+            throw bulkFailure;
+        }
+    }
+
     @Override
     public double getProgressRate() {
         totalToProcess = max(queue.size(), totalToProcess);
@@ -10,21 +10,22 @@ import org.icij.datashare.com.Publisher;
 import org.icij.datashare.com.ShutdownMessage;
 import org.icij.datashare.text.Document;
 import org.icij.datashare.text.indexing.Indexer;
+import org.icij.datashare.text.indexing.elasticsearch.ParallelScroll;
 import org.icij.datashare.text.nlp.Pipeline;
 import org.icij.datashare.user.User;
 import org.icij.datashare.user.UserTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.stream.Stream;
 
+import static java.lang.Integer.parseInt;
 import static java.lang.String.valueOf;
 import static java.util.Collections.singletonList;
-import static java.util.stream.Collectors.toList;
+import static org.icij.datashare.cli.DatashareCliOptions.SCROLL_SLICES;
 
 public class ResumeNlpTask implements Callable<Long>, UserTask {
     Logger logger = LoggerFactory.getLogger(getClass());
@@ -33,6 +34,8 @@ public class ResumeNlpTask implements Callable<Long>, UserTask {
     private String projectName;
     private final Publisher publisher;
     private final Indexer indexer;
+    private final PropertiesProvider propertiesProvider;
+    private final int scrollSlices;
 
     @Inject
     public ResumeNlpTask(final Publisher publisher, final Indexer indexer, final PropertiesProvider propertiesProvider,
@@ -41,28 +44,28 @@ public class ResumeNlpTask implements Callable<Long>, UserTask {
         this.indexer = indexer;
         this.nlpPipelines = nlpPipelines;
         this.user = user;
-        this.projectName = propertiesProvider.overrideWith(taskProperties).get("defaultProject").orElse("local-datashare");
+        this.propertiesProvider = propertiesProvider.overrideWith(taskProperties);
+        this.projectName = this.propertiesProvider.get("defaultProject").orElse("local-datashare");
+        this.scrollSlices = parseInt(this.propertiesProvider.get(SCROLL_SLICES).orElse("1"));
     }
 
     @Override
-    public Long call() throws IOException {
-        Indexer.Searcher searcher = indexer.search(singletonList(projectName), Document.class).withSource("rootDocument").without(nlpPipelines.toArray(new Pipeline.Type[] {}));
-        logger.info("resuming NLP name finding for index {} and {} : {} documents found", projectName, nlpPipelines, searcher.totalHits());
-        List<? extends Entity> docsToProcess = searcher.scroll().collect(toList());
-        long totalHits = searcher.totalHits();
-        this.publisher.publish(Channel.NLP, new Message(Message.Type.INIT_MONITORING).add(Message.Field.VALUE, valueOf(totalHits)));
+    public Long call() throws InterruptedException {
+        long totalHits;
+        try (ParallelScroll scroll = new ParallelScroll(() -> TaskSearchers.search(indexer, propertiesProvider, singletonList(projectName), Document.class)
+                .withSource("rootDocument").without(nlpPipelines.toArray(new Pipeline.Type[] {})), scrollSlices)) {
+            Stream<? extends Entity> docsToProcess = scroll.stream();
+            totalHits = scroll.totalHits();
+            logger.info("resuming NLP name finding for index {} and {} with {} slices : {} documents found", projectName, nlpPipelines, scrollSlices, totalHits);
+            this.publisher.publish(Channel.NLP, new Message(Message.Type.INIT_MONITORING).add(Message.Field.VALUE, valueOf(totalHits)));
 
-        do {
             docsToProcess.forEach(doc -> this.publisher.publish(Channel.NLP,
                     new Message(Message.Type.EXTRACT_NLP)
                             .add(Message.Field.INDEX_NAME, projectName)
                             .add(Message.Field.DOC_ID, doc.getId())
                             .add(Message.Field.R_ID, ((Document) doc).getRootDocument())));
-            docsToProcess = searcher.scroll().collect(toList());
-        } while (docsToProcess.size() != 0);
+        }
         logger.info("sent {} message for {} files without {} pipeline tags", Message.Type.EXTRACT_NLP, totalHits, nlpPipelines);
-
-        searcher.clearScroll();
         this.publisher.publish(Channel.NLP, new ShutdownMessage());
 
         return totalHits;
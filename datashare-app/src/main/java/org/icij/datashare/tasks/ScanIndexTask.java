@@ -6,6 +6,7 @@ import org.icij.datashare.Entity;
 import org.icij.datashare.PropertiesProvider;
 import org.icij.datashare.text.Document;
 import org.icij.datashare.text.indexing.Indexer;
+import org.icij.datashare.text.indexing.elasticsearch.ParallelScroll;
 import org.icij.datashare.user.User;
 import org.icij.datashare.user.UserTask;
 import org.icij.extract.extractor.ExtractionStatus;
@@ -15,17 +16,14 @@ import org.icij.task.DefaultTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.IntStream;
 
 import static java.lang.Integer.parseInt;
 import static java.util.Collections.singletonList;
-import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 import static org.icij.datashare.cli.DatashareCliOptions.SCROLL_SIZE;
+import static org.icij.datashare.cli.DatashareCliOptions.SCROLL_SLICES;
 
 public class ScanIndexTask extends DefaultTask<Long> implements UserTask {
     private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -35,40 +33,35 @@ public class ScanIndexTask extends DefaultTask<Long> implements UserTask {
     private final ReportMap reportMap;
     private final User user;
     private final int scrollSlices;
+    private final PropertiesProvider propertiesProvider;
 
     @Inject
     public ScanIndexTask(DocumentCollectionFactory factory, final Indexer indexer, final PropertiesProvider propertiesProvider,
                          @Assisted User user, @Assisted String reportName) {
         this.user = user;
         this.scrollSize = parseInt(propertiesProvider.get(SCROLL_SIZE).orElse("1000"));
-        this.scrollSlices = parseInt(propertiesProvider.get("scrollSlices").orElse("1"));
+        this.scrollSlices = parseInt(propertiesProvider.get(SCROLL_SLICES).orElse("1"));
         this.projectName = propertiesProvider.get("defaultProject").orElse("local-datashare");
         this.reportMap = factory.createMap(propertiesProvider, reportName);
         this.indexer = indexer;
+        this.propertiesProvider = propertiesProvider;
     }
 
     @Override
     public Long call() throws Exception {
         logger.info("scanning index {} with scroll size {} and {} slices", projectName, scrollSize, scrollSlices);
-        Optional<Long> nb = IntStream.range(0, scrollSlices).parallel().mapToObj(this::slicedScroll).reduce(Long::sum);
-        logger.info("imported {} paths into {}", nb.get(), reportMap);
-        reportMap.close();
-        return nb.get();
-    }
-
-    private Long slicedScroll(int sliceNum) {
-        Indexer.Searcher search = indexer.search(singletonList(projectName), Document.class).withSource("path").limit(scrollSize);
-        List<? extends Entity> docsToProcess = new ArrayList<>();
         long nbProcessed = 0;
-        do {
-            try {
-                docsToProcess = search.scroll(sliceNum, scrollSlices).collect(toList());
+        try (ParallelScroll scroll = new ParallelScroll(() -> TaskSearchers.search(indexer, propertiesProvider,
+                singletonList(projectName), Document.class).withSource("path").limit(scrollSize), scrollSlices)) {
+            Iterator<List<? extends Entity>> pages = scroll.pages().iterator();
+            while (pages.hasNext()) {
+                List<? extends Entity> docsToProcess = pages.next();
                 reportMap.putAll(docsToProcess.stream().map(d -> ((Document) d).getPath()).collect(toMap(p -> p, p -> new Report(ExtractionStatus.SUCCESS), (a, b) -> b)));
                 nbProcessed += docsToProcess.size();
-            } catch (IOException e) {
-                logger.error("error in slice {}", sliceNum, e);
             }
-        } while (docsToProcess.size() != 0);
+        }
+        logger.info("imported {} paths into {}", nbProcessed, reportMap);
+        reportMap.close();
         return nbProcessed;
     }
 
@@ -5,6 +5,8 @@ import org.icij.datashare.batch.BatchSearch;
 import org.icij.datashare.function.TerFunction;
 import org.icij.datashare.nlp.NlpApp;
 import org.icij.datashare.text.Document;
+import org.icij.datashare.text.Project;
+import org.icij.datashare.text.Tag;
 import org.icij.datashare.text.nlp.Pipeline;
 import org.icij.datashare.user.User;
 
@@ -32,4 +34,5 @@ public interface TaskFactory {
     IndexTask createIndexTask(final User user, String queueName, final Properties properties);
 
     DeduplicateTask createDeduplicateTask(User user, String queueName);
+    GroupTagTask createGroupTagTask(User user, Project project, List<String> documentIds, Tag[] tags, boolean untag);
 }
@@ -0,0 +1,25 @@
+package org.icij.datashare.tasks;
+
+import org.icij.datashare.Entity;
+import org.icij.datashare.PropertiesProvider;
+import org.icij.datashare.text.indexing.Indexer;
+import org.icij.datashare.text.indexing.elasticsearch.ElasticsearchIndexer;
+
+import java.util.List;
+
+import static org.icij.datashare.cli.DatashareCliOptions.SCROLL_POINT_IN_TIME;
+
+/**
+ * creates the searchers scrolled by the tasks. With the property <code>scrollPointInTime</code>
+ * (that can be given in the task options) elasticsearch searchers iterate with a point in time
+ * and search_after rather than with a scroll context.
+ */
+class TaskSearchers {
+    static Indexer.Searcher search(Indexer indexer, PropertiesProvider propertiesProvider, List<String> indexesNames, Class<? extends Entity> entityClass) {
+        boolean pointInTime = propertiesProvider.get(SCROLL_POINT_IN_TIME).map(Boolean::parseBoolean).orElse(false);
+        if (pointInTime && indexer instanceof ElasticsearchIndexer) {
+            return ((ElasticsearchIndexer) indexer).search(indexesNames, entityClass, true);
+        }
+        return indexer.search(indexesNames, entityClass);
+    }
+}
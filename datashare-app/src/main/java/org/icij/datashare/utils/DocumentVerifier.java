@@ -1,21 +1,39 @@
 package org.icij.datashare.utils;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.icij.datashare.HumanReadableSize;
 import org.icij.datashare.PropertiesProvider;
 import org.icij.datashare.text.Document;
 import org.icij.datashare.text.indexing.Indexer;
+import org.icij.datashare.text.indexing.elasticsearch.ElasticsearchIndexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toMap;
 import static org.icij.datashare.cli.DatashareCliOptions.EMBEDDED_DOCUMENT_DOWNLOAD_MAX_SIZE;
 
 /**
  * This class is responsible for verifying properties and conditions of documents.
  */
 public class DocumentVerifier {
-
+    private static final Logger logger = LoggerFactory.getLogger(DocumentVerifier.class);
     private static final String DEFAULT_MAX_SIZE = "1G";
+    static final int ROOT_CACHE_SIZE = 10000;
+    static final int ROOT_CACHE_TTL_MINUTES = 5;
 
     private final Indexer indexer;
     private final PropertiesProvider propertiesProvider;
+    private final Cache<String, Long> rootContentLengths = CacheBuilder.newBuilder()
+            .maximumSize(ROOT_CACHE_SIZE)
+            .expireAfterWrite(ROOT_CACHE_TTL_MINUTES, TimeUnit.MINUTES)
+            .build();
 
     /**
      * Constructs a new DocumentVerifier with the provided indexer and propertiesProvider.
@@ -39,8 +57,46 @@ public class DocumentVerifier {
             return true;
         }
         long maxSizeBytes = getEmbeddedDocumentDownloadMaxSizeBytes();
-        Document rootDocument = indexer.get(document.getProjectId(), document.getRootDocument());
-        return rootDocument.getContentLength() < maxSizeBytes;
+        return getRootContentLength(document) < maxSizeBytes;
+    }
+
+    /**
+     * Reads the root documents of a list of documents (without their content) in one request by project,
+     * so that the following calls to {@link #isRootDocumentSizeAllowed(Document)} do not hit the index.
+     *
+     * @param documents The documents that will be verified.
+     */
+    public void prefetchRootDocuments(List<Document> documents) {
+        if (!(indexer instanceof ElasticsearchIndexer)) {
+            return;
+        }
+        Map<String, Map<String, String>> missingRootsByProject = documents.stream()
+                .filter(document -> !document.isRootDocument())
+                .filter(document -> rootContentLengths.getIfPresent(rootKey(document.getProjectId(), document.getRootDocument())) == null)
+                .collect(groupingBy(Document::getProjectId, toMap(Document::getRootDocument, Document::getRootDocument, (id, sameId) -> id)));
+        missingRootsByProject.forEach((projectId, rootIds) -> {
+            try {
+                Map<String, Document> roots = ((ElasticsearchIndexer) indexer).get(projectId, rootIds, "content", "content_translated");
+                roots.forEach((id, root) -> rootContentLengths.put(rootKey(projectId, id), root.getContentLength()));
+            } catch (IOException e) {
+                logger.warn("cannot prefetch {} root documents of {}, they will be read one by one", rootIds.size(), projectId, e);
+            }
+        });
+    }
+
+    private long getRootContentLength(Document document) {
+        String key = rootKey(document.getProjectId(), document.getRootDocument());
+        Long contentLength = rootContentLengths.getIfPresent(key);
+        if (contentLength == null) {
+            Document rootDocument = indexer.get(document.getProjectId(), document.getRootDocument());
+            contentLength = rootDocument.getContentLength();
+            rootContentLengths.put(key, contentLength);
+        }
+        return contentLength;
+    }
+
+    private static String rootKey(String projectId, String rootId) {
+        return projectId + "/" + rootId;
     }
 
     /**
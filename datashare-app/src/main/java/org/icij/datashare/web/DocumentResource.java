@@ -2,6 +2,7 @@ package org.icij.datashare.web;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Throwables;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import io.swagger.v3.oas.annotations.Operation;
@@ -34,6 +35,7 @@ import org.icij.datashare.text.Tag;
 import org.icij.datashare.text.indexing.ExtractedText;
 import org.icij.datashare.text.indexing.Indexer;
 import org.icij.datashare.text.indexing.SearchedText;
+import org.icij.datashare.text.indexing.elasticsearch.AsyncIndexer;
 import org.icij.datashare.text.indexing.elasticsearch.SourceExtractor;
 import org.icij.datashare.user.User;
 import org.icij.datashare.utils.DocumentVerifier;
@@ -46,6 +48,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static java.lang.Boolean.parseBoolean;
@@ -237,8 +243,10 @@ public class DocumentResource {
     @ApiResponse(responseCode = "201", description = "if tag was created")
     @Put("/:project/documents/tags/:docId?routing=:routing")
     public Payload tagDocument(final String projectId, final String docId, String routing, Tag[] tags) throws IOException {
-        boolean tagSaved = repository.tag(project(projectId), docId, tags);
-        indexer.tag(project(projectId), docId, ofNullable(routing).orElse(docId), tags);
+        String rootId = ofNullable(routing).orElse(docId);
+        boolean tagSaved = updateRepositoryAndIndex(() -> repository.tag(project(projectId), docId, tags),
+                i -> i.tag(project(projectId), docId, rootId, tags),
+                i -> i.tagAsync(project(projectId), docId, rootId, tags));
         return tagSaved ? Payload.created(): Payload.ok();
     }
 
@@ -270,8 +278,10 @@ public class DocumentResource {
     @ApiResponse(responseCode = "200")
     @Post("/:project/documents/batchUpdate/tag")
     public Payload groupTagDocument(final String projectId, BatchTagQuery query, Context context) throws IOException {
-        repository.tag(project(projectId), query.docIds, query.tagsAsArray((User)context.currentUser()));
-        indexer.tag(project(projectId), query.docIds, query.tagsAsArray((User)context.currentUser()));
+        Tag[] tags = query.tagsAsArray((User) context.currentUser());
+        updateRepositoryAndIndex(() -> repository.tag(project(projectId), query.docIds, tags),
+                i -> i.tag(project(projectId), query.docIds, tags),
+                i -> i.tagAsync(project(projectId), query.docIds, tags));
         return Payload.ok();
     }
 
@@ -292,8 +302,10 @@ public class DocumentResource {
     @ApiResponse(responseCode = "200")
     @Post("/:project/documents/batchUpdate/untag")
     public Payload groupUntagDocument(final String projectId, BatchTagQuery query,  Context context) throws IOException {
-        repository.untag(project(projectId), query.docIds, query.tagsAsArray((User)context.currentUser()));
-        indexer.untag(project(projectId), query.docIds, query.tagsAsArray((User)context.currentUser()));
+        Tag[] tags = query.tagsAsArray((User) context.currentUser());
+        updateRepositoryAndIndex(() -> repository.untag(project(projectId), query.docIds, tags),
+                i -> i.untag(project(projectId), query.docIds, tags),
+                i -> i.untagAsync(project(projectId), query.docIds, tags));
         return Payload.ok();
     }
 
@@ -319,8 +331,10 @@ public class DocumentResource {
     @ApiResponse(responseCode = "201", description = "Document had tags; Document tag was deleted")
     @Put("/:project/documents/untag/:docId?routing=:routing")
     public Payload untagDocument(final String projectId, final String docId, String routing, Tag[] tags) throws IOException {
-        boolean untagSaved = repository.untag(project(projectId), docId, tags);
-        indexer.untag(project(projectId), docId, ofNullable(routing).orElse(docId), tags);
+        String rootId = ofNullable(routing).orElse(docId);
+        boolean untagSaved = updateRepositoryAndIndex(() -> repository.untag(project(projectId), docId, tags),
+                i -> i.untag(project(projectId), docId, rootId, tags),
+                i -> i.untagAsync(project(projectId), docId, rootId, tags));
         return untagSaved ? Payload.created(): Payload.ok();
     }
 
@@ -415,12 +429,41 @@ public class DocumentResource {
         }
     }
 
-    private static class BatchTagQuery {
+    /**
+     * if the indexer is asynchronous, the index is updated while the repository is updated.
+     *
+     * @return the result of the repository update
+     */
+    private boolean updateRepositoryAndIndex(BooleanSupplier repositoryUpdate, IndexUpdate indexUpdate,
+                                             Function<AsyncIndexer, CompletableFuture<Boolean>> asyncIndexUpdate) throws IOException {
+        if (!(indexer instanceof AsyncIndexer)) {
+            boolean saved = repositoryUpdate.getAsBoolean();
+            indexUpdate.apply(indexer);
+            return saved;
+        }
+        CompletableFuture<Boolean> indexUpdated = asyncIndexUpdate.apply((AsyncIndexer) indexer);
+        boolean saved = repositoryUpdate.getAsBoolean();
+        try {
+            indexUpdated.join();
+        } catch (CompletionException e) {
+            Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IOException(e.getCause());
+        }
+        return saved;
+    }
+
+    @FunctionalInterface
+    private interface IndexUpdate {
+        boolean apply(Indexer indexer) throws IOException;
+    }
+
+    static class BatchTagQuery {
         final List<String> tags;
         final List<String> docIds;
 
         @JsonCreator
-        private BatchTagQuery(@JsonProperty("tags") List<String> tags, @JsonProperty("docIds") List<String> docIds) {
+        BatchTagQuery(@JsonProperty("tags") List<String> tags, @JsonProperty("docIds") List<String> docIds) {
             this.tags = tags;
             this.docIds = docIds;
         }
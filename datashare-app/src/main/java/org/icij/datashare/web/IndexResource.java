@@ -1,5 +1,6 @@
 package org.icij.datashare.web;
 
+import com.google.common.io.ByteStreams;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import io.swagger.v3.oas.annotations.Operation;
@@ -12,17 +13,25 @@ import net.codestory.http.annotations.*;
 import net.codestory.http.constants.HttpStatus;
 import net.codestory.http.errors.UnauthorizedException;
 import net.codestory.http.payload.Payload;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.elasticsearch.client.Response;
 import org.icij.datashare.session.DatashareUser;
-import org.icij.datashare.text.indexing.Indexer;
+import org.icij.datashare.text.indexing.elasticsearch.ElasticsearchIndexer;
+import org.icij.datashare.text.indexing.elasticsearch.SearchProxyCache;
 import org.icij.datashare.utils.IndexAccessVerifier;
 import org.icij.datashare.utils.PayloadFormatter;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static java.lang.String.join;
 import static java.util.Arrays.stream;
+import static java.util.Optional.ofNullable;
 import static java.util.stream.Collectors.toList;
 import static net.codestory.http.payload.Payload.created;
 import static net.codestory.http.payload.Payload.ok;
@@ -30,20 +39,26 @@ import static net.codestory.http.payload.Payload.ok;
 @Singleton
 @Prefix("/api/index")
 public class IndexResource {
-    private final Indexer indexer;
+    private final ElasticsearchIndexer indexer;
 
     @Inject
-    public IndexResource(Indexer indexer) {
+    public IndexResource(ElasticsearchIndexer indexer) {
         this.indexer = indexer;
     }
     
-    @Operation(description = "Create the index for the current user if it doesn't exist.")
+    @Operation(description = "Create the index for the current user if it doesn't exist.",
+            parameters = {
+                    @Parameter(name = "shards", description = "number of primary shards of the index (default configured indexShards)", in = ParameterIn.QUERY),
+                    @Parameter(name = "replicas", description = "number of replicas of the index (default configured indexReplicas)", in = ParameterIn.QUERY)
+            })
     @ApiResponse(responseCode = "200", description = "returns 200 if the index already exists")
     @ApiResponse(responseCode = "201", description = "returns 201 if the index has been created")
     @Put("/:index")
-    public Payload createIndex(@Parameter(name = "index", description = "index to create", in = ParameterIn.PATH) final String index) throws IOException {
+    public Payload createIndex(@Parameter(name = "index", description = "index to create", in = ParameterIn.PATH) final String index, Context context) throws IOException {
         try{
-            return indexer.createIndex(IndexAccessVerifier.checkIndices(index)) ? created() : ok();
+            Integer shards = ofNullable(context.get("shards")).map(Integer::parseInt).orElse(null);
+            Integer replicas = ofNullable(context.get("replicas")).map(Integer::parseInt).orElse(null);
+            return indexer.createIndex(IndexAccessVerifier.checkIndices(index), shards, replicas) ? created() : ok();
         } catch (IllegalArgumentException e){
             return PayloadFormatter.error(e, HttpStatus.BAD_REQUEST);
         }
@@ -88,7 +103,12 @@ public class IndexResource {
     @Post("/search/:path:")
     public Payload esPost(@Parameter(name = "index", description = "elasticsearch path", in = ParameterIn.PATH) final String path, Context context, final net.codestory.http.Request request) throws IOException {
         try {
-            return PayloadFormatter.json(indexer.executeRaw("POST", IndexAccessVerifier.checkPath(path, context), new String(request.contentAsBytes())));
+            String checkedPath = IndexAccessVerifier.checkPath(path, context);
+            byte[] body = readBody(request);
+            if (indexer.isCacheableSearch("POST", checkedPath)) {
+                return cached(indexer.executeCachedRaw("POST", checkedPath, body));
+            }
+            return proxy("POST", checkedPath, new NByteArrayEntity(body, ContentType.APPLICATION_JSON), context);
         } catch ( IllegalArgumentException e){
             return PayloadFormatter.error(e, HttpStatus.BAD_REQUEST);
         }
@@ -102,12 +122,53 @@ public class IndexResource {
     @Get("/search/:path:")
     public Payload esGet(@Parameter(name = "path", description = "elasticsearch path", in = ParameterIn.PATH) final String path, Context context) throws IOException {
         try {
-            return PayloadFormatter.json(indexer.executeRaw("GET", IndexAccessVerifier.checkPath(path, context), ""));
+            String checkedPath = IndexAccessVerifier.checkPath(path, context);
+            if (indexer.isCacheableSearch("GET", checkedPath)) {
+                return cached(indexer.executeCachedRaw("GET", checkedPath, new byte[0]));
+            }
+            return proxy("GET", checkedPath, null, context);
         } catch (IllegalArgumentException e){
             return PayloadFormatter.error(e, HttpStatus.BAD_REQUEST);
         }
     }
 
+    /**
+     * streams the elasticsearch response to the client instead of reading it as a string.
+     * If the client accepts gzip, the response is compressed by elasticsearch and forwarded as is.
+     */
+    private Payload proxy(String method, String path, HttpEntity body, Context context) throws IOException {
+        boolean gzip = ofNullable(context.header("Accept-Encoding")).map(encodings -> encodings.contains("gzip")).orElse(false);
+        Response response = indexer.executeRaw(method, path, body, gzip);
+        int status = response.getStatusLine().getStatusCode();
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return new Payload(status);
+        }
+        String contentType = ofNullable(entity.getContentType()).map(Header::getValue).orElse("application/json");
+        Payload payload = new Payload(contentType, entity.getContent(), status);
+        String contentEncoding = response.getHeader("Content-Encoding");
+        return contentEncoding == null ? payload : payload.withHeader("Content-Encoding", contentEncoding);
+    }
+
+    /**
+     * reads the request body in memory (up to <code>proxyMaxResponseSize</code> bytes) so that the client can send
+     * it again when it retries the request on another node.
+     */
+    private byte[] readBody(net.codestory.http.Request request) throws IOException {
+        int maxSize = indexer.getProxyMaxResponseSize();
+        try (InputStream content = request.inputStream()) {
+            byte[] body = ByteStreams.toByteArray(ByteStreams.limit(content, maxSize + 1L));
+            if (body.length > maxSize) {
+                throw new IllegalArgumentException("request body is larger than " + maxSize + " bytes");
+            }
+            return body;
+        }
+    }
+
+    private static Payload cached(SearchProxyCache.CachedResponse response) {
+        return new Payload(response.contentType, response.content, response.status);
+    }
+
     @Operation(description = "Preflight request with OPTIONS")
     @ApiResponse(responseCode = "200", description = "returns OPTIONS")
     @ApiResponse(responseCode = "400", description = "returns 400 if there is an error from ElasticSearch")
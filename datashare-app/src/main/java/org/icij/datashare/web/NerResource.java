@@ -51,7 +51,11 @@ public class NerResource {
         Pipeline p = pipelineRegistry.get(Pipeline.Type.parse(pipeline));
         Language language = languageGuesser.guess(text);
         if (p.initialize(language)) {
-            return p.process(DocumentBuilder.createDoc("inline").with(text).with(language).build());
+            try {
+                return p.process(DocumentBuilder.createDoc("inline").with(text).with(language).build());
+            } finally {
+                p.terminate(language);
+            }
         }
         return emptyList();
     }
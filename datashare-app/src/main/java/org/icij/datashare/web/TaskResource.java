@@ -7,6 +7,7 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.enums.ParameterIn;
 import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.parameters.RequestBody;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -20,6 +21,7 @@ import org.icij.datashare.batch.BatchDownload;
 import org.icij.datashare.extension.PipelineRegistry;
 import org.icij.datashare.extract.OptionsWrapper;
 import org.icij.datashare.json.JsonObjectMapper;
+import org.icij.datashare.session.DatashareUser;
 import org.icij.datashare.tasks.*;
 import org.icij.datashare.text.Project;
 import org.icij.datashare.text.nlp.Pipeline;
@@ -47,6 +49,7 @@ import static org.apache.commons.lang3.SystemUtils.IS_OS_WINDOWS;
 import static org.icij.datashare.PropertiesProvider.MAP_NAME_OPTION;
 import static org.icij.datashare.PropertiesProvider.QUEUE_NAME_OPTION;
 import static org.icij.datashare.cli.DatashareCliOptions.BATCH_DOWNLOAD_DIR;
+import static org.icij.datashare.text.Project.project;
 import static org.icij.datashare.text.nlp.AbstractModels.syncModels;
 
 @Singleton
@@ -142,6 +145,34 @@ public class TaskResource {
         return taskManager.startTask(indexTask);
     }
 
+    @Operation(description = "Tags documents in batch in a background task. The document id list and the tag list are passed in the request body.",
+            parameters = {@Parameter(name = "project", description = "the project id", in = ParameterIn.PATH)},
+            requestBody = @RequestBody(description = "the document ids and the tags", required = true,
+                    content = @Content(examples = {@ExampleObject(value = "{\"docIds\": [\"docId1\", \"docId2\"], \"tags\": [\"foo\", \"bar\"]}")})))
+    @ApiResponse(responseCode = "200", description = "returns 200 and the json task", useReturnTypeSchema = true)
+    @Post("/batchUpdate/tag/:project")
+    public TaskView<Long> groupTag(final String projectId, DocumentResource.BatchTagQuery query, Context context) {
+        return startGroupTagTask(projectId, query, false, context);
+    }
+
+    @Operation(description = "Untags documents in batch in a background task. The document id list and the tag list are passed in the request body.",
+            parameters = {@Parameter(name = "project", description = "the project id", in = ParameterIn.PATH)},
+            requestBody = @RequestBody(description = "the document ids and the tags", required = true,
+                    content = @Content(examples = {@ExampleObject(value = "{\"docIds\": [\"docId1\", \"docId2\"], \"tags\": [\"foo\", \"bar\"]}")})))
+    @ApiResponse(responseCode = "200", description = "returns 200 and the json task", useReturnTypeSchema = true)
+    @Post("/batchUpdate/untag/:project")
+    public TaskView<Long> groupUntag(final String projectId, DocumentResource.BatchTagQuery query, Context context) {
+        return startGroupTagTask(projectId, query, true, context);
+    }
+
+    private TaskView<Long> startGroupTagTask(String projectId, DocumentResource.BatchTagQuery query, boolean untag, Context context) {
+        DatashareUser user = (DatashareUser) context.currentUser();
+        if (!user.isGranted(projectId)) {
+            throw new ForbiddenException();
+        }
+        return taskManager.startTask(taskFactory.createGroupTagTask(user, project(projectId), query.docIds, query.tagsAsArray(user), untag));
+    }
+
     @Operation(description = "Indexes files in a directory (with docker, it is the mounted directory that is scanned).",
             requestBody = @RequestBody(description = "wrapper for options json", required = true,  content = @Content(schema = @Schema(implementation = OptionsWrapper.class))))
     @ApiResponse(responseCode = "200", description = "returns 200 and the list of tasks created", useReturnTypeSchema = true)
@@ -0,0 +1,133 @@
+package org.icij.datashare.com.bus;
+
+import org.icij.datashare.com.Channel;
+import org.icij.datashare.com.Message;
+import org.icij.datashare.com.ShutdownMessage;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+
+import static java.util.Collections.synchronizedList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.icij.datashare.com.Message.Type.EXTRACT_NLP;
+import static org.icij.datashare.com.Message.Type.SHUTDOWN;
+import static org.junit.Assert.fail;
+
+public class AsyncBatchPublisherTest {
+    private final List<List<Message>> batches = synchronizedList(new ArrayList<>());
+    private final BiConsumer<Channel, List<Message>> recorder = (channel, messages) -> batches.add(messages);
+    private AsyncBatchPublisher publisher;
+
+    @Test
+    public void test_publish_by_batch_size() {
+        publisher = new AsyncBatchPublisher(recorder, 2, 60_000);
+
+        publisher.publish(Channel.NLP, new Message(EXTRACT_NLP));
+        publisher.publish(Channel.NLP, new Message(EXTRACT_NLP));
+        publisher.publish(Channel.NLP, new Message(EXTRACT_NLP));
+        publisher.flush();
+
+        assertThat(batches.stream().map(List::size).collect(toList())).containsExactly(2, 1);
+    }
+
+    @Test
+    public void test_publish_after_flush_interval() throws Exception {
+        publisher = new AsyncBatchPublisher(recorder, 100, 10);
+
+        publisher.publish(Channel.NLP, new Message(EXTRACT_NLP));
+        for (int i = 0; i < 100 && batches.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+
+        assertThat(batches).hasSize(1);
+    }
+
+    @Test
+    public void test_shutdown_message_is_published_after_previous_messages() throws Exception {
+        publisher = new AsyncBatchPublisher(recorder, 1000, 60_000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            executor.submit(() -> {
+                for (int j = 0; j < 250; j++) publisher.publish(Channel.NLP, new Message(EXTRACT_NLP));
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, SECONDS)).isTrue();
+
+        publisher.publish(Channel.NLP, new ShutdownMessage());
+
+        List<Message> messages = batches.stream().flatMap(List::stream).collect(toList());
+        assertThat(messages).hasSize(1001);
+        assertThat(messages.get(1000).type).isEqualTo(SHUTDOWN);
+    }
+
+    @Test
+    public void test_publish_error_does_not_stop_publisher() {
+        publisher = new AsyncBatchPublisher((channel, messages) -> {
+            if (batches.isEmpty()) {
+                batches.add(new ArrayList<>());
+                throw new IllegalStateException("connection lost");
+            }
+            batches.add(messages);
+        }, 1, 60_000);
+
+        publisher.publish(Channel.NLP, new Message(EXTRACT_NLP));
+        publisher.publish(Channel.NLP, new Message(EXTRACT_NLP));
+        try {
+            publisher.flush();
+        } catch (IllegalStateException ignored) {
+            // the failure of the first batch
+        }
+
+        assertThat(batches).hasSize(2);
+        assertThat(batches.get(1)).hasSize(1);
+    }
+
+    @Test
+    public void test_publish_error_is_thrown_to_the_next_flush() {
+        publisher = new AsyncBatchPublisher((channel, messages) -> {
+            if (batches.isEmpty()) {
+                batches.add(messages);
+                throw new IllegalStateException("connection lost");
+            }
+        }, 1, 60_000);
+        publisher.publish(Channel.NLP, new Message(EXTRACT_NLP));
+
+        try {
+            publisher.flush();
+            fail("the publish error should be thrown");
+        } catch (IllegalStateException e) {
+            assertThat(e.getCause()).hasMessage("connection lost");
+        }
+        publisher.flush();
+    }
+
+    @Test
+    public void test_publish_error_is_thrown_to_the_shutdown_message() {
+        publisher = new AsyncBatchPublisher((channel, messages) -> {
+            if (messages.get(0).type == EXTRACT_NLP) {
+                throw new IllegalStateException("connection lost");
+            }
+        }, 1, 60_000);
+        publisher.publish(Channel.NLP, new Message(EXTRACT_NLP));
+
+        try {
+            publisher.publish(Channel.NLP, new ShutdownMessage());
+            fail("the publish error should be thrown");
+        } catch (IllegalStateException e) {
+            assertThat(e.getCause()).hasMessage("connection lost");
+        }
+    }
+
+    @After
+    public void tearDown() {
+        publisher.close();
+    }
+}
@@ -0,0 +1,68 @@
+package org.icij.datashare.nlp;
+
+import org.icij.datashare.PropertiesProvider;
+import org.icij.datashare.text.Language;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.icij.datashare.text.Language.*;
+
+public class BenchOptimaizeLanguageGuesser {
+    static Logger logger = LoggerFactory.getLogger(BenchOptimaizeLanguageGuesser.class);
+    private static final Map<Language, String> CORPUS = new LinkedHashMap<>() {{
+        put(ENGLISH, "The committee published its annual report on Tuesday, detailing how the funds were transferred " +
+                "through a network of offshore companies before reaching the accounts of several officials. ");
+        put(FRENCH, "Le comité a publié mardi son rapport annuel, qui détaille comment les fonds ont transité " +
+                "par un réseau de sociétés extraterritoriales avant d'atteindre les comptes de plusieurs responsables. ");
+        put(SPANISH, "El comité publicó el martes su informe anual, en el que detalla cómo los fondos fueron transferidos " +
+                "a través de una red de empresas extraterritoriales antes de llegar a las cuentas de varios funcionarios. ");
+        put(GERMAN, "Der Ausschuss veröffentlichte am Dienstag seinen Jahresbericht, in dem beschrieben wird, wie die Gelder " +
+                "über ein Netz von Offshore-Firmen überwiesen wurden, bevor sie die Konten mehrerer Beamter erreichten. ");
+        put(PORTUGUESE, "O comitê publicou na terça-feira seu relatório anual, detalhando como os fundos foram transferidos " +
+                "por meio de uma rede de empresas offshore antes de chegar às contas de vários funcionários. ");
+        put(ITALIAN, "Il comitato ha pubblicato martedì la sua relazione annuale, che descrive come i fondi siano stati trasferiti " +
+                "attraverso una rete di società offshore prima di raggiungere i conti di diversi funzionari. ");
+    }};
+
+    @Test
+    public void bench_full_text_vs_sampled_detection() throws Exception {
+        OptimaizeLanguageGuesser fullText = new OptimaizeLanguageGuesser();
+        OptimaizeLanguageGuesser sampled = new OptimaizeLanguageGuesser(new PropertiesProvider(new HashMap<>() {{
+            put("languageDetectionSampleSize", "10000");
+        }}));
+        OptimaizeLanguageGuesser sampledRestricted = new OptimaizeLanguageGuesser(new PropertiesProvider(new HashMap<>() {{
+            put("languageDetectionSampleSize", "10000");
+            put("languageDetectionLanguages", "en,fr,es,de,pt,it");
+        }}));
+
+        for (int nbRepeats : new int[] {1, 100, 10000}) {
+            bench("full text", fullText, nbRepeats);
+            bench("sampled", sampled, nbRepeats);
+            bench("sampled restricted", sampledRestricted, nbRepeats);
+        }
+    }
+
+    private void bench(String name, OptimaizeLanguageGuesser guesser, int nbRepeats) {
+        int nbIterations = 20;
+        int nbCorrect = 0;
+        long elapsedNanos = 0;
+        for (Map.Entry<Language, String> text : CORPUS.entrySet()) {
+            String content = text.getValue().repeat(nbRepeats);
+            guesser.guess(content); // warm up
+            for (int i = 0; i < nbIterations; i++) {
+                long before = System.nanoTime();
+                Language language = guesser.guess(content);
+                elapsedNanos += System.nanoTime() - before;
+                nbCorrect += language == text.getKey() ? 1 : 0;
+            }
+        }
+        int nbGuesses = nbIterations * CORPUS.size();
+        logger.info("{} ({} chars/doc): accuracy={}% {} ns/op", name, CORPUS.get(ENGLISH).length() * nbRepeats,
+                100 * nbCorrect / nbGuesses, elapsedNanos / nbGuesses);
+    }
+}
@@ -0,0 +1,91 @@
+package org.icij.datashare.nlp;
+
+import org.icij.datashare.text.NamedEntity;
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.icij.datashare.text.Language.ENGLISH;
+import static org.icij.datashare.text.NamedEntity.Category.PERSON;
+import static org.icij.datashare.text.nlp.Pipeline.Type.CORENLP;
+
+public class ContentChunkerTest {
+    @Test
+    public void test_small_content_is_one_chunk() {
+        List<ContentChunker.Chunk> chunks = new ContentChunker(100, 10).split("a small content");
+
+        assertThat(chunks).hasSize(1);
+        assertThat(chunks.get(0).start).isEqualTo(0);
+        assertThat(chunks.get(0).end).isEqualTo(15);
+    }
+
+    @Test
+    public void test_split_on_end_of_sentence() {
+        String content = "First sentence. Second one is longer and will be cut.";
+
+        List<ContentChunker.Chunk> chunks = new ContentChunker(30, 0).split(content);
+
+        assertThat(chunks).hasSize(2);
+        assertThat(content.substring(chunks.get(0).start, chunks.get(0).end)).isEqualTo("First sentence.");
+        assertThat(chunks.get(1).start).isEqualTo(15);
+        assertThat(chunks.get(1).end).isEqualTo(content.length());
+    }
+
+    @Test
+    public void test_split_on_whitespace_without_end_of_sentence() {
+        String content = "one two three four five six seven eight nine ten";
+
+        List<ContentChunker.Chunk> chunks = new ContentChunker(20, 0).split(content);
+
+        chunks.forEach(chunk -> assertThat(chunk.length()).isLessThanOrEqualTo(20));
+        assertThat(content.substring(chunks.get(0).start, chunks.get(0).end)).isEqualTo("one two three four ");
+        assertThat(chunks.get(chunks.size() - 1).end).isEqualTo(content.length());
+    }
+
+    @Test
+    public void test_hard_cut_without_whitespace() {
+        assertThat(ContentChunker.boundary("0123456789abcdef0123456789", 8, 16)).isEqualTo(16);
+    }
+
+    @Test
+    public void test_chunks_overlap_on_word_boundaries() {
+        String content = "one two three four five six seven eight nine ten eleven twelve";
+
+        List<ContentChunker.Chunk> chunks = new ContentChunker(24, 6).split(content);
+
+        for (int i = 1; i < chunks.size(); i++) {
+            ContentChunker.Chunk previous = chunks.get(i - 1);
+            ContentChunker.Chunk chunk = chunks.get(i);
+            assertThat(chunk.start).isLessThan(previous.end);
+            assertThat(content.charAt(chunk.start - 1)).isEqualTo(' ');
+            assertThat(chunk.ownStart).isEqualTo(previous.ownEnd);
+        }
+        assertThat(chunks.get(0).ownStart).isEqualTo(0);
+        assertThat(chunks.get(chunks.size() - 1).ownEnd).isEqualTo(content.length());
+    }
+
+    @Test
+    public void test_own_entities_keeps_the_offsets_of_the_chunk() {
+        ContentChunker.Chunk chunk = new ContentChunker.Chunk(10, 30, 15, 25);
+        NamedEntity inside = NamedEntity.create(PERSON, "foo", asList(16L), "docId", "root", CORENLP, ENGLISH);
+        NamedEntity outside = NamedEntity.create(PERSON, "bar", asList(26L), "docId", "root", CORENLP, ENGLISH);
+        NamedEntity both = NamedEntity.create(PERSON, "baz", asList(12L, 20L), "docId", "root", CORENLP, ENGLISH);
+
+        List<NamedEntity> owned = chunk.ownEntities(asList(inside, outside, both));
+
+        assertThat(owned).hasSize(2);
+        assertThat(owned.get(0)).isSameAs(inside);
+        assertThat(owned.get(1).getMention()).isEqualTo("baz");
+        assertThat(owned.get(1).getOffsets()).containsExactly(20L);
+    }
+
+    @Test
+    public void test_entities_without_offset_are_owned_by_the_first_chunk() {
+        NamedEntity metadata = NamedEntity.create(PERSON, "foo", asList(-1L), "docId", "root", CORENLP, ENGLISH);
+
+        assertThat(new ContentChunker.Chunk(0, 30, 0, 25).ownEntities(asList(metadata))).hasSize(1);
+        assertThat(new ContentChunker.Chunk(20, 50, 25, 50).ownEntities(asList(metadata))).isEmpty();
+    }
+}
@@ -1,23 +1,47 @@
 package org.icij.datashare.nlp;
 
+import org.icij.datashare.com.Message;
+import org.icij.datashare.com.ShutdownMessage;
 import org.icij.datashare.text.Document;
 import org.icij.datashare.text.Language;
+import org.icij.datashare.text.NamedEntity;
 import org.icij.datashare.text.indexing.Indexer;
+import org.icij.datashare.text.indexing.elasticsearch.ElasticsearchIndexer;
 import org.icij.datashare.text.nlp.AbstractPipeline;
 import org.icij.datashare.user.DatashareApiKey;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.fest.assertions.Assertions.assertThat;
+import static org.icij.datashare.com.Message.Field.DOC_ID;
+import static org.icij.datashare.com.Message.Field.INDEX_NAME;
+import static org.icij.datashare.com.Message.Field.R_ID;
+import static org.icij.datashare.com.Message.Type.EXTRACT_NLP;
 import static org.icij.datashare.text.DocumentBuilder.createDoc;
 import static org.icij.datashare.text.Language.ENGLISH;
+import static org.icij.datashare.text.NamedEntity.Category.PERSON;
+import static org.icij.datashare.text.nlp.Pipeline.Type.CORENLP;
 import static org.mockito.ArgumentCaptor.forClass;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -74,6 +98,137 @@ public class NlpConsumerTest {
 
         verify(pipeline).initialize(ENGLISH);
         verify(pipeline).process(doc, 32, 0);
-        verify(pipeline).process(doc, 32, 32);
+        verify(pipeline).process(doc, 1, 32);
+    }
+
+    @Test
+    public void test_chunks_are_processed_in_parallel_and_written_in_order() throws Exception {
+        when(pipeline.initialize(any())).thenReturn(true);
+        Document doc = createDoc("huge_doc").with("first chunk of the doc. second chunk of the doc. third one.").build();
+        List<NamedEntity> first = singletonList(NamedEntity.create(PERSON, "first", asList(0L), doc.getId(), "root", CORENLP, ENGLISH));
+        List<NamedEntity> second = singletonList(NamedEntity.create(PERSON, "second", asList(24L), doc.getId(), "root", CORENLP, ENGLISH));
+        List<NamedEntity> third = singletonList(NamedEntity.create(PERSON, "third", asList(48L), doc.getId(), "root", CORENLP, ENGLISH));
+        when(pipeline.process(doc, 23, 0)).thenReturn(first);
+        when(pipeline.process(doc, 25, 23)).thenReturn(second);
+        when(pipeline.process(doc, 11, 48)).thenReturn(third);
+        when(indexer.get("projectName", doc.getId(), "routing")).thenReturn(doc);
+        ExecutorService chunkPool = Executors.newFixedThreadPool(3);
+
+        try {
+            new NlpConsumer(pipeline, indexer, 32, chunkPool).findNamedEntities("projectName", doc.getId(), "routing");
+        } finally {
+            chunkPool.shutdown();
+        }
+
+        InOrder inOrder = inOrder(indexer);
+        inOrder.verify(indexer).bulkAdd("projectName", first);
+        inOrder.verify(indexer).bulkAdd("projectName", second);
+        inOrder.verify(indexer).bulkAdd(eq("projectName"), any(), eq(third), eq(doc));
+    }
+
+    @Test
+    public void test_chunks_are_processed_within_the_nlp_permits() throws Exception {
+        when(pipeline.initialize(any())).thenReturn(true);
+        Document doc = createDoc("huge_doc").with("first chunk of the doc. second chunk of the doc. third one.").build();
+        when(indexer.get("projectName", doc.getId(), "routing")).thenReturn(doc);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        when(pipeline.process(eq(doc), anyInt(), anyInt())).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            running.decrementAndGet();
+            return emptyList();
+        });
+        ExecutorService chunkPool = Executors.newFixedThreadPool(3);
+
+        try {
+            new NlpConsumer(pipeline, indexer, 32, chunkPool, new Semaphore(1)).findNamedEntities("projectName", doc.getId(), "routing");
+        } finally {
+            chunkPool.shutdown();
+        }
+
+        verify(pipeline, times(3)).process(eq(doc), anyInt(), anyInt());
+        assertThat(maxRunning.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_document_is_marked_done_after_the_async_writes_of_its_chunks() throws Exception {
+        ElasticsearchIndexer esIndexer = mock(ElasticsearchIndexer.class);
+        when(pipeline.initialize(any())).thenReturn(true);
+        Document doc = createDoc("huge_doc").with("0123456789abcdef0123456789abcdef+").build();
+        List<NamedEntity> first = singletonList(NamedEntity.create(PERSON, "first", asList(0L), doc.getId(), "root", CORENLP, ENGLISH));
+        when(pipeline.process(doc, 32, 0)).thenReturn(first);
+        when(pipeline.process(doc, 1, 32)).thenReturn(emptyList());
+        when(esIndexer.get("projectName", doc.getId(), "routing")).thenReturn(doc);
+        CompletableFuture<Boolean> chunkWrite = new CompletableFuture<>();
+        when(esIndexer.bulkAddAsync("projectName", first)).thenReturn(chunkWrite);
+        when(esIndexer.bulkAddAsync(eq("projectName"), any(), eq(emptyList()), eq(doc))).thenReturn(completedFuture(true));
+
+        new NlpConsumer(pipeline, esIndexer, 32).findNamedEntities("projectName", doc.getId(), "routing");
+
+        verify(esIndexer, never()).bulkAddAsync(eq("projectName"), any(), eq(emptyList()), eq(doc));
+        chunkWrite.complete(true);
+        verify(esIndexer).bulkAddAsync(eq("projectName"), any(), eq(emptyList()), eq(doc));
+    }
+
+    @Test
+    public void test_batch_of_documents_is_fetched_with_one_request() throws Exception {
+        ElasticsearchIndexer esIndexer = mock(ElasticsearchIndexer.class);
+        Document doc1 = createDoc("doc1").build();
+        Document doc2 = createDoc("doc2").build();
+        when(pipeline.initialize(any())).thenReturn(true);
+        when(pipeline.process(any())).thenReturn(emptyList());
+        when(esIndexer.get(eq("projectName"), any(Map.class))).thenReturn(new HashMap<String, Document>() {{
+            put(doc1.getId(), doc1);
+            put(doc2.getId(), doc2);
+        }});
+
+        new NlpConsumer(pipeline, esIndexer, 32).findNamedEntities("projectName", new LinkedHashMap<String, String>() {{
+            put(doc1.getId(), "routing");
+            put(doc2.getId(), "routing");
+        }});
+
+        verify(esIndexer, never()).get(anyString(), anyString(), anyString());
+        verify(pipeline).process(doc1);
+        verify(pipeline).process(doc2);
+    }
+
+    @Test
+    public void test_error_on_a_document_does_not_stop_the_batch() throws Exception {
+        ElasticsearchIndexer esIndexer = mock(ElasticsearchIndexer.class);
+        Document doc1 = createDoc("doc1").build();
+        Document doc2 = createDoc("doc2").build();
+        when(pipeline.initialize(any())).thenReturn(true);
+        when(pipeline.process(doc1)).thenThrow(new IllegalStateException("nlp error"));
+        when(pipeline.process(doc2)).thenReturn(emptyList());
+        when(esIndexer.get(eq("projectName"), any(Map.class))).thenReturn(new HashMap<String, Document>() {{
+            put(doc1.getId(), doc1);
+            put(doc2.getId(), doc2);
+        }});
+
+        new NlpConsumer(pipeline, esIndexer, 32).findNamedEntities("projectName", new LinkedHashMap<String, String>() {{
+            put(doc1.getId(), "routing");
+            put(doc2.getId(), "routing");
+        }});
+
+        verify(pipeline).process(doc2);
+    }
+
+    @Test(timeout = 5000)
+    public void test_call_consumes_messages_by_batches_until_shutdown() throws Exception {
+        when(pipeline.initialize(any())).thenReturn(false);
+        when(indexer.get(anyString(), anyString(), anyString())).thenReturn(createDoc("content").build());
+        LinkedBlockingQueue<Message> queue = new LinkedBlockingQueue<>();
+        for (int i = 0; i < 3; i++) {
+            queue.add(new Message(EXTRACT_NLP).add(DOC_ID, "doc" + i).add(R_ID, "routing").add(INDEX_NAME, "projectName"));
+        }
+        queue.add(new ShutdownMessage());
+        queue.add(new Message(EXTRACT_NLP).add(DOC_ID, "other").add(R_ID, "routing").add(INDEX_NAME, "projectName"));
+
+        Integer nbMessages = new NlpConsumer(pipeline, indexer, queue, null, 2, 10, 0, null, null).call();
+
+        assertThat(nbMessages).isEqualTo(3);
+        assertThat(queue).hasSize(1);
+        verify(indexer, times(3)).get(eq("projectName"), anyString(), eq("routing"));
     }
 }
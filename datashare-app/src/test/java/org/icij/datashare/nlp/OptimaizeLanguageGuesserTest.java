@@ -0,0 +1,40 @@
+package org.icij.datashare.nlp;
+
+import org.icij.datashare.PropertiesProvider;
+import org.icij.datashare.text.Language;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.stream.Collectors;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class OptimaizeLanguageGuesserTest {
+    @Test
+    public void test_guess() throws Exception {
+        assertThat(new OptimaizeLanguageGuesser().guess("Ceci est un texte écrit en français pour le test.")).isEqualTo(Language.FRENCH);
+    }
+
+    @Test
+    public void test_guess_with_restricted_languages_and_sample() throws Exception {
+        OptimaizeLanguageGuesser guesser = new OptimaizeLanguageGuesser(new PropertiesProvider(new HashMap<>() {{
+            put("languageDetectionLanguages", "en,fr,es");
+            put("languageDetectionSampleSize", "100");
+        }}));
+        assertThat(guesser.guess("Este es un texto escrito en español para la prueba. ".repeat(100))).isEqualTo(Language.SPANISH);
+    }
+
+    @Test
+    public void test_sample_of_short_text() {
+        assertThat(OptimaizeLanguageGuesser.sample("short text", 100).toString()).isEqualTo("short text");
+        assertThat(OptimaizeLanguageGuesser.sample("short text", -1).toString()).isEqualTo("short text");
+    }
+
+    @Test
+    public void test_sample_of_long_text_is_bounded_and_evenly_spaced() {
+        String text = "abcdefghij".chars().mapToObj(c -> String.valueOf((char) c).repeat(100)).collect(Collectors.joining());
+        CharSequence sample = OptimaizeLanguageGuesser.sample(text, 20);
+
+        assertThat(sample.toString()).isEqualTo("aa bb cc dd ee ff gg hh ii jj ");
+    }
+}
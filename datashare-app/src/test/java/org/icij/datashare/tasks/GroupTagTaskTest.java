@@ -0,0 +1,75 @@
+package org.icij.datashare.tasks;
+
+import org.icij.datashare.PropertiesProvider;
+import org.icij.datashare.Repository;
+import org.icij.datashare.test.ElasticsearchRule;
+import org.icij.datashare.text.Document;
+import org.icij.datashare.text.Tag;
+import org.icij.datashare.text.indexing.Indexer;
+import org.icij.datashare.text.indexing.elasticsearch.ElasticsearchIndexer;
+import org.icij.datashare.user.User;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.elasticsearch.action.support.WriteRequest.RefreshPolicy.IMMEDIATE;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.icij.datashare.test.ElasticsearchRule.TEST_INDEX;
+import static org.icij.datashare.text.DocumentBuilder.createDoc;
+import static org.icij.datashare.text.Project.project;
+import static org.icij.datashare.text.Tag.tag;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class GroupTagTaskTest {
+    @ClassRule
+    public static ElasticsearchRule es = new ElasticsearchRule();
+    private final ElasticsearchIndexer indexer = new ElasticsearchIndexer(es.client, new PropertiesProvider()).withRefresh(IMMEDIATE);
+    private final Repository repository = mock(Repository.class);
+
+    @Test
+    public void test_group_tag_and_untag_documents() throws Exception {
+        indexer.add(TEST_INDEX, createDoc("doc1").build());
+        indexer.add(TEST_INDEX, createDoc("doc2").build());
+
+        GroupTagTask tagTask = new GroupTagTask(indexer, repository, User.local(), project(TEST_INDEX), asList("doc1", "doc2"), new Tag[] {tag("foo")}, false);
+        assertThat(tagTask.call()).isEqualTo(2);
+        assertThat(tagTask.getProgressRate()).isEqualTo(1.0);
+        assertThat(((Document) indexer.get(TEST_INDEX, "doc1")).getTags()).containsOnly(tag("foo"));
+        assertThat(((Document) indexer.get(TEST_INDEX, "doc2")).getTags()).containsOnly(tag("foo"));
+        verify(repository).tag(project(TEST_INDEX), asList("doc1", "doc2"), tag("foo"));
+
+        GroupTagTask untagTask = new GroupTagTask(indexer, repository, User.local(), project(TEST_INDEX), asList("doc1", "doc2"), new Tag[] {tag("foo")}, true);
+        assertThat(untagTask.call()).isEqualTo(2);
+        assertThat(((Document) indexer.get(TEST_INDEX, "doc1")).getTags()).isEmpty();
+        verify(repository).untag(project(TEST_INDEX), asList("doc1", "doc2"), tag("foo"));
+    }
+
+    @Test
+    public void test_group_tag_updates_repository_by_batches() throws Exception {
+        List<String> documentIds = IntStream.range(0, GroupTagTask.REPOSITORY_BATCH_SIZE * 2 + 1).mapToObj(i -> "doc" + i).collect(toList());
+
+        new GroupTagTask(indexer, repository, User.local(), project(TEST_INDEX), documentIds, new Tag[] {tag("foo")}, false).call();
+
+        verify(repository, times(3)).tag(eq(project(TEST_INDEX)), anyList(), eq(tag("foo")));
+    }
+
+    @Test
+    public void test_group_tag_with_another_indexer() throws Exception {
+        Indexer mockIndexer = mock(Indexer.class);
+        when(mockIndexer.tag(project("prj"), asList("doc1", "doc2"), tag("foo"))).thenReturn(true);
+
+        GroupTagTask task = new GroupTagTask(mockIndexer, repository, User.local(), project("prj"), asList("doc1", "doc2"), new Tag[] {tag("foo")}, false);
+
+        assertThat(task.call()).isEqualTo(2);
+        verify(repository).tag(project("prj"), asList("doc1", "doc2"), tag("foo"));
+    }
+}
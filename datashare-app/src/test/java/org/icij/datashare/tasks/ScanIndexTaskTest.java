@@ -49,6 +49,21 @@ public class ScanIndexTaskTest {
         );
     }
 
+    @Test
+    public void test_transfer_indexed_paths_with_slices() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            indexer.add(TEST_INDEX, DocumentBuilder.createDoc("id" + i).build());
+        }
+        PropertiesProvider slicedProperties = new PropertiesProvider(new HashMap<String, String>() {{
+            put("defaultProject", TEST_INDEX);
+            put("scrollSlices", "2");
+            put("scrollSize", "3");
+        }});
+
+        assertThat(new ScanIndexTask(documentCollectionFactory, indexer, slicedProperties, User.nullUser(), "test:sliced").call()).isEqualTo(10);
+        assertThat(documentCollectionFactory.createMap(slicedProperties, "test:sliced").size()).isEqualTo(10);
+    }
+
     @After
     public void tearDown() throws IOException {
         es.removeAll();
@@ -5,14 +5,22 @@ import org.icij.datashare.text.Document;
 import org.icij.datashare.text.DocumentBuilder;
 import org.icij.datashare.text.Project;
 import org.icij.datashare.text.indexing.Indexer;
+import org.icij.datashare.text.indexing.elasticsearch.ElasticsearchIndexer;
 import org.junit.Test;
 import org.junit.Before;
 import org.mockito.Mock;
 
+import java.util.HashMap;
 import java.util.Optional;
 
+import static java.util.Arrays.asList;
 import static org.icij.datashare.cli.DatashareCliOptions.EMBEDDED_DOCUMENT_DOWNLOAD_MAX_SIZE;
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -58,6 +66,41 @@ public class DocumentVerifierTest {
         assertFalse(documentVerifier.isRootDocumentSizeAllowed(doc));
     }
 
+    @Test
+    public void test_root_document_is_read_once() {
+        Project project = new Project("local-datashare");
+        Document rootDoc = DocumentBuilder.createDoc("bar").with(project).withContentLength(1024).build();
+        Document doc1 = DocumentBuilder.createDoc("foo").with(project).withParentId("bar").withRootId("bar").build();
+        Document doc2 = DocumentBuilder.createDoc("baz").with(project).withParentId("bar").withRootId("bar").build();
+
+        when(indexer.get(project.getId(), "bar")).thenReturn(rootDoc);
+        when(propertiesProvider.get(EMBEDDED_DOCUMENT_DOWNLOAD_MAX_SIZE)).thenReturn(Optional.of("200G"));
+
+        assertTrue(documentVerifier.isRootDocumentSizeAllowed(doc1));
+        assertTrue(documentVerifier.isRootDocumentSizeAllowed(doc2));
+        verify(indexer, times(1)).get(project.getId(), "bar");
+    }
+
+    @Test
+    public void test_prefetch_root_documents() throws Exception {
+        ElasticsearchIndexer esIndexer = mock(ElasticsearchIndexer.class);
+        DocumentVerifier verifier = new DocumentVerifier(esIndexer, propertiesProvider);
+        Project project = new Project("local-datashare");
+        Document rootDoc = DocumentBuilder.createDoc("bar").with(project).withContentLength(1024).build();
+        Document doc1 = DocumentBuilder.createDoc("foo").with(project).withParentId("bar").withRootId("bar").build();
+        Document doc2 = DocumentBuilder.createDoc("baz").with(project).withParentId("bar").withRootId("bar").build();
+
+        when(esIndexer.get(project.getId(), new HashMap<String, String>() {{ put("bar", "bar"); }}, "content", "content_translated"))
+                .thenReturn(new HashMap<String, Document>() {{ put("bar", rootDoc); }});
+        when(propertiesProvider.get(EMBEDDED_DOCUMENT_DOWNLOAD_MAX_SIZE)).thenReturn(Optional.of("200"));
+
+        verifier.prefetchRootDocuments(asList(doc1, doc2));
+
+        assertFalse(verifier.isRootDocumentSizeAllowed(doc1));
+        assertFalse(verifier.isRootDocumentSizeAllowed(doc2));
+        verify(esIndexer, never()).get(anyString(), anyString());
+    }
+
     private void indexFile(String index, Document document) {
         when(indexer.get(index, document.getId())).thenReturn(document);
     }
@@ -2,6 +2,10 @@ package org.icij.datashare.web;
 
 import net.codestory.http.filters.basic.BasicAuthFilter;
 import net.codestory.http.security.Users;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.common.settings.Settings;
 import org.icij.datashare.PropertiesProvider;
 import org.icij.datashare.db.JooqRepository;
 import org.icij.datashare.session.DatashareUser;
@@ -23,6 +27,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 
 import static org.elasticsearch.action.support.WriteRequest.RefreshPolicy.IMMEDIATE;
+import static org.fest.assertions.Assertions.assertThat;
 import static org.icij.datashare.test.ElasticsearchRule.TEST_INDEXES;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -64,6 +69,24 @@ public class IndexResourceTest extends AbstractProdWebServerTest {
         put("/api/index/ !!").should().respond(400);
         put("/api/index/  /").should().respond(404);
     }
+    @Test
+    public void test_put_create_index_with_shards_and_replicas() throws Exception {
+        configure(routes -> routes.add(new IndexResource(indexer)).filter(new LocalUserFilter(propertiesProvider, jooqRepository)));
+        put("/api/index/sharded_index?shards=2&replicas=0").should().respond(201);
+
+        Settings settings = esRule.client.indices().getSettings(new GetSettingsRequest().indices("sharded_index"), RequestOptions.DEFAULT)
+                .getIndexToSettings().get("sharded_index");
+        assertThat(settings.get("index.number_of_shards")).isEqualTo("2");
+        assertThat(settings.get("index.number_of_replicas")).isEqualTo("0");
+        esRule.client.indices().delete(new DeleteIndexRequest("sharded_index"), RequestOptions.DEFAULT);
+    }
+
+    @Test
+    public void test_put_create_index_with_bad_shards() {
+        configure(routes -> routes.add(new IndexResource(indexer)).filter(new LocalUserFilter(propertiesProvider, jooqRepository)));
+        put("/api/index/sharded_index?shards=foo").should().respond(400);
+    }
+
     @Test
     public void test_no_auth_post_forward_request_to_elastic_with_body() {
         configure(routes -> routes.add(new IndexResource(indexer)).filter(new LocalUserFilter(propertiesProvider, jooqRepository)));
@@ -13,6 +13,7 @@ import org.icij.datashare.nlp.NlpApp;
 import org.icij.datashare.session.LocalUserFilter;
 import org.icij.datashare.tasks.*;
 import org.icij.datashare.test.DatashareTimeRule;
+import org.icij.datashare.text.Tag;
 import org.icij.datashare.text.indexing.Indexer;
 import org.icij.datashare.text.nlp.AbstractModels;
 import org.icij.datashare.text.nlp.Pipeline;
@@ -28,7 +29,10 @@ import java.nio.file.Paths;
 import java.util.*;
 
 import static java.lang.String.format;
+import static java.util.Arrays.asList;
+import static java.util.Arrays.stream;
 import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.stream.Collectors.toList;
 import static org.fest.assertions.Assertions.assertThat;
@@ -130,6 +134,36 @@ public class TaskResourceTest extends AbstractProdWebServerTest {
         verify(taskFactory).createIndexTask(eq(local()), eq("extract:queue:foo"), any());
     }
 
+    @Test
+    public void test_group_tag() {
+        when(jooqRepository.getProjects()).thenReturn(singletonList(project("prj")));
+
+        RestAssert response = post("/api/task/batchUpdate/tag/prj", "{\"tags\": [\"tag1\", \"tag2\"], \"docIds\": [\"doc1\", \"doc2\"]}");
+
+        response.should().haveType("application/json").contain("{\"name\":\"");
+        ArgumentCaptor<Tag[]> tags = ArgumentCaptor.forClass(Tag[].class);
+        verify(taskFactory).createGroupTagTask(eq(local()), eq(project("prj")), eq(asList("doc1", "doc2")), tags.capture(), eq(false));
+        assertThat(stream(tags.getValue()).map(t -> t.label).collect(toList())).containsExactly("tag1", "tag2");
+    }
+
+    @Test
+    public void test_group_untag() {
+        when(jooqRepository.getProjects()).thenReturn(singletonList(project("prj")));
+
+        RestAssert response = post("/api/task/batchUpdate/untag/prj", "{\"tags\": [\"tag1\"], \"docIds\": [\"doc1\", \"doc2\"]}");
+
+        response.should().haveType("application/json").contain("{\"name\":\"");
+        verify(taskFactory).createGroupTagTask(eq(local()), eq(project("prj")), eq(asList("doc1", "doc2")), any(), eq(true));
+    }
+
+    @Test
+    public void test_group_tag_forbidden_project() {
+        post("/api/task/batchUpdate/tag/prj", "{\"tags\": [\"tag1\"], \"docIds\": [\"doc1\"]}").should().respond(403);
+        post("/api/task/batchUpdate/untag/prj", "{\"tags\": [\"tag1\"], \"docIds\": [\"doc1\"]}").should().respond(403);
+
+        verify(taskFactory, never()).createGroupTagTask(any(), any(), any(), any(), anyBoolean());
+    }
+
     @Test
     public void test_index_directory() {
         RestAssert response = post("/api/task/batchUpdate/index/file/" + getClass().getResource("/docs/").getPath().substring(1), "{}");
@@ -403,5 +437,6 @@ public class TaskResourceTest extends AbstractProdWebServerTest {
         when(taskFactory.createResumeNlpTask(any(), eq(singleton(Pipeline.Type.EMAIL)), any())).thenReturn(mock(ResumeNlpTask.class));
         when(taskFactory.createNlpTask(any(), any())).thenReturn(mock(NlpApp.class));
         when(taskFactory.createNlpTask(any(), any(), any(), any())).thenReturn(mock(NlpApp.class));
+        when(taskFactory.createGroupTagTask(any(), any(), any(), any(), anyBoolean())).thenReturn(mock(GroupTagTask.class));
     }
 }
@@ -107,12 +107,23 @@ public class DatashareCli {
         DatashareCliOptions.resume(parser);
         DatashareCliOptions.scrollSize(parser);
         DatashareCliOptions.scrollSlices(parser);
+        DatashareCliOptions.scrollPointInTime(parser);
         DatashareCliOptions.redisPoolSize(parser);
         DatashareCliOptions.elasticsearchDataPath(parser);
         DatashareCliOptions.reportName(parser);
         DatashareCliOptions.parallelism(parser);
         DatashareCliOptions.fileParserParallelism(parser);
         DatashareCliOptions.nlpParallelism(parser);
+        DatashareCliOptions.nlpBulkActions(parser);
+        DatashareCliOptions.nlpBulkSize(parser);
+        DatashareCliOptions.nlpBulkFlushInterval(parser);
+        DatashareCliOptions.nlpBulkConcurrentRequests(parser);
+        DatashareCliOptions.nlpBatchSize(parser);
+        DatashareCliOptions.nlpBatchLinger(parser);
+        DatashareCliOptions.nlpChunkOverlap(parser);
+        DatashareCliOptions.nlpPreloadLanguages(parser);
+        DatashareCliOptions.nlpModelsHeapBudget(parser);
+        DatashareCliOptions.nlpAnnotatorInstances(parser);
         DatashareCliOptions.followSymlinks(parser);
         DatashareCliOptions.enableBrowserOpenLink(parser);
         DatashareCliOptions.embeddedDocumentDownloadMaxSize(parser);
@@ -127,15 +138,44 @@ public class DatashareCli {
         DatashareCliOptions.batchDownloadDir(parser);
         DatashareCliOptions.smtpUrl(parser);
         DatashareCliOptions.maxContentLength(parser);
+        DatashareCliOptions.contentPageSize(parser);
+        DatashareCliOptions.occurrencesCacheSize(parser);
+        DatashareCliOptions.proxyMaxResponseSize(parser);
+        DatashareCliOptions.searchCacheTtlSeconds(parser);
+        DatashareCliOptions.searchCacheSize(parser);
+        DatashareCliOptions.bulkIndex(parser);
+        DatashareCliOptions.bulkIndexActions(parser);
+        DatashareCliOptions.bulkIndexSize(parser);
+        DatashareCliOptions.bulkIndexFlushInterval(parser);
+        DatashareCliOptions.bulkIndexConcurrentRequests(parser);
+        DatashareCliOptions.bulkIndexMaxRetries(parser);
+        DatashareCliOptions.bulkIngest(parser);
+        DatashareCliOptions.indexerMaxInFlightRequests(parser);
+        DatashareCliOptions.indexerMaxWaitingRequests(parser);
+        DatashareCliOptions.bulkIngestForceMergeSegments(parser);
+        DatashareCliOptions.duplicateFilterExpectedDocuments(parser);
+        DatashareCliOptions.languageDetectionLanguages(parser);
+        DatashareCliOptions.languageDetectionSampleSize(parser);
         DatashareCliOptions.clusterName(parser);
         DatashareCliOptions.createIndex(parser);
         DatashareCliOptions.defaultUser(parser);
         DatashareCliOptions.defaultProject(parser);
         DatashareCliOptions.esHost(parser);
+        DatashareCliOptions.indexShards(parser);
+        DatashareCliOptions.indexReplicas(parser);
+        DatashareCliOptions.indexTargetShardSize(parser);
+        DatashareCliOptions.esMaxConnections(parser);
+        DatashareCliOptions.esMaxConnectionsPerRoute(parser);
+        DatashareCliOptions.esIoThreads(parser);
+        DatashareCliOptions.esKeepAlive(parser);
+        DatashareCliOptions.esSniff(parser);
+        DatashareCliOptions.esSniffInterval(parser);
         DatashareCliOptions.queueName(parser);
         DatashareCliOptions.cors(parser);
         DatashareCliOptions.queueType(parser);
         DatashareCliOptions.busType(parser);
+        DatashareCliOptions.busPublishBatchSize(parser);
+        DatashareCliOptions.busPublishIntervalMilliseconds(parser);
         DatashareCliOptions.messageBusAddress(parser);
         DatashareCliOptions.redisAddress(parser);
         DatashareCliOptions.dataSourceUrl(parser);
@@ -27,6 +27,8 @@ public final class DatashareCliOptions {
     public static final String BATCH_SEARCH_MAX_TIME = "batchSearchMaxTimeSeconds";
     public static final String BATCH_DOWNLOAD_ZIP_TTL = "batchDownloadTimeToLive";
     public static final String SCROLL_SIZE = "scrollSize";
+    public static final String SCROLL_SLICES = "scrollSlices";
+    public static final String SCROLL_POINT_IN_TIME = "scrollPointInTime";
     public static final String BATCH_DOWNLOAD_MAX_NB_FILES = "batchDownloadMaxNbFiles";
     public static final String BATCH_DOWNLOAD_MAX_SIZE = "batchDownloadMaxSize";
     public static final String BATCH_DOWNLOAD_DIR = "batchDownloadDir";
@@ -46,6 +48,16 @@ public final class DatashareCliOptions {
     public static final String PARALLELISM = "parallelism";
     public static final String OPEN_LINK = "browserOpenLink";
     public static final String NLP_PARALLELISM_OPT = "nlpParallelism";
+    public static final String NLP_BULK_ACTIONS_OPT = "nlpBulkActions";
+    public static final String NLP_BULK_SIZE_OPT = "nlpBulkSize";
+    public static final String NLP_BULK_FLUSH_INTERVAL_OPT = "nlpBulkFlushIntervalMilliseconds";
+    public static final String NLP_BULK_CONCURRENT_REQUESTS_OPT = "nlpBulkConcurrentRequests";
+    public static final String NLP_BATCH_SIZE_OPT = "nlpBatchSize";
+    public static final String NLP_BATCH_LINGER_OPT = "nlpBatchLingerMilliseconds";
+    public static final String NLP_CHUNK_OVERLAP_OPT = "nlpChunkOverlap";
+    public static final String NLP_PRELOAD_LANGUAGES_OPT = "nlpPreloadLanguages";
+    public static final String NLP_MODELS_HEAP_BUDGET_OPT = "nlpModelsHeapBudget";
+    public static final String NLP_ANNOTATOR_INSTANCES_OPT = "nlpAnnotatorInstances";
     public static final String EMBEDDED_DOCUMENT_DOWNLOAD_MAX_SIZE = "embeddedDocumentDownloadMaxSize";
     public static final String DEFAULT_EMBEDDED_DOCUMENT_DOWNLOAD_MAX_SIZE = "1G";
     public static final String DEFAULT_USER_NAME = "defaultUserName";
@@ -237,6 +249,22 @@ public final class DatashareCliOptions {
                 .defaultsTo(QueueType.MEMORY);
     }
 
+    public static void busPublishBatchSize(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("busPublishBatchSize"),
+                "Maximum number of messages sent in one pipeline to the redis data bus")
+                .withRequiredArg().ofType(Integer.class)
+                .defaultsTo(100);
+    }
+
+    public static void busPublishIntervalMilliseconds(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("busPublishIntervalMilliseconds"),
+                "Maximum delay in milliseconds before buffered messages are sent to the redis data bus")
+                .withRequiredArg().ofType(Long.class)
+                .defaultsTo(10L);
+    }
+
     static void redisAddress(OptionParser parser) {
             parser.acceptsAll(
                     singletonList("redisAddress"),
@@ -271,6 +299,86 @@ public final class DatashareCliOptions {
                 .defaultsTo(DEFAULT_NLP_PARALLELISM);
     }
 
+    static void nlpBulkActions(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList(NLP_BULK_ACTIONS_OPT), "Number of actions that triggers the write of the named entities " +
+                        "buffered by the NLP threads (Default 1000, 0 writes the named entities of each document separately)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    static void nlpBulkSize(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList(NLP_BULK_SIZE_OPT), "Payload size that triggers the write of the named entities buffered " +
+                        "by the NLP threads. Human readable suffix K/M/G for KB/MB/GB (Default 5M)")
+                .withRequiredArg()
+                .withValuesConvertedBy(regex("[0-9]+[KMG]?"));
+    }
+
+    static void nlpBulkFlushInterval(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList(NLP_BULK_FLUSH_INTERVAL_OPT), "Delay in milliseconds after which the buffered named entities are written (Default 1000)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    static void nlpBulkConcurrentRequests(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList(NLP_BULK_CONCURRENT_REQUESTS_OPT), "Maximum number of named entities bulk requests in flight " +
+                        "before blocking the NLP threads (Default 2)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    static void nlpBatchSize(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList(NLP_BATCH_SIZE_OPT), "Maximum number of documents fetched from the index at once " +
+                        "by each NLP thread (Default 16)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    static void nlpBatchLinger(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList(NLP_BATCH_LINGER_OPT), "Delay in milliseconds an NLP thread waits for more documents " +
+                        "before fetching its batch (Default 10)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    static void nlpChunkOverlap(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList(NLP_CHUNK_OVERLAP_OPT), "Number of chars shared by two consecutive chunks of the large " +
+                        "documents processed by the NLP threads (Default 200)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    static void nlpPreloadLanguages(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList(NLP_PRELOAD_LANGUAGES_OPT), "Comma separated languages whose NLP models are loaded " +
+                        "when the NLP pipeline starts (ex: ENGLISH,FRENCH)")
+                .withRequiredArg()
+                .ofType(String.class);
+    }
+
+    static void nlpModelsHeapBudget(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList(NLP_MODELS_HEAP_BUDGET_OPT), "Heap size used by the CoreNLP models kept loaded between " +
+                        "documents. Human readable suffix K/M/G for KB/MB/GB (Default half of the max heap)")
+                .withRequiredArg()
+                .withValuesConvertedBy(regex("[0-9]+[KMG]?"));
+    }
+
+    static void nlpAnnotatorInstances(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList(NLP_ANNOTATOR_INSTANCES_OPT), "Maximum number of CoreNLP NER classifiers loaded by language, " +
+                        "each one being used by one NLP thread at a time. " +
+                        "With 1 (Default), the classifier is shared by the NLP threads")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
     public static void batchSearchMaxTime(OptionParser parser) {
          parser.acceptsAll(
                  singletonList(BATCH_SEARCH_MAX_TIME), "Max time for batch search in seconds")
@@ -294,11 +402,20 @@ public final class DatashareCliOptions {
 
      public static void scrollSlices(OptionParser parser) {
         parser.acceptsAll(
-                singletonList("scrollSlices"), "Scroll slice max number used for elasticsearch scrolls (SCANIDX task)")
+                singletonList(SCROLL_SLICES), "Scroll slice max number used for elasticsearch scrolls (SCANIDX and resume NLP tasks)")
                 .withRequiredArg()
                 .ofType(Integer.class).defaultsTo(1);
     }
 
+    public static void scrollPointInTime(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList(SCROLL_POINT_IN_TIME), "Scroll the search results with a point in time and search_after instead of " +
+                        "elasticsearch scroll contexts (SCANIDX, batch search, batch download and resume NLP tasks)")
+                .withRequiredArg()
+                .ofType(Boolean.class)
+                .defaultsTo(false);
+    }
+
      public static void redisPoolSize(OptionParser parser) {
         parser.acceptsAll(
                 singletonList("redisPoolSize"), "Redis pool size used for each redis collection")
@@ -371,12 +488,78 @@ public final class DatashareCliOptions {
 
     static void esHost(OptionParser parser) {
         parser.acceptsAll(
-                singletonList("elasticsearchAddress"), "Elasticsearch host address")
+                singletonList("elasticsearchAddress"), "Elasticsearch host address (comma separated addresses for several nodes)")
                 .withRequiredArg()
                 .ofType(String.class)
                 .defaultsTo("http://elasticsearch:9200");
     }
 
+    static void indexShards(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("indexShards"), "Number of primary shards of the created indices, or \"auto\" to estimate it " +
+                        "from the size of the data dir (Default the settings file value)")
+                .withRequiredArg()
+                .ofType(String.class);
+    }
+
+    static void indexReplicas(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("indexReplicas"), "Number of replicas of the created indices (Default the settings file value)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    static void indexTargetShardSize(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("indexTargetShardSize"), "Target size of a shard used when indexShards is \"auto\" (Default 30G)")
+                .withRequiredArg()
+                .ofType(String.class);
+    }
+
+    static void esMaxConnections(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("elasticsearchMaxConnections"), "Maximum number of HTTP connections to elasticsearch (Default 100)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    static void esMaxConnectionsPerRoute(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("elasticsearchMaxConnectionsPerRoute"), "Maximum number of HTTP connections to each elasticsearch node (Default 50)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    static void esIoThreads(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("elasticsearchIoThreads"), "Number of I/O threads of the elasticsearch client (Default number of processors)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    static void esKeepAlive(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("elasticsearchKeepAliveSeconds"), "Maximum idle time in seconds of the elasticsearch connections " +
+                        "(Default the keep alive sent by elasticsearch)")
+                .withRequiredArg()
+                .ofType(Long.class);
+    }
+
+    static void esSniff(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("elasticsearchSniff"), "Discover the elasticsearch cluster data nodes from the given addresses (Default false)")
+                .withRequiredArg()
+                .ofType(Boolean.class)
+                .defaultsTo(false);
+    }
+
+    static void esSniffInterval(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("elasticsearchSniffIntervalSeconds"), "Interval in seconds between two elasticsearch cluster discoveries (Default 300)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
     static void dataSourceUrl(OptionParser parser) {
         parser.acceptsAll(
                 singletonList("dataSourceUrl"), "Datasource URL")
@@ -539,6 +722,146 @@ public final class DatashareCliOptions {
                 .withValuesConvertedBy(regex("[0-9]+[KMG]?"));
     }
 
+    public static void contentPageSize(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("contentPageSize"), "Number of characters of the extracted text pages stored along the documents " +
+                        "to read a page of a large document without loading its whole content (Default -1 means no pages, it must also be set for the server to read the pages)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    public static void occurrencesCacheSize(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("occurrencesCacheSize"), "Maximum number of characters of the document contents kept in memory " +
+                        "to search the occurrences of a text in a document (Default 33554432)")
+                .withRequiredArg()
+                .ofType(Long.class);
+    }
+
+    public static void proxyMaxResponseSize(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("proxyMaxResponseSize"), "Maximum size in bytes of an elasticsearch response " +
+                        "buffered by the search proxy (Default 104857600)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    public static void searchCacheTtlSeconds(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("searchCacheTtlSeconds"), "Time to live in seconds of the search and count responses " +
+                        "cached by the search proxy, 0 to disable the cache (Default 5)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    public static void searchCacheSize(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("searchCacheSize"), "Maximum size in bytes of the search proxy cache (Default 33554432)")
+                .withRequiredArg()
+                .ofType(Long.class);
+    }
+
+    public static void bulkIndex(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("bulkIndex"), "Buffer the documents extracted by the index task and send them to elasticsearch with bulk requests (Default false)")
+                .withRequiredArg()
+                .ofType(Boolean.class)
+                .defaultsTo(false);
+    }
+
+    public static void indexerMaxInFlightRequests(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("indexerMaxInFlightRequests"), "Maximum number of asynchronous elasticsearch requests " +
+                        "sent concurrently by the indexer (Default 64)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    public static void indexerMaxWaitingRequests(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("indexerMaxWaitingRequests"), "Maximum number of asynchronous elasticsearch requests " +
+                        "waiting for one of the concurrent requests to complete, the next ones are rejected (Default 1024)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    public static void bulkIngest(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("bulkIngest"), "Disable the refresh and the replicas of the index during the index task " +
+                        "and restore them at the end of the task (Default false)")
+                .withRequiredArg()
+                .ofType(Boolean.class)
+                .defaultsTo(false);
+    }
+
+    public static void bulkIngestForceMergeSegments(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("bulkIngestForceMergeSegments"), "Maximum number of segments of the index force merge " +
+                        "at the end of a bulk ingest (Default 0 means no force merge)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    public static void bulkIndexActions(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("bulkIndexActions"), "Number of documents that triggers a bulk request flush (Default 1000)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    public static void bulkIndexSize(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("bulkIndexSize"), "Payload size that triggers a bulk request flush. Human readable suffix K/M/G for KB/MB/GB (Default 5M)")
+                .withRequiredArg()
+                .withValuesConvertedBy(regex("[0-9]+[KMG]?"));
+    }
+
+    public static void bulkIndexFlushInterval(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("bulkIndexFlushIntervalSeconds"), "Delay in seconds after which pending documents are flushed (Default 5)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    public static void bulkIndexConcurrentRequests(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("bulkIndexConcurrentRequests"), "Maximum number of bulk requests in flight before blocking the extraction (Default 2)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    public static void bulkIndexMaxRetries(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("bulkIndexMaxRetries"), "Maximum number of retries of a bulk request rejected by elasticsearch, " +
+                        "with an exponential backoff. The index task fails if the documents cannot be indexed (Default 3)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
+    public static void duplicateFilterExpectedDocuments(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("duplicateFilterExpectedDocuments"), "Expected number of documents in the index. When set, a bloom filter " +
+                        "of the indexed document ids avoids checking each new document in elasticsearch for duplicates")
+                .withRequiredArg()
+                .ofType(Long.class);
+    }
+
+    public static void languageDetectionLanguages(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("languageDetectionLanguages"), "Comma separated ISO 639-1 codes of the languages that can be detected " +
+                        "(Default all the languages supported by the language detector)")
+                .withRequiredArg()
+                .ofType(String.class);
+    }
+
+    public static void languageDetectionSampleSize(OptionParser parser) {
+        parser.acceptsAll(
+                singletonList("languageDetectionSampleSize"), "Maximum number of characters sampled across the text to detect its language " +
+                        "(Default -1 means the whole text)")
+                .withRequiredArg()
+                .ofType(Integer.class);
+    }
+
     public static void sessionStoreType(OptionParser parser) {
         parser.acceptsAll(
                 singletonList("sessionStoreType"), "Type of session store")
@@ -0,0 +1,31 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import org.icij.datashare.Entity;
+import org.icij.datashare.text.Document;
+import org.icij.datashare.text.NamedEntity;
+import org.icij.datashare.text.Project;
+import org.icij.datashare.text.Tag;
+import org.icij.datashare.text.nlp.Pipeline;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non blocking variant of the {@link org.icij.datashare.text.indexing.Indexer} operations.
+ *
+ * The futures are completed by the elasticsearch client I/O threads, so the callers
+ * should not run long computations in their callbacks (use the *Async methods of CompletableFuture with an executor).
+ */
+public interface AsyncIndexer {
+    CompletableFuture<Boolean> bulkAddAsync(String indexName, Pipeline.Type nerType, List<NamedEntity> namedEntities, Document parent);
+    <T extends Entity> CompletableFuture<Boolean> bulkAddAsync(String indexName, List<T> objs);
+    <T extends Entity> CompletableFuture<Boolean> bulkUpdateAsync(String indexName, List<T> entities);
+    <T extends Entity> CompletableFuture<Void> addAsync(String indexName, T obj);
+    <T extends Entity> CompletableFuture<Void> updateAsync(String indexName, T obj);
+    <T extends Entity> CompletableFuture<T> getAsync(String indexName, String id, String root);
+
+    CompletableFuture<Boolean> tagAsync(Project prj, String documentId, String rootDocument, Tag... tags);
+    CompletableFuture<Boolean> untagAsync(Project prj, String documentId, String rootDocument, Tag... tags);
+    CompletableFuture<Boolean> tagAsync(Project prj, List<String> documentIds, Tag... tags);
+    CompletableFuture<Boolean> untagAsync(Project prj, List<String> documentIds, Tag... tags);
+}
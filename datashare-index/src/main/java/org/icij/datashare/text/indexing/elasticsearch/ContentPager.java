@@ -0,0 +1,80 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader that cuts the characters read from its source into pages of <code>pageSize</code> characters
+ * and gives each page to a consumer while the content is read.
+ *
+ * The last page (shorter than <code>pageSize</code>) is given when the end of the source is reached.
+ */
+class ContentPager extends FilterReader {
+    private final int pageSize;
+    private final PageConsumer consumer;
+    private final StringBuilder page;
+    private int pageIndex = 0;
+    private long pageStart = 0;
+    private boolean eof = false;
+
+    @FunctionalInterface
+    interface PageConsumer {
+        void accept(int pageIndex, long pageStart, String pageContent) throws IOException;
+    }
+
+    ContentPager(Reader source, int pageSize, PageConsumer consumer) {
+        super(source);
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("page size should be positive (was " + pageSize + ")");
+        }
+        this.pageSize = pageSize;
+        this.consumer = consumer;
+        this.page = new StringBuilder(Math.min(pageSize, 8192));
+    }
+
+    @Override
+    public int read() throws IOException {
+        char[] c = new char[1];
+        return read(c, 0, 1) == -1 ? -1 : c[0];
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int nbRead = super.read(cbuf, off, len);
+        if (nbRead == -1) {
+            if (!eof) {
+                eof = true;
+                if (page.length() > 0) {
+                    emitPage();
+                }
+            }
+            return -1;
+        }
+        int position = off;
+        while (position < off + nbRead) {
+            int nbChars = Math.min(pageSize - page.length(), off + nbRead - position);
+            page.append(cbuf, position, nbChars);
+            position += nbChars;
+            if (page.length() == pageSize) {
+                emitPage();
+            }
+        }
+        return nbRead;
+    }
+
+    private void emitPage() throws IOException {
+        consumer.accept(pageIndex++, pageStart, page.toString());
+        pageStart += page.length();
+        page.setLength(0);
+    }
+
+    int nbPages() {
+        return pageIndex;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
@@ -0,0 +1,134 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader of extracted text that streams the same characters as
+ * <code>content.trim()</code> followed by <code>content.substring(0, maxLength).trim()</code>
+ * without loading the whole content in memory.
+ *
+ * It also counts the characters read and keeps the first <code>sampleLength</code> characters
+ * (for language detection).
+ *
+ * When the content is truncated, the rest of the source is still read and discarded: the Tika
+ * parsing reader only parses the embedded documents as it is consumed.
+ */
+class ContentReader extends Reader {
+    private static final int BUFFER_SIZE = 8192;
+    private final Reader source;
+    private final long maxLength;
+    private final int sampleLength;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder ready = new StringBuilder(BUFFER_SIZE);
+    private final StringBuilder pendingWhitespaces = new StringBuilder();
+    private final StringBuilder sample;
+    private int readyPosition = 0;
+    private long position = 0;
+    private long length = 0;
+    private boolean started = false;
+    private boolean truncated = false;
+    private boolean eof = false;
+
+    ContentReader(Reader source, long maxLength, int sampleLength) {
+        this.source = source;
+        this.maxLength = maxLength;
+        this.sampleLength = sampleLength;
+        this.sample = new StringBuilder(Math.min(sampleLength, BUFFER_SIZE));
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (readyPosition == ready.length()) {
+            ready.setLength(0);
+            readyPosition = 0;
+            if (eof) {
+                return -1;
+            }
+            fill();
+        }
+        int nbChars = Math.min(len, ready.length() - readyPosition);
+        ready.getChars(readyPosition, readyPosition + nbChars, cbuf, off);
+        readyPosition += nbChars;
+        return nbChars;
+    }
+
+    private void fill() throws IOException {
+        int nbRead = source.read(buffer, 0, buffer.length);
+        if (nbRead == -1) {
+            eof = true;
+            return;
+        }
+        for (int i = 0; i < nbRead; i++) {
+            char c = buffer[i];
+            if (!started) {
+                if (isWhitespace(c)) continue;
+                started = true;
+            }
+            if (maxLength >= 0 && position >= maxLength) {
+                if (!isWhitespace(c)) {
+                    truncated = true;
+                    eof = true;
+                    drainSource();
+                    return;
+                }
+                continue;
+            }
+            position++;
+            if (isWhitespace(c)) {
+                pendingWhitespaces.append(c);
+            } else {
+                if (pendingWhitespaces.length() > 0) {
+                    append(pendingWhitespaces);
+                    pendingWhitespaces.setLength(0);
+                }
+                append(c);
+            }
+        }
+    }
+
+    private void drainSource() throws IOException {
+        while (source.read(buffer, 0, buffer.length) != -1) {
+            // consumes the parsing of the embedded documents after the truncated content
+        }
+    }
+
+    private void append(CharSequence chars) {
+        for (int i = 0; i < chars.length(); i++) {
+            append(chars.charAt(i));
+        }
+    }
+
+    private void append(char c) {
+        ready.append(c);
+        if (sample.length() < sampleLength) {
+            sample.append(c);
+        }
+        length++;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c <= ' '; // same as String.trim()
+    }
+
+    /** number of characters read so far */
+    long length() {
+        return length;
+    }
+
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    String sample() {
+        return sample.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
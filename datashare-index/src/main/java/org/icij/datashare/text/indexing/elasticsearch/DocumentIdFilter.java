@@ -0,0 +1,105 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import static java.lang.System.currentTimeMillis;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.icij.datashare.text.indexing.elasticsearch.ElasticsearchConfiguration.DEFAULT_SEARCH_SIZE;
+import static org.icij.datashare.text.indexing.elasticsearch.ElasticsearchConfiguration.ES_DOCUMENT_TYPE;
+import static org.icij.datashare.text.indexing.elasticsearch.ElasticsearchSearcher.KEEP_ALIVE;
+
+/**
+ * Probabilistic set of the document ids already seen in an index.
+ *
+ * A negative answer of {@link #mightContain(String)} is certain, so the caller can skip the
+ * elasticsearch lookup. A positive answer can be a false positive and must be confirmed by elasticsearch.
+ *
+ * The underlying guava bloom filter is lock-free, the filter can be shared by the spewer threads.
+ */
+class DocumentIdFilter {
+    private static final Logger logger = LoggerFactory.getLogger(DocumentIdFilter.class);
+    static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.01;
+    private final BloomFilter<CharSequence> bloomFilter;
+
+    DocumentIdFilter(long expectedDocuments) {
+        this(expectedDocuments, DEFAULT_FALSE_POSITIVE_PROBABILITY);
+    }
+
+    DocumentIdFilter(long expectedDocuments, double falsePositiveProbability) {
+        bloomFilter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedDocuments, falsePositiveProbability);
+    }
+
+    boolean mightContain(String documentId) {
+        return bloomFilter.mightContain(documentId);
+    }
+
+    void put(String documentId) {
+        bloomFilter.put(documentId);
+    }
+
+    /**
+     * adds all the document ids of the index with a sliced scroll (one slice per thread)
+     *
+     * @return the number of ids read from the index
+     */
+    long warm(RestHighLevelClient client, String docTypeField, String indexName, int nbSlices) {
+        long before = currentTimeMillis();
+        LongAdder nbIds = new LongAdder();
+        IntStream.range(0, nbSlices).parallel().forEach(slice -> {
+            try {
+                nbIds.add(scrollIds(client, docTypeField, indexName, slice, nbSlices));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        logger.info("read {} document ids of index {} in {}ms (approximate element count {})",
+                nbIds.sum(), indexName, currentTimeMillis() - before, bloomFilter.approximateElementCount());
+        return nbIds.sum();
+    }
+
+    private long scrollIds(RestHighLevelClient client, String docTypeField, String indexName, int slice, int nbSlices) throws IOException {
+        SearchSourceBuilder sourceBuilder = new SearchSourceBuilder()
+                .query(termQuery(docTypeField, ES_DOCUMENT_TYPE))
+                .fetchSource(false)
+                .size(DEFAULT_SEARCH_SIZE);
+        if (nbSlices > 1) {
+            sourceBuilder.slice(new SliceBuilder(slice, nbSlices));
+        }
+        SearchResponse response = client.search(new SearchRequest(indexName).source(sourceBuilder).scroll(KEEP_ALIVE), RequestOptions.DEFAULT);
+        String scrollId = response.getScrollId();
+        long nbIds = 0;
+        try {
+            while (response.getHits().getHits().length > 0) {
+                for (SearchHit hit : response.getHits().getHits()) {
+                    put(hit.getId());
+                    nbIds++;
+                }
+                response = client.scroll(new SearchScrollRequest(scrollId).scroll(KEEP_ALIVE), RequestOptions.DEFAULT);
+                scrollId = response.getScrollId();
+            }
+        } finally {
+            ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+            clearScrollRequest.addScrollId(scrollId);
+            client.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+        }
+        return nbIds;
+    }
+}
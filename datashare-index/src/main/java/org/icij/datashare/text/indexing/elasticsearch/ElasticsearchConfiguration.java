@@ -5,15 +5,20 @@ import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.client.NodeSelector;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestClientBuilder;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.client.indices.CreateIndexRequest;
 import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.client.sniff.ElasticsearchNodesSniffer;
+import org.elasticsearch.client.sniff.SniffOnFailureListener;
+import org.elasticsearch.client.sniff.Sniffer;
 import org.elasticsearch.common.settings.Settings;
+import org.icij.datashare.HumanReadableSize;
 import org.icij.datashare.PropertiesProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,9 +28,19 @@ import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static com.google.common.io.ByteStreams.toByteArray;
 import static java.lang.String.format;
+import static java.util.Collections.emptyList;
 import static org.apache.commons.lang3.SystemUtils.IS_OS_WINDOWS;
 import static org.apache.http.HttpHost.create;
 import static org.elasticsearch.common.xcontent.XContentType.JSON;
@@ -46,11 +61,25 @@ public class ElasticsearchConfiguration {
     public static final String INDEX_JOIN_FIELD_NAME_PROP = "indexJoinFieldName";
     public static final String INDEX_TYPE_FIELD_NAME_PROP = "indexTypeFieldName";
     public static final String CLUSTER_PROP = "clusterName";
+    public static final String MAX_CONNECTIONS_PROP = "elasticsearchMaxConnections";
+    public static final String MAX_CONNECTIONS_PER_ROUTE_PROP = "elasticsearchMaxConnectionsPerRoute";
+    public static final String IO_THREADS_PROP = "elasticsearchIoThreads";
+    public static final String KEEP_ALIVE_SECONDS_PROP = "elasticsearchKeepAliveSeconds";
+    public static final String SNIFF_PROP = "elasticsearchSniff";
+    public static final String SNIFF_INTERVAL_SECONDS_PROP = "elasticsearchSniffIntervalSeconds";
+    static final int DEFAULT_MAX_CONNECTIONS = 100;
+    static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 50;
+    static final int DEFAULT_SNIFF_INTERVAL_SECONDS = 300;
+    public static final String INDEX_SHARDS_PROP = "indexShards";
+    public static final String INDEX_REPLICAS_PROP = "indexReplicas";
+    public static final String INDEX_TARGET_SHARD_SIZE_PROP = "indexTargetShardSize";
+    static final String AUTO_SHARDS = "auto";
 
     public static final String DEFAULT_ADDRESS = "http://localhost:9200";
     public static final String ES_CLUSTER_NAME = "datashare";
     static final String  ES_DOCUMENT_TYPE = "Document";
     static final String  ES_DUPLICATE_TYPE = "Duplicate";
+    static final String  ES_CONTENT_PAGE_TYPE = "ContentPage";
     static final String  ES_CONTENT_FIELD = "content";
 
     private static final String DEFAULT_INDEX_JOIN_FIELD = "join";
@@ -62,52 +91,116 @@ public class ElasticsearchConfiguration {
     final String docTypeField;
     WriteRequest.RefreshPolicy refreshPolicy = WriteRequest.RefreshPolicy.NONE;
 
-    final int shards = 1;
-    final int replicas = 1;
+    final String shards; // number of shards, "auto" to estimate it from the data dir, or null for the settings file value
+    final Integer replicas;
+    private final String dataDir;
+    private final long targetShardSize;
 
     ElasticsearchConfiguration(PropertiesProvider propertiesProvider) {
         indexJoinField = propertiesProvider.get(INDEX_JOIN_FIELD_NAME_PROP).orElse(DEFAULT_INDEX_JOIN_FIELD);
         docTypeField = propertiesProvider.get(INDEX_TYPE_FIELD_NAME_PROP).orElse(DEFAULT_DOC_TYPE_FIELD);
+        shards = propertiesProvider.get(INDEX_SHARDS_PROP).orElse(null);
+        replicas = propertiesProvider.get(INDEX_REPLICAS_PROP).map(Integer::parseInt).orElse(null);
+        dataDir = propertiesProvider.get("dataDir").orElse(null);
+        targetShardSize = propertiesProvider.get(INDEX_TARGET_SHARD_SIZE_PROP).map(HumanReadableSize::parse).orElse(ShardCountEstimator.DEFAULT_TARGET_SHARD_SIZE);
     }
 
     public static RestHighLevelClient createESClient(final PropertiesProvider propertiesProvider) {
         System.setProperty("es.set.netty.runtime.available.processors", "false");
         try {
-            URL indexUrl = new URL(propertiesProvider.get(INDEX_ADDRESS_PROP).orElse(DEFAULT_ADDRESS));
-            HttpHost httpHost = create(format("%s://%s:%d", indexUrl.getProtocol(), indexUrl.getHost(), indexUrl.getPort()));
+            List<URL> indexUrls = parseAddresses(propertiesProvider.get(INDEX_ADDRESS_PROP).orElse(DEFAULT_ADDRESS));
+            HttpHost[] httpHosts = indexUrls.stream().map(url -> create(format("%s://%s:%d", url.getProtocol(), url.getHost(), url.getPort()))).toArray(HttpHost[]::new);
 
-            RestClientBuilder.HttpClientConfigCallback httpClientConfigCallback = httpClientBuilder -> httpClientBuilder;
-            if (indexUrl.getUserInfo() != null) {
-                String[] userInfo = indexUrl.getUserInfo().split(":");
-                LOGGER.info("using credentials from url (user={})", userInfo[0]);
-                final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-                credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(userInfo[0], userInfo[1]));
-
-                httpClientConfigCallback = httpClientBuilder -> httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+            final CredentialsProvider credentialsProvider;
+            Optional<String> userInfo = indexUrls.stream().map(URL::getUserInfo).filter(Objects::nonNull).findFirst();
+            if (userInfo.isPresent()) {
+                String[] userPass = userInfo.get().split(":");
+                LOGGER.info("using credentials from url (user={})", userPass[0]);
+                credentialsProvider = new BasicCredentialsProvider();
+                credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(userPass[0], userPass[1]));
+            } else {
+                credentialsProvider = null;
             }
-            RestHighLevelClient client = new RestHighLevelClient(RestClient.builder(httpHost)
+            int maxConnections = propertiesProvider.get(MAX_CONNECTIONS_PROP).map(Integer::parseInt).orElse(DEFAULT_MAX_CONNECTIONS);
+            int maxConnectionsPerRoute = propertiesProvider.get(MAX_CONNECTIONS_PER_ROUTE_PROP).map(Integer::parseInt).orElse(DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+            Optional<Integer> ioThreads = propertiesProvider.get(IO_THREADS_PROP).map(Integer::parseInt);
+            Optional<Long> keepAliveMillis = propertiesProvider.get(KEEP_ALIVE_SECONDS_PROP).map(Long::parseLong).map(TimeUnit.SECONDS::toMillis);
+            RestClientBuilder.HttpClientConfigCallback httpClientConfigCallback = httpClientBuilder -> {
+                httpClientBuilder.setMaxConnTotal(maxConnections).setMaxConnPerRoute(maxConnectionsPerRoute);
+                ioThreads.ifPresent(n -> httpClientBuilder.setDefaultIOReactorConfig(IOReactorConfig.custom().setIoThreadCount(n).build()));
+                keepAliveMillis.ifPresent(millis -> httpClientBuilder.setKeepAliveStrategy((response, context) -> millis));
+                return credentialsProvider == null ? httpClientBuilder : httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+            };
+
+            boolean sniff = Boolean.parseBoolean(propertiesProvider.get(SNIFF_PROP).orElse("false"));
+            SniffOnFailureListener sniffOnFailureListener = sniff ? new SniffOnFailureListener() : null;
+            RestClientBuilder restClientBuilder = RestClient.builder(httpHosts)
+                    .setNodeSelector(NodeSelector.SKIP_DEDICATED_MASTERS)
                     .setRequestConfigCallback(requestConfigBuilder -> requestConfigBuilder
                             .setConnectTimeout(5000)
                             .setSocketTimeout(60000))
-                    .setHttpClientConfigCallback(httpClientConfigCallback));
-            String clusterName = propertiesProvider.get(CLUSTER_PROP).orElse(ES_CLUSTER_NAME);
-            return client;
+                    .setHttpClientConfigCallback(httpClientConfigCallback);
+            if (sniffOnFailureListener != null) {
+                restClientBuilder.setFailureListener(sniffOnFailureListener);
+            }
+            LOGGER.info("creating elasticsearch client for {} (maxConnections={} maxConnectionsPerRoute={} sniff={})",
+                    Arrays.toString(httpHosts), maxConnections, maxConnectionsPerRoute, sniff);
+            RestClient restClient = restClientBuilder.build();
+            if (sniffOnFailureListener == null) {
+                return new RestHighLevelClient(restClient, RestClient::close, emptyList()) {};
+            }
+            // the sniffer replaces the configured hosts with the data nodes of the cluster
+            // and sniffs again as soon as a node fails
+            Sniffer sniffer = Sniffer.builder(restClient)
+                    .setNodesSniffer(new ElasticsearchNodesSniffer(restClient, ElasticsearchNodesSniffer.DEFAULT_SNIFF_REQUEST_TIMEOUT,
+                            "https".equals(indexUrls.get(0).getProtocol()) ? ElasticsearchNodesSniffer.Scheme.HTTPS : ElasticsearchNodesSniffer.Scheme.HTTP))
+                    .setSniffIntervalMillis((int) TimeUnit.SECONDS.toMillis(propertiesProvider.get(SNIFF_INTERVAL_SECONDS_PROP).map(Integer::parseInt).orElse(DEFAULT_SNIFF_INTERVAL_SECONDS)))
+                    .build();
+            sniffOnFailureListener.setSniffer(sniffer);
+            return new RestHighLevelClient(restClient, client -> {
+                sniffer.close();
+                client.close();
+            }, emptyList()) {};
         } catch (MalformedURLException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * @param addresses comma separated elasticsearch node urls
+     */
+    static List<URL> parseAddresses(String addresses) throws MalformedURLException {
+        List<URL> urls = new ArrayList<>();
+        for (String address : addresses.split(",")) {
+            if (!address.isBlank()) {
+                urls.add(new URL(address.trim()));
+            }
+        }
+        if (urls.isEmpty()) {
+            throw new MalformedURLException("no elasticsearch address in " + addresses);
+        }
+        return urls;
+    }
+
     public static boolean createIndex(RestHighLevelClient client, String indexName) {
+        return createIndex(client, indexName, () -> Settings.EMPTY);
+    }
+
+    /**
+     * @param indexSettings settings overriding the ones of the settings file, only computed if the index is created
+     */
+    static boolean createIndex(RestHighLevelClient client, String indexName, Supplier<Settings> indexSettings) {
         GetIndexRequest request = new GetIndexRequest(indexName);
         try {
             if (!client.indices().exists(request, RequestOptions.DEFAULT)) {
-                LOGGER.info("index {} does not exist, creating one", indexName);
                 CreateIndexRequest createReq = new CreateIndexRequest(indexName);
-                if (IS_OS_WINDOWS) {
-                    createReq.settings(getResourceContent(SETTINGS_RESOURCE_NAME_WINDOWS), JSON);
-                } else {
-                    createReq.settings(getResourceContent(SETTINGS_RESOURCE_NAME), JSON);
-                }
+                Settings settings = Settings.builder()
+                        .loadFromSource(getResourceContent(IS_OS_WINDOWS ? SETTINGS_RESOURCE_NAME_WINDOWS : SETTINGS_RESOURCE_NAME), JSON)
+                        .put(indexSettings.get())
+                        .build();
+                LOGGER.info("index {} does not exist, creating one with {} shard(s) and {} replica(s)", indexName,
+                        settings.get("index.number_of_shards", "1"), settings.get("index.number_of_replicas", "1"));
+                createReq.settings(settings);
                 createReq.mapping(getResourceContent(MAPPING_RESOURCE_NAME), JSON);
                 client.indices().create(createReq, RequestOptions.DEFAULT);
                 return true;
@@ -133,12 +226,34 @@ public class ElasticsearchConfiguration {
                 '}';
     }
 
+    /**
+     * @return the configured settings of the new indices (that override the settings file)
+     */
     Settings getIndexSettings() {
-        return Settings.builder()
-                .put("index.number_of_shards",   shards)
-                .put("index.number_of_replicas", replicas)
-                .put("index.max_result_window",  INDEX_MAX_RESULT_WINDOW)
-                .build();
+        return getIndexSettings(null, null);
+    }
+
+    Settings getIndexSettings(Integer requestShards, Integer requestReplicas) {
+        Settings.Builder settings = Settings.builder();
+        if (requestShards != null) {
+            settings.put("index.number_of_shards", requestShards);
+        } else if (AUTO_SHARDS.equals(shards)) {
+            settings.put("index.number_of_shards", estimateShards());
+        } else if (shards != null) {
+            settings.put("index.number_of_shards", Integer.parseInt(shards));
+        }
+        if (requestReplicas != null || replicas != null) {
+            settings.put("index.number_of_replicas", requestReplicas != null ? requestReplicas : replicas);
+        }
+        return settings.build();
+    }
+
+    private int estimateShards() {
+        if (dataDir == null || !Files.isDirectory(Paths.get(dataDir))) {
+            LOGGER.warn("cannot estimate the number of shards without data dir (dataDir={})", dataDir);
+            return 1;
+        }
+        return new ShardCountEstimator(targetShardSize, ShardCountEstimator.DEFAULT_INDEX_TO_SOURCE_RATIO).estimate(Paths.get(dataDir));
     }
 
     private static String getResourceContent(String resourceName) {
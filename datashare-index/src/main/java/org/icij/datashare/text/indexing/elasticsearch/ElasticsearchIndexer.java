@@ -2,35 +2,54 @@ package org.icij.datashare.text.indexing.elasticsearch;
 
 import com.google.inject.Inject;
 import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.nio.entity.NByteArrayEntity;
 import org.apache.http.nio.entity.NStringEntity;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.Version;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.DocWriteResponse;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.support.WriteRequest;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.HeapBufferedAsyncResponseConsumer;
+import org.elasticsearch.client.HttpAsyncResponseConsumerFactory;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.document.DocumentField;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.reindex.BulkByScrollResponse;
 import org.elasticsearch.index.reindex.UpdateByQueryRequest;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.script.Script;
-import org.elasticsearch.script.ScriptType;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.elasticsearch.search.sort.SortOrder;
 import org.icij.datashare.Entity;
 import org.icij.datashare.PropertiesProvider;
 import org.icij.datashare.json.JsonObjectMapper;
@@ -45,29 +64,63 @@ import org.icij.datashare.text.nlp.Pipeline;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static java.lang.String.format;
+import static java.util.Arrays.asList;
 import static java.util.Arrays.stream;
 import static java.util.Optional.ofNullable;
 import static java.util.stream.Collectors.toList;
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
 import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
 import static org.icij.datashare.json.JsonObjectMapper.*;
 import static org.icij.datashare.text.indexing.elasticsearch.ElasticsearchConfiguration.DEFAULT_SEARCH_SIZE;
+import static org.icij.datashare.text.indexing.elasticsearch.ElasticsearchConfiguration.ES_CONTENT_PAGE_TYPE;
 import static org.icij.datashare.text.indexing.elasticsearch.ElasticsearchSearcher.searchHitStream;
 
 
-public class ElasticsearchIndexer implements Indexer {
+public class ElasticsearchIndexer implements Indexer, AsyncIndexer {
+    public static final String MAX_IN_FLIGHT_REQUESTS_PROP = "indexerMaxInFlightRequests";
+    static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 64;
+    public static final String MAX_WAITING_REQUESTS_PROP = "indexerMaxWaitingRequests";
+    static final int DEFAULT_MAX_WAITING_REQUESTS = 1024;
+    public static final String PROXY_MAX_RESPONSE_SIZE_PROP = "proxyMaxResponseSize";
+    static final int DEFAULT_PROXY_MAX_RESPONSE_SIZE = 100 * 1024 * 1024;
+    private static final Version MIN_POINT_IN_TIME_VERSION = Version.fromString("7.10.0");
     public final RestHighLevelClient client;
     private final ElasticsearchConfiguration esCfg;
-
-    static private final Map<String, String> memoizeScript = new HashMap<>();
+    private final Semaphore inFlightRequests;
+    private final BlockingQueue<Runnable> waitingRequests;
+    private final AtomicInteger waitingRequestsDrains = new AtomicInteger();
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final OccurrencesSearcher occurrencesSearcher;
+    private final StoredScripts scripts;
+    private final int proxyMaxResponseSize;
+    private final RequestOptions proxyOptions;
+    private final RequestOptions gzipProxyOptions;
+    private final SearchProxyCache searchCache;
+    private final int contentPageSize;
+    private volatile Boolean pointInTimeSupported;
+
+    static private final Map<String, String> memoizeScript = new ConcurrentHashMap<>();
 
     public static Map<String, String> getMemoizeScript() {
         return memoizeScript;
@@ -77,11 +130,24 @@ public class ElasticsearchIndexer implements Indexer {
     public ElasticsearchIndexer(final RestHighLevelClient esClient, final PropertiesProvider propertiesProvider) {
         this.client = esClient;
         esCfg = new ElasticsearchConfiguration(propertiesProvider);
+        inFlightRequests = new Semaphore(propertiesProvider.get(MAX_IN_FLIGHT_REQUESTS_PROP).map(Integer::parseInt).orElse(DEFAULT_MAX_IN_FLIGHT_REQUESTS));
+        waitingRequests = new LinkedBlockingQueue<>(propertiesProvider.get(MAX_WAITING_REQUESTS_PROP).map(Integer::parseInt).orElse(DEFAULT_MAX_WAITING_REQUESTS));
+        occurrencesSearcher = new OccurrencesSearcher(esClient, propertiesProvider);
+        scripts = new StoredScripts(esClient);
+        registerScripts();
+        proxyMaxResponseSize = propertiesProvider.get(PROXY_MAX_RESPONSE_SIZE_PROP).map(Integer::parseInt).orElse(DEFAULT_PROXY_MAX_RESPONSE_SIZE);
+        proxyOptions = RequestOptions.DEFAULT.toBuilder().setHttpAsyncResponseConsumerFactory(
+                new HttpAsyncResponseConsumerFactory.HeapBufferedResponseConsumerFactory(proxyMaxResponseSize)).build();
+        gzipProxyOptions = RequestOptions.DEFAULT.toBuilder().addHeader("Accept-Encoding", "gzip")
+                .setHttpAsyncResponseConsumerFactory(() -> new CompressedResponseConsumer(proxyMaxResponseSize)).build();
+        searchCache = new SearchProxyCache(propertiesProvider);
+        contentPageSize = propertiesProvider.get(ElasticsearchSpewer.CONTENT_PAGE_SIZE_PROP).map(Integer::parseInt).orElse(-1);
         LOGGER.info("indexer defined with {}", esCfg);
     }
 
     @Override
     public void close() throws IOException {
+        latencies.forEach((operation, histogram) -> LOGGER.info("async {} latencies: {}", operation, histogram));
         LOGGER.info("Closing Elasticsearch connections");
         client.close();
         LOGGER.info("Elasticsearch connections closed");
@@ -89,66 +155,115 @@ public class ElasticsearchIndexer implements Indexer {
 
     @Override
     public boolean bulkAdd(final String indexName, Pipeline.Type nerType, List<NamedEntity> namedEntities, Document parent) throws IOException {
+        return executeBulk(createNerBulkRequest(indexName, nerType, namedEntities, parent));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> bulkAddAsync(final String indexName, Pipeline.Type nerType, List<NamedEntity> namedEntities, Document parent) {
+        try {
+            return executeBulkAsync("bulkAdd", createNerBulkRequest(indexName, nerType, namedEntities, parent));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private BulkRequest createNerBulkRequest(String indexName, Pipeline.Type nerType, List<NamedEntity> namedEntities, Document parent) throws IOException {
         BulkRequest bulkRequest = new BulkRequest();
+        createNerDoneRequests(indexName, nerType, parent).forEach(bulkRequest::add);
+        createNamedEntityRequests(indexName, namedEntities, parent).forEach(bulkRequest::add);
+        bulkRequest.setRefreshPolicy(esCfg.refreshPolicy);
+        return bulkRequest;
+    }
 
+    List<UpdateRequest> createNerDoneRequests(String indexName, Pipeline.Type nerType, Document parent) throws IOException {
         String routing = ofNullable(parent.getRootDocument()).orElse(parent.getId());
-        bulkRequest.add(new UpdateRequest(indexName, parent.getId()).doc(
-                jsonBuilder().startObject()
-                        .field("status", Document.Status.DONE)
-                        .endObject()).routing(routing));
-        bulkRequest.add(new UpdateRequest(indexName, parent.getId())
-                .script(new Script(ScriptType.INLINE, "painless",
-                        "if (!ctx._source.nerTags.contains(params.nerTag)) ctx._source.nerTags.add(params.nerTag);",
-                        new HashMap<String, Object>() {{
+        return asList(
+                new UpdateRequest(indexName, parent.getId()).doc(
+                        jsonBuilder().startObject()
+                                .field("status", Document.Status.DONE)
+                                .endObject()).routing(routing),
+                new UpdateRequest(indexName, parent.getId())
+                        .script(scripts.script(StoredScripts.ADD_NER_TAG, new HashMap<String, Object>() {{
                             put("nerTag", nerType.toString());
                         }})).routing(routing));
+    }
 
-        for (Entity child : namedEntities) {
-            bulkRequest.add(createIndexRequest(indexName, JsonObjectMapper.getType(child), child.getId(),
-                    getJson(child), parent.getId(), routing));
-        }
-        bulkRequest.setRefreshPolicy(esCfg.refreshPolicy);
+    List<IndexRequest> createNamedEntityRequests(String indexName, List<NamedEntity> namedEntities, Document parent) {
+        String routing = ofNullable(parent.getRootDocument()).orElse(parent.getId());
+        return namedEntities.stream().map(child -> createIndexRequest(indexName, JsonObjectMapper.getType(child), child.getId(),
+                getJson(child), parent.getId(), routing)).collect(toList());
+    }
 
-        BulkResponse bulkResponse = client.bulk(bulkRequest, RequestOptions.DEFAULT);
-        if (bulkResponse.hasFailures()) {
-            for (BulkItemResponse resp : bulkResponse.getItems()) {
-                if (resp.isFailed()) {
-                    LOGGER.error("bulk add failed : {}", resp.getFailureMessage());
-                }
-            }
-            return false;
-        }
-        return true;
+    WriteRequest.RefreshPolicy getRefreshPolicy() {
+        return esCfg.refreshPolicy;
     }
 
     @Override
     public <T extends Entity> boolean bulkAdd(final String indexName, List<T> objs) throws IOException {
-        BulkRequest bulkRequest = new BulkRequest();
-        objs.stream().map(e -> createIndexRequest(indexName, getType(e), e.getId(), getJson(e), getParent(e), getRoot(e))).forEach(bulkRequest::add);
-        return executeBulk(bulkRequest);
+        return executeBulk(createBulkAddRequest(indexName, objs));
+    }
+
+    @Override
+    public <T extends Entity> CompletableFuture<Boolean> bulkAddAsync(String indexName, List<T> objs) {
+        return executeBulkAsync("bulkAdd", createBulkAddRequest(indexName, objs));
     }
 
     @Override
     public <T extends Entity> boolean bulkUpdate(String indexName, List<T> entities) throws IOException {
+        return executeBulk(createBulkUpdateRequest(indexName, entities));
+    }
+
+    @Override
+    public <T extends Entity> CompletableFuture<Boolean> bulkUpdateAsync(String indexName, List<T> entities) {
+        return executeBulkAsync("bulkUpdate", createBulkUpdateRequest(indexName, entities));
+    }
+
+    private <T extends Entity> BulkRequest createBulkAddRequest(String indexName, List<T> objs) {
+        BulkRequest bulkRequest = new BulkRequest();
+        objs.stream().map(e -> createIndexRequest(indexName, getType(e), e.getId(), getJson(e), getParent(e), getRoot(e))).forEach(bulkRequest::add);
+        return bulkRequest.setRefreshPolicy(esCfg.refreshPolicy);
+    }
+
+    private <T extends Entity> BulkRequest createBulkUpdateRequest(String indexName, List<T> entities) {
         BulkRequest bulkRequest = new BulkRequest();
         entities.stream().map(e -> createUpdateRequest(indexName, getType(e), e.getId(), getJson(e), getParent(e), getRoot(e))).forEach(bulkRequest::add);
-        return executeBulk(bulkRequest);
+        return bulkRequest.setRefreshPolicy(esCfg.refreshPolicy);
     }
 
     @Override
     public <T extends Entity> void add(final String indexName, T obj) throws IOException {
-        String type = JsonObjectMapper.getType(obj);
-        String id = obj.getId();
-        client.index(createIndexRequest(indexName, type, id, getJson(obj), getParent(obj), getRoot(obj)).
-                setRefreshPolicy(esCfg.refreshPolicy), RequestOptions.DEFAULT);
+        client.index(createIndexRequest(indexName, obj), RequestOptions.DEFAULT);
+        searchCache.invalidate(indexName);
+    }
+
+    @Override
+    public <T extends Entity> CompletableFuture<Void> addAsync(String indexName, T obj) {
+        IndexRequest indexRequest = createIndexRequest(indexName, obj);
+        return this.<IndexResponse>execute("add", listener -> client.indexAsync(indexRequest, RequestOptions.DEFAULT, listener))
+                .thenAccept(response -> searchCache.invalidate(indexName));
     }
 
     @Override
     public <T extends Entity> void update(String indexName, T obj) throws IOException {
-        String type = JsonObjectMapper.getType(obj);
-        String id = obj.getId();
-        client.update(createUpdateRequest(indexName, type, id, getJson(obj), getParent(obj), getRoot(obj)).
-                setRefreshPolicy(esCfg.refreshPolicy), RequestOptions.DEFAULT);
+        client.update(createUpdateRequest(indexName, obj), RequestOptions.DEFAULT);
+        searchCache.invalidate(indexName);
+    }
+
+    @Override
+    public <T extends Entity> CompletableFuture<Void> updateAsync(String indexName, T obj) {
+        UpdateRequest updateRequest = createUpdateRequest(indexName, obj);
+        return this.<UpdateResponse>execute("update", listener -> client.updateAsync(updateRequest, RequestOptions.DEFAULT, listener))
+                .thenAccept(response -> searchCache.invalidate(indexName));
+    }
+
+    private <T extends Entity> IndexRequest createIndexRequest(String indexName, T obj) {
+        return createIndexRequest(indexName, JsonObjectMapper.getType(obj), obj.getId(), getJson(obj), getParent(obj), getRoot(obj)).
+                setRefreshPolicy(esCfg.refreshPolicy);
+    }
+
+    private <T extends Entity> UpdateRequest createUpdateRequest(String indexName, T obj) {
+        return createUpdateRequest(indexName, JsonObjectMapper.getType(obj), obj.getId(), getJson(obj), getParent(obj), getRoot(obj)).
+                setRefreshPolicy(esCfg.refreshPolicy);
     }
 
     @Override
@@ -165,6 +280,72 @@ public class ElasticsearchIndexer implements Indexer {
         return entity != null ? EntityUtils.toString(entity) : null;
     }
 
+    /**
+     * sends a raw request without reading the response, so that its entity can be streamed to a client.
+     * With <code>gzip</code>, the response is asked compressed to elasticsearch, so the buffered response is the
+     * compressed one, and its entity is returned compressed (with the <code>Content-Encoding</code> header of the response).
+     * The size of the buffered response is limited by the property <code>proxyMaxResponseSize</code>.
+     */
+    public Response executeRaw(String method, String url, HttpEntity body, boolean gzip) throws IOException {
+        Request request = new Request(method, url.startsWith("/") ? url : "/" + url);
+        request.setEntity(body);
+        request.setOptions(gzip ? gzipProxyOptions : proxyOptions);
+        return client.getLowLevelClient().performRequest(request);
+    }
+
+    /**
+     * @return the maximum size of the proxied requests and responses
+     */
+    public int getProxyMaxResponseSize() {
+        return proxyMaxResponseSize;
+    }
+
+    /**
+     * buffers the response like the default consumer, but hides the content encoding of its entity
+     * so that the client does not decompress it: the compressed content is forwarded as is.
+     */
+    private static class CompressedResponseConsumer extends HeapBufferedAsyncResponseConsumer {
+        CompressedResponseConsumer(int bufferLimit) {
+            super(bufferLimit);
+        }
+
+        @Override
+        protected HttpResponse buildResult(HttpContext context) throws Exception {
+            HttpResponse response = super.buildResult(context);
+            if (response.getEntity() != null) {
+                response.setEntity(new HttpEntityWrapper(response.getEntity()) {
+                    @Override
+                    public Header getContentEncoding() {
+                        return null;
+                    }
+                });
+            }
+            return response;
+        }
+    }
+
+    /**
+     * sends a search or count request of the proxy through the search cache: identical requests
+     * made a few seconds apart, or at the same time, are only sent once to elasticsearch.
+     */
+    public SearchProxyCache.CachedResponse executeCachedRaw(String method, String url, byte[] body) throws IOException {
+        return searchCache.get(method, url, body, () -> {
+            Response response = executeRaw(method, url, body.length == 0 ? null : new NByteArrayEntity(body, ContentType.APPLICATION_JSON), false);
+            HttpEntity entity = response.getEntity();
+            String contentType = entity == null || entity.getContentType() == null ? "application/json" : entity.getContentType().getValue();
+            return new SearchProxyCache.CachedResponse(response.getStatusLine().getStatusCode(), contentType,
+                    entity == null ? new byte[0] : EntityUtils.toByteArray(entity));
+        });
+    }
+
+    public boolean isCacheableSearch(String method, String url) {
+        return searchCache.isCacheable(method, url);
+    }
+
+    void invalidateSearches(BulkRequest bulkRequest) {
+        bulkRequest.requests().stream().map(DocWriteRequest::index).distinct().forEach(searchCache::invalidate);
+    }
+
     private IndexRequest createIndexRequest(String index, String type, String id, Map<String, Object> json, String parent, String root) {
         IndexRequest req = new IndexRequest(index).id(id);
 
@@ -201,10 +382,52 @@ public class ElasticsearchIndexer implements Indexer {
 
     @Override
     public <T extends Entity> T get(String indexName, String id, String root) {
+        try {
+            return toEntity(client.get(new GetRequest(indexName, id).routing(root), RequestOptions.DEFAULT), id);
+        } catch (IOException e) {
+            LOGGER.error("Failed to get entity " + id + " in index " + indexName, e);
+        }
+        return null;
+    }
+
+    @Override
+    public <T extends Entity> CompletableFuture<T> getAsync(String indexName, String id, String root) {
+        GetRequest getRequest = new GetRequest(indexName, id).routing(root);
+        return this.<GetResponse>execute("get", listener -> client.getAsync(getRequest, RequestOptions.DEFAULT, listener))
+                .thenApply(response -> toEntity(response, id));
+    }
+
+    /**
+     * gets several entities of an index in one round trip.
+     *
+     * @param idsWithRouting the ids of the entities with their routing (i.e. their root document id)
+     * @param sourceExcludes the source fields that should not be read (for example the content)
+     * @return the entities found, by id
+     */
+    public <T extends Entity> Map<String, T> get(String indexName, Map<String, String> idsWithRouting, String... sourceExcludes) throws IOException {
+        Map<String, T> entities = new HashMap<>();
+        if (idsWithRouting.isEmpty()) {
+            return entities;
+        }
+        FetchSourceContext sourceContext = new FetchSourceContext(true, null, sourceExcludes);
+        MultiGetRequest request = new MultiGetRequest();
+        idsWithRouting.forEach((id, routing) -> request.add(new MultiGetRequest.Item(indexName, id).routing(routing).fetchSourceContext(sourceContext)));
+        for (MultiGetItemResponse item : client.mget(request, RequestOptions.DEFAULT).getResponses()) {
+            if (item.isFailed()) {
+                LOGGER.error("Failed to get entity {} in index {}: {}", item.getId(), indexName, item.getFailure().getMessage());
+                continue;
+            }
+            T entity = toEntity(item.getResponse(), item.getId());
+            if (entity != null) {
+                entities.put(item.getId(), entity);
+            }
+        }
+        return entities;
+    }
+
+    private <T extends Entity> T toEntity(GetResponse resp, String id) {
         String type = null;
         try {
-            final GetRequest req = new GetRequest(indexName, id).routing(root);
-            final GetResponse resp = client.get(req, RequestOptions.DEFAULT);
             if (resp.isExists()) {
                 Map<String, Object> sourceAsMap = resp.getSourceAsMap();
                 sourceAsMap.put("rootDocument", ofNullable(resp.getFields().get("_routing")).orElse(
@@ -213,28 +436,26 @@ public class ElasticsearchIndexer implements Indexer {
                 Class<T> tClass = (Class<T>) Class.forName("org.icij.datashare.text." + type);
                 return JsonObjectMapper.getObject(id, resp.getIndex(), sourceAsMap, tClass);
             }
-        } catch (IOException e) {
-            LOGGER.error("Failed to get entity " + id + " in index " + indexName, e);
         } catch (ClassNotFoundException e) {
             LOGGER.error("no entity for type " + type);
         }
         return null;
     }
+
     public static String readScriptFile(String painlessFilename) throws IOException {
         InputStream inputStream = ElasticsearchIndexer.class.getClassLoader().getResourceAsStream(painlessFilename);
         return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
     }
-    public static String getScriptStringFromFile(String filename) throws IOException {
-        String script;
-        if (memoizeScript.containsKey(filename)){
-            script = memoizeScript.get(filename);
-        }else{
-            script = ElasticsearchIndexer.readScriptFile(filename);
-            memoizeScript.put(filename, script);
-        }
-        return script;
+    public static String getScriptStringFromFile(String filename) {
+        return memoizeScript.computeIfAbsent(filename, f -> {
+            try {
+                return ElasticsearchIndexer.readScriptFile(f);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
-    private static Script getExtractedTextScript(final int offset, final int limit, final String targetLanguage) throws IOException {
+    private Script getExtractedTextScript(final int offset, final int limit, final String targetLanguage) {
         Map<String,Object> params =  new HashMap<String, Object>() {{
             put("offset", offset);
             put("limit", limit);
@@ -242,8 +463,7 @@ public class ElasticsearchIndexer implements Indexer {
         if(targetLanguage != null){
             params.put("targetLanguage",targetLanguage);
         }
-        return new Script(ScriptType.INLINE, "painless",
-                ElasticsearchIndexer.getScriptStringFromFile("extractedText.painless.java"),params);
+        return scripts.script(StoredScripts.EXTRACTED_TEXT, params);
     }
 
 
@@ -258,11 +478,17 @@ public class ElasticsearchIndexer implements Indexer {
         if (offset < 0 || limit < 0) {
             throw new StringIndexOutOfBoundsException(format("offset or limit should not be negative (offset=%d, limit=%d)", offset, limit));
         }
+        if (targetLanguage == null) {
+            ExtractedText pagedText = getPagedExtractedText(indexName, id, routing, offset, limit);
+            if (pagedText != null) {
+                return pagedText;
+            }
+        }
         sourceBuilder.query(boolQuery().must(termsQuery("_id", id)));
         Script script= this.getExtractedTextScript(offset, limit, targetLanguage);
         sourceBuilder.scriptField("pagination", script);
         SearchRequest searchRequest = new SearchRequest(new String[] {indexName}, sourceBuilder);
-        SearchResponse search = client.search(searchRequest.routing(routing), RequestOptions.DEFAULT);
+        SearchResponse search = withStoredScripts(() -> client.search(searchRequest.routing(routing), RequestOptions.DEFAULT));
         List<SearchHit> tHits = searchHitStream(() -> search.getHits().iterator()).collect(Collectors.toList());
         if(tHits.isEmpty()){
             throw new IllegalArgumentException("Document not found");
@@ -288,17 +514,72 @@ public class ElasticsearchIndexer implements Indexer {
        return extractedText;
     }
 
-    private static Script searchQueryOccurrencesScript(final String query, String targetLanguage) throws IOException {
-        Map<String,Object> params = new HashMap<String, Object>() {{
-            put("query", query);
-        }};
-        Script script;
-        if(targetLanguage != null){
-            params.put("targetLanguage",targetLanguage);
+    /**
+     * reads the extracted text from the content pages of the document, if content pages are enabled
+     * and the document has been indexed with pages.
+     * Only the document length and the pages overlapping the range are read, instead of the whole content.
+     *
+     * @return null if the document has no content pages or if the range has too many pages to be read by one search
+     */
+    private ExtractedText getPagedExtractedText(String indexName, String id, String routing, final int offset, final int limit) throws IOException {
+        long end = (long) offset + limit;
+        if (contentPageSize <= 0 || nbPages(offset, end, contentPageSize) > DEFAULT_SEARCH_SIZE) {
+            return null;
+        }
+        SearchRequest documentRequest = new SearchRequest(indexName).routing(routing).source(new SearchSourceBuilder()
+                .query(termsQuery("_id", id)).fetchSource(false)
+                .docValueField("contentTextLength").docValueField("contentPageSize").size(1));
+        SearchRequest pagesRequest = createPagesRequest(indexName, id, routing, offset, end, contentPageSize);
+        MultiSearchResponse.Item[] responses = client.msearch(new MultiSearchRequest().add(documentRequest).add(pagesRequest), RequestOptions.DEFAULT).getResponses();
+        for (MultiSearchResponse.Item response : responses) {
+            if (response.isFailure()) {
+                throw new IOException("cannot read content pages of document " + id, response.getFailure());
+            }
+        }
+        SearchHit[] documentHits = responses[0].getResponse().getHits().getHits();
+        if (documentHits.length == 0 || documentHits[0].field("contentPageSize") == null) {
+            return null;
+        }
+        int maxOffset = ((Number) documentHits[0].field("contentTextLength").getValue()).intValue();
+        if (end > maxOffset) {
+            throw new StringIndexOutOfBoundsException(format("Range [%d-%d] is out of document range ([0-%d])", offset, end, maxOffset));
         }
-        return new Script(ScriptType.INLINE, "painless",
-                ElasticsearchIndexer.getScriptStringFromFile("searchOccurrences.painless.java"),params);
+        SearchHit[] pages = responses[1].getResponse().getHits().getHits();
+        int documentPageSize = ((Number) documentHits[0].field("contentPageSize").getValue()).intValue();
+        if (documentPageSize != contentPageSize) {
+            // the document has been indexed with another page size: the range may cover more pages
+            if (nbPages(offset, end, documentPageSize) > DEFAULT_SEARCH_SIZE) {
+                return null;
+            }
+            pages = client.search(createPagesRequest(indexName, id, routing, offset, end, documentPageSize), RequestOptions.DEFAULT).getHits().getHits();
+        }
+        StringBuilder content = new StringBuilder(limit);
+        for (SearchHit page : pages) {
+            long pageStart = ((Number) page.getSourceAsMap().get("pageStart")).longValue();
+            String pageContent = (String) page.getSourceAsMap().get("pageContent");
+            content.append(pageContent, (int) (Math.max(offset, pageStart) - pageStart), (int) (Math.min(end, pageStart + pageContent.length()) - pageStart));
+        }
+        return new ExtractedText(content.toString(), offset, limit, maxOffset);
+    }
+
+    private SearchRequest createPagesRequest(String indexName, String id, String routing, long offset, long end, int pageSize) {
+        return new SearchRequest(indexName).routing(routing).source(new SearchSourceBuilder()
+                .query(boolQuery()
+                        .filter(termQuery(esCfg.docTypeField, ES_CONTENT_PAGE_TYPE))
+                        .filter(termQuery("documentId", id))
+                        .filter(rangeQuery("pageEnd").gt(offset))
+                        .filter(rangeQuery("pageStart").lt(end)))
+                .fetchSource(new String[] {"pageStart", "pageContent"}, null)
+                .sort("pageStart", SortOrder.ASC).size(nbPages(offset, end, pageSize)));
+    }
+
+    /**
+     * @return the number of pages of <code>pageSize</code> chars overlapping the range [offset, end[
+     */
+    static int nbPages(long offset, long end, int pageSize) {
+        return end <= offset ? 0 : (int) ((end - 1) / pageSize - offset / pageSize + 1);
     }
+
     @Override
     public SearchedText searchTextOccurrences(String indexName, String id, String query, String targetLanguage) throws IOException {
         return this.searchContentOccurrences(indexName, id, id, query, targetLanguage);
@@ -310,45 +591,7 @@ public class ElasticsearchIndexer implements Indexer {
 
     }
     private SearchedText searchContentOccurrences(String indexName, String id, String routing, final String query, String targetLanguage) throws IOException {
-        SearchSourceBuilder sourceBuilder = new SearchSourceBuilder().size(DEFAULT_SEARCH_SIZE).timeout(new TimeValue(30, TimeUnit.MINUTES));
-        if (query.length() == 0) {
-            throw new IllegalArgumentException();
-        }
-        sourceBuilder.query(boolQuery().must(termsQuery("_id", id)));
-        Script script = searchQueryOccurrencesScript(query, targetLanguage);
-        sourceBuilder.scriptField("pagination", script);
-        SearchRequest searchRequest = new SearchRequest(new String[] {indexName}, sourceBuilder);
-        SearchResponse search = client.search(searchRequest.routing(routing), RequestOptions.DEFAULT);
-        List<SearchHit> tHits = searchHitStream(() -> search.getHits().iterator()).collect(Collectors.toList());
-        if(tHits.isEmpty()){
-            throw new IllegalArgumentException("Document not found");
-        }
-        Map<String,Object> pagination = (Map<String, Object>) tHits.get(0).field("pagination").getValues().get(0);
-        if(pagination.get("error") != null ){
-            int code= ((Integer)pagination.get("code"));
-            if (code == 400){
-                throw new StringIndexOutOfBoundsException((String)pagination.get("error"));
-            }
-            else{
-                throw new IllegalArgumentException((String)pagination.get("error"));
-            }
-        }
-        SearchedText searchedText;
-        List<Integer> l =(ArrayList<Integer>) pagination.get("offsets");
-        int[] offsets = l.stream().mapToInt(i-> i).toArray();
-        if (targetLanguage != null){
-            searchedText = new SearchedText(
-                    offsets,
-                    (Integer) pagination.get("count"),
-                    (String) pagination.get("query"),
-                    (String) pagination.get("targetLanguage"));
-        } else {
-            searchedText = new SearchedText(
-                    offsets,
-                    (Integer) pagination.get("count"),
-                    (String) pagination.get("query"));
-        }
-        return searchedText;
+        return occurrencesSearcher.search(indexName, id, routing, query, targetLanguage);
     }
 
     @Override
@@ -361,11 +604,39 @@ public class ElasticsearchIndexer implements Indexer {
         return tagUntag(prj, documentId, rootDocument, createUntagScript(tags));
     }
 
+    @Override
+    public CompletableFuture<Boolean> tagAsync(Project prj, String documentId, String rootDocument, Tag... tags) {
+        return tagUntagAsync("tag", createTagUntagRequest(prj, documentId, rootDocument, createTagScript(tags)));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> untagAsync(Project prj, String documentId, String rootDocument, Tag... tags) {
+        return tagUntagAsync("untag", createTagUntagRequest(prj, documentId, rootDocument, createUntagScript(tags)));
+    }
+
     private boolean tagUntag(Project prj, String documentId, String rootDocument, Script untagScript) throws IOException {
+        UpdateRequest update = createTagUntagRequest(prj, documentId, rootDocument, untagScript);
+        UpdateResponse response = withStoredScripts(() -> client.update(update, RequestOptions.DEFAULT));
+        searchCache.invalidate(prj.getId());
+        return isUpdated(response);
+    }
+
+    private CompletableFuture<Boolean> tagUntagAsync(String operation, UpdateRequest update) {
+        return withStoredScriptsAsync(() -> this.<UpdateResponse>execute(operation, listener -> client.updateAsync(update, RequestOptions.DEFAULT, listener)))
+                .thenApply(response -> {
+                    searchCache.invalidate(update.index());
+                    return isUpdated(response);
+                });
+    }
+
+    private UpdateRequest createTagUntagRequest(Project prj, String documentId, String rootDocument, Script untagScript) {
         UpdateRequest update = new UpdateRequest(prj.getId(), documentId).routing(rootDocument);
         update.script(untagScript);
         update.setRefreshPolicy(esCfg.refreshPolicy);
-        UpdateResponse updateResponse = client.update(update, RequestOptions.DEFAULT);
+        return update;
+    }
+
+    private boolean isUpdated(UpdateResponse updateResponse) {
         return updateResponse.status() == RestStatus.OK && updateResponse.getResult() == DocWriteResponse.Result.UPDATED;
     }
 
@@ -379,45 +650,91 @@ public class ElasticsearchIndexer implements Indexer {
         return groupTagUntag(prj, documentIds, createUntagScript(tags));
     }
 
+    @Override
+    public CompletableFuture<Boolean> tagAsync(Project prj, List<String> documentIds, Tag... tags) {
+        return groupTagUntagAsync("groupTag", createGroupTagUntagRequest(prj, documentIds, createTagScript(tags)));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> untagAsync(Project prj, List<String> documentIds, Tag... tags) {
+        return groupTagUntagAsync("groupUntag", createGroupTagUntagRequest(prj, documentIds, createUntagScript(tags)));
+    }
+
     private boolean groupTagUntag(Project prj, List<String> documentIds, Script untagScript) throws IOException {
+        UpdateByQueryRequest updateByQuery = createGroupTagUntagRequest(prj, documentIds, untagScript);
+        BulkByScrollResponse response = withStoredScripts(() -> client.updateByQuery(updateByQuery, RequestOptions.DEFAULT));
+        searchCache.invalidate(prj.getId());
+        return isUpdated(response);
+    }
+
+    private CompletableFuture<Boolean> groupTagUntagAsync(String operation, UpdateByQueryRequest updateByQuery) {
+        return withStoredScriptsAsync(() -> this.<BulkByScrollResponse>execute(operation, listener -> client.updateByQueryAsync(updateByQuery, RequestOptions.DEFAULT, listener)))
+                .thenApply(response -> {
+                    stream(updateByQuery.indices()).forEach(searchCache::invalidate);
+                    return isUpdated(response);
+                });
+    }
+
+    /**
+     * starts a sliced update by query tagging the documents in the background of the cluster.
+     *
+     * @return the elasticsearch task id to follow with {@link #getUpdateByQueryProgress(String)}
+     */
+    public String startGroupTag(Project prj, List<String> documentIds, Tag... tags) throws IOException {
+        return startGroupTagUntag(prj, documentIds, createTagScript(tags));
+    }
+
+    public String startGroupUntag(Project prj, List<String> documentIds, Tag... tags) throws IOException {
+        return startGroupTagUntag(prj, documentIds, createUntagScript(tags));
+    }
+
+    private String startGroupTagUntag(Project prj, List<String> documentIds, Script script) throws IOException {
+        Request request = new Request("POST", "/" + prj.getId() + "/_update_by_query");
+        request.addParameter("wait_for_completion", "false");
+        request.addParameter("slices", "auto");
+        request.addParameter("conflicts", "proceed");
+        request.addParameter("refresh", String.valueOf(esCfg.refreshPolicy.getValue().equals("true")));
+        request.setJsonEntity(Strings.toString(jsonBuilder().startObject()
+                .field("query", termsQuery("_id", documentIds.toArray(new String[0])))
+                .field("script", script)
+                .endObject()));
+        Response response = withStoredScripts(() -> client.getLowLevelClient().performRequest(request));
+        searchCache.invalidate(prj.getId());
+        return MAPPER.readTree(EntityUtils.toString(response.getEntity())).get("task").asText();
+    }
+
+    /**
+     * reads the progress of the task with the tasks API. The result of a completed task is stored by elasticsearch
+     * in its <code>.tasks</code> system index, which is not accessed directly.
+     */
+    public UpdateByQueryProgress getUpdateByQueryProgress(String taskId) throws IOException {
+        Response response = client.getLowLevelClient().performRequest(new Request("GET", "/_tasks/" + taskId));
+        return UpdateByQueryProgress.fromTask(MAPPER.readTree(EntityUtils.toString(response.getEntity())));
+    }
+
+    private UpdateByQueryRequest createGroupTagUntagRequest(Project prj, List<String> documentIds, Script untagScript) {
         UpdateByQueryRequest updateByQuery = new UpdateByQueryRequest(prj.getId());
         updateByQuery.setQuery(termsQuery("_id", documentIds.toArray(new String[0])));
         updateByQuery.setConflicts("proceed");
         updateByQuery.setScript(untagScript);
         updateByQuery.setRefresh(esCfg.refreshPolicy.getValue().equals("true"));
-        BulkByScrollResponse updateResponse = client.updateByQuery(updateByQuery, RequestOptions.DEFAULT);
+        return updateByQuery;
+    }
+
+    private boolean isUpdated(BulkByScrollResponse updateResponse) {
         return updateResponse.getBulkFailures().size() == 0 && updateResponse.getUpdated() > 0;
     }
 
     private Script createTagScript(Tag[] tags) {
-        return new Script(ScriptType.INLINE, "painless",
-                "int updates = 0;" +
-                        "if (ctx._source.tags == null) ctx._source.tags = [];" +
-                        "for (int i = 0; i < params.tags.length; i++) {" +
-                        "  if (!ctx._source.tags.contains(params.tags[i])) {" +
-                        "   ctx._source.tags.add(params.tags[i]);" +
-                        "   updates++;" +
-                        "  }" +
-                        "}" +
-                        "if (updates == 0) ctx.op = 'noop';",
-                new HashMap<String, Object>() {{
-                    put("tags", stream(tags).map(t -> t.label).collect(toList()));
-                }});
+        return scripts.script(StoredScripts.TAG, new HashMap<String, Object>() {{
+            put("tags", stream(tags).map(t -> t.label).collect(toList()));
+        }});
     }
 
     private Script createUntagScript(Tag[] tags) {
-        return new Script(ScriptType.INLINE, "painless",
-                "int updates = 0;" +
-                        "for (int i = 0; i < params.tags.length; i++) {" +
-                        "  if (ctx._source.tags.contains(params.tags[i])) {" +
-                        "    ctx._source.tags.remove(ctx._source.tags.indexOf(params.tags[i]));" +
-                        "    updates++;" +
-                        "  }" +
-                        "}" +
-                        "if (updates == 0) ctx.op = 'noop';",
-                new HashMap<String, Object>() {{
-                    put("tags", stream(tags).map(t -> t.label).collect(toList()));
-                }});
+        return scripts.script(StoredScripts.UNTAG, new HashMap<String, Object>() {{
+            put("tags", stream(tags).map(t -> t.label).collect(toList()));
+        }});
     }
 
     @Override
@@ -425,9 +742,42 @@ public class ElasticsearchIndexer implements Indexer {
         return new ElasticsearchSearcher(client, esCfg, indexesNames, entityClass);
     }
 
+    /**
+     * @param pointInTime if true, the searcher scrolls with a point in time and search_after
+     *                    instead of keeping a scroll context open between the pages. It needs elasticsearch 7.10
+     *                    (for the _pit endpoint), with older versions the searcher keeps scrolling.
+     */
+    public Searcher search(final List<String> indexesNames, Class<? extends Entity> entityClass, boolean pointInTime) {
+        ElasticsearchSearcher searcher = new ElasticsearchSearcher(client, esCfg, indexesNames, entityClass);
+        return pointInTime && isPointInTimeSupported() ? searcher.withPointInTime() : searcher;
+    }
+
+    private boolean isPointInTimeSupported() {
+        if (pointInTimeSupported == null) {
+            try {
+                String version = client.info(RequestOptions.DEFAULT).getVersion().getNumber();
+                pointInTimeSupported = Version.fromString(version).onOrAfter(MIN_POINT_IN_TIME_VERSION);
+                if (!pointInTimeSupported) {
+                    LOGGER.warn("elasticsearch {} has no point in time, using scrolls", version);
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("cannot read elasticsearch version, using scrolls: {}", e.getMessage());
+                return false;
+            }
+        }
+        return pointInTimeSupported;
+    }
+
     @Override
     public boolean createIndex(final String indexName) {
-        return ElasticsearchConfiguration.createIndex(client, indexName);
+        return ElasticsearchConfiguration.createIndex(client, indexName, esCfg::getIndexSettings);
+    }
+
+    /**
+     * creates the index with the given number of shards and replicas (null for the configured ones).
+     */
+    public boolean createIndex(final String indexName, Integer shards, Integer replicas) {
+        return ElasticsearchConfiguration.createIndex(client, indexName, () -> esCfg.getIndexSettings(shards, replicas));
     }
 
     @Override
@@ -435,6 +785,7 @@ public class ElasticsearchIndexer implements Indexer {
         Request post = new Request("POST", indexName + "/_delete_by_query?refresh");
         post.setEntity(new NStringEntity("{\"query\":{\"match_all\": {}}}", ContentType.APPLICATION_JSON));
         Response response = client.getLowLevelClient().performRequest(post);
+        searchCache.invalidate(indexName);
         return response.getStatusLine().getStatusCode() == RestStatus.OK.getStatus();
     }
 
@@ -444,8 +795,21 @@ public class ElasticsearchIndexer implements Indexer {
     }
 
     private boolean executeBulk(BulkRequest bulkRequest) throws IOException {
-        bulkRequest.setRefreshPolicy(esCfg.refreshPolicy);
-        BulkResponse bulkResponse = client.bulk(bulkRequest, RequestOptions.DEFAULT);
+        BulkResponse response = withStoredScripts(() -> client.bulk(bulkRequest, RequestOptions.DEFAULT), ElasticsearchIndexer::hasMissingScript);
+        invalidateSearches(bulkRequest);
+        return isSuccessful(response);
+    }
+
+    private CompletableFuture<Boolean> executeBulkAsync(String operation, BulkRequest bulkRequest) {
+        return withStoredScriptsAsync(() -> this.<BulkResponse>execute(operation, listener -> client.bulkAsync(bulkRequest, RequestOptions.DEFAULT, listener)),
+                ElasticsearchIndexer::hasMissingScript)
+                .thenApply(response -> {
+                    invalidateSearches(bulkRequest);
+                    return isSuccessful(response);
+                });
+    }
+
+    private boolean isSuccessful(BulkResponse bulkResponse) {
         if (bulkResponse.hasFailures()) {
             for (BulkItemResponse resp : bulkResponse.getItems()) {
                 if (resp.isFailed()) {
@@ -457,6 +821,156 @@ public class ElasticsearchIndexer implements Indexer {
         return true;
     }
 
+    /**
+     * sends a bulk that can contain stored scripts, outside the in-flight requests limit (for callers having their own).
+     */
+    CompletableFuture<BulkResponse> bulkWithStoredScriptsAsync(BulkRequest bulkRequest) {
+        return withStoredScriptsAsync(() -> {
+            CompletableFuture<BulkResponse> future = new CompletableFuture<>();
+            client.bulkAsync(bulkRequest, RequestOptions.DEFAULT, ActionListener.wrap(future::complete, future::completeExceptionally));
+            return future;
+        }, ElasticsearchIndexer::hasMissingScript);
+    }
+
+    /**
+     * stores the painless scripts in the background: until they are stored, the requests send them inline.
+     */
+    CompletableFuture<Void> registerScripts() {
+        return scripts.register();
+    }
+
+    private <R> R withStoredScripts(ScriptedCall<R> call) throws IOException {
+        return withStoredScripts(call, response -> false);
+    }
+
+    /**
+     * calls elasticsearch, and if a stored script is missing from the cluster, stores the scripts again
+     * and calls it once more.
+     */
+    private <R> R withStoredScripts(ScriptedCall<R> call, Predicate<R> missingScript) throws IOException {
+        R response;
+        try {
+            response = call.call();
+        } catch (ElasticsearchException | ResponseException e) {
+            if (!StoredScripts.isMissingScript(e)) {
+                throw e;
+            }
+            scripts.restore();
+            return call.call();
+        }
+        if (missingScript.test(response)) {
+            scripts.restore();
+            return call.call();
+        }
+        return response;
+    }
+
+    private <R> CompletableFuture<R> withStoredScriptsAsync(Supplier<CompletableFuture<R>> call) {
+        return withStoredScriptsAsync(call, response -> false);
+    }
+
+    /**
+     * asynchronous version of {@link #withStoredScripts(ScriptedCall, Predicate)}: the scripts are stored again
+     * in the common pool, not in the elasticsearch client I/O threads.
+     */
+    private <R> CompletableFuture<R> withStoredScriptsAsync(Supplier<CompletableFuture<R>> call, Predicate<R> missingScript) {
+        return call.get().handle((response, error) -> {
+            boolean missing = error == null ? missingScript.test(response) : StoredScripts.isMissingScript(error);
+            if (!missing) {
+                return error == null ? CompletableFuture.completedFuture(response) : CompletableFuture.<R>failedFuture(error);
+            }
+            return CompletableFuture.runAsync(scripts::restore).thenCompose(v -> call.get());
+        }).thenCompose(Function.identity());
+    }
+
+    private static boolean hasMissingScript(BulkResponse bulkResponse) {
+        return bulkResponse.hasFailures() && stream(bulkResponse.getItems())
+                .anyMatch(item -> item.isFailed() && StoredScripts.isMissingScript(item.getFailureMessage()));
+    }
+
+    @FunctionalInterface
+    private interface ScriptedCall<R> {
+        R call() throws IOException;
+    }
+
+    /**
+     * sends an asynchronous request if one of the in-flight requests permits is available, else queues it until
+     * a running request completes (the caller is never blocked), and records the request latency for the operation.
+     * When <code>indexerMaxWaitingRequests</code> requests are already queued, the request is rejected: the returned
+     * future fails with a {@link RejectedExecutionException}.
+     */
+    <R> CompletableFuture<R> execute(String operation, Consumer<ActionListener<R>> asyncCall) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        Runnable send = () -> send(operation, asyncCall, future);
+        if (inFlightRequests.tryAcquire()) {
+            send.run();
+        } else if (waitingRequests.offer(send)) {
+            sendWaitingRequests();
+        } else {
+            future.completeExceptionally(new RejectedExecutionException("too many elasticsearch requests waiting for " + operation));
+        }
+        return future;
+    }
+
+    private <R> void send(String operation, Consumer<ActionListener<R>> asyncCall, CompletableFuture<R> future) {
+        LatencyHistogram histogram = latencies.computeIfAbsent(operation, k -> new LatencyHistogram());
+        long start = System.nanoTime();
+        try {
+            asyncCall.accept(new ActionListener<>() {
+                @Override
+                public void onResponse(R response) {
+                    histogram.record(System.nanoTime() - start);
+                    releaseInFlightRequest();
+                    future.complete(response);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    histogram.record(System.nanoTime() - start);
+                    releaseInFlightRequest();
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            releaseInFlightRequest();
+            future.completeExceptionally(e);
+        }
+    }
+
+    private void releaseInFlightRequest() {
+        inFlightRequests.release();
+        sendWaitingRequests();
+    }
+
+    /**
+     * sends the waiting requests while permits are available. A request can complete (and call this method again)
+     * in the thread sending it: only one thread sends the waiting requests, the other calls make it loop once more.
+     */
+    private void sendWaitingRequests() {
+        if (waitingRequestsDrains.getAndIncrement() != 0) {
+            return;
+        }
+        int drains = 1;
+        do {
+            while (!waitingRequests.isEmpty() && inFlightRequests.tryAcquire()) {
+                Runnable next = waitingRequests.poll();
+                if (next == null) {
+                    inFlightRequests.release();
+                } else {
+                    next.run();
+                }
+            }
+            drains = waitingRequestsDrains.addAndGet(-drains);
+        } while (drains != 0);
+    }
+
+    /**
+     * @return the latencies of the asynchronous requests by operation name
+     */
+    public Map<String, LatencyHistogram> getLatencies() {
+        return Collections.unmodifiableMap(latencies);
+    }
+
     @Override
     public boolean getHealth() {
         try {
@@ -1,17 +1,31 @@
 package org.icij.datashare.text.indexing.elasticsearch;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.apache.http.util.EntityUtils;
 import org.elasticsearch.action.search.ClearScrollRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.Request;
 import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
 import org.elasticsearch.index.query.*;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.slice.SliceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
 import org.icij.datashare.Entity;
 import org.icij.datashare.json.JsonObjectMapper;
 import org.icij.datashare.text.Document;
@@ -20,6 +34,8 @@ import org.icij.datashare.text.indexing.Indexer;
 import org.icij.datashare.text.nlp.Pipeline;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -30,6 +46,7 @@ import java.util.stream.StreamSupport;
 import static java.util.Arrays.stream;
 import static java.util.stream.Collectors.toList;
 import static org.elasticsearch.index.query.QueryBuilders.*;
+import static org.icij.datashare.json.JsonObjectMapper.MAPPER;
 import static org.icij.datashare.text.indexing.elasticsearch.ElasticsearchConfiguration.DEFAULT_SEARCH_SIZE;
 
 class ElasticsearchSearcher implements Indexer.Searcher {
@@ -41,6 +58,9 @@ class ElasticsearchSearcher implements Indexer.Searcher {
     private final SearchSourceBuilder sourceBuilder;
     private String scrollId;
     private long totalHits;
+    private boolean pointInTime = false;
+    private String pointInTimeId;
+    private Object[] searchAfter;
 
     ElasticsearchSearcher(RestHighLevelClient client, ElasticsearchConfiguration config, final List<String> indexesNames, final Class<? extends Entity> cls) {
         this.client = client;
@@ -58,7 +78,35 @@ class ElasticsearchSearcher implements Indexer.Searcher {
         return searchHitStream(iterable).map(hit -> hitToObject(hit, cls));
     }
 
+    /**
+     * reads the source bytes of the hit straight into the entity, without building the source map
+     * (and serializing it back) like {@link JsonObjectMapper#getObject}. The id and the index of the hit
+     * are streamed before the source fields, so that the source fields still take precedence.
+     */
     static <T extends Entity> T hitToObject(SearchHit searchHit, Class<T> cls) {
+        BytesReference source = searchHit.getSourceRef();
+        if (source == null) {
+            return hitToObjectFromMap(searchHit, cls);
+        }
+        try (JsonParser parser = MAPPER.getFactory().createParser(source.streamInput());
+             TokenBuffer buffer = new TokenBuffer(MAPPER, false)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("source of hit " + searchHit.getId() + " is not an object");
+            }
+            buffer.writeStartObject();
+            buffer.writeStringField("id", searchHit.getId());
+            buffer.writeStringField("projectId", searchHit.getIndex());
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                buffer.copyCurrentStructure(parser);
+            }
+            buffer.writeEndObject();
+            return MAPPER.readValue(buffer.asParser(), cls);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static <T extends Entity> T hitToObjectFromMap(SearchHit searchHit, Class<T> cls) {
         return JsonObjectMapper.getObject(searchHit.getId(), searchHit.getIndex(), searchHit.getSourceAsMap(), cls);
     }
     
@@ -82,12 +130,30 @@ class ElasticsearchSearcher implements Indexer.Searcher {
         return scroll(0, 0);
     }
 
+    /**
+     * iterates over the results with a point in time and search_after instead of a scroll context.
+     * The point in time is released when the last page is read or when the scroll is cleared.
+     */
+    ElasticsearchSearcher withPointInTime() {
+        this.pointInTime = true;
+        // _id is the tiebreaker of the documents with the same score (_shard_doc is only implicit from elasticsearch 7.12)
+        sourceBuilder.sort("_score", SortOrder.DESC).sort("_id", SortOrder.ASC);
+        return this;
+    }
+
+    boolean isPointInTime() {
+        return pointInTime;
+    }
+
     @Override
     public Stream<? extends Entity> scroll(int numSlice, int nbSlices) throws IOException {
         sourceBuilder.query(boolQuery);
         if (nbSlices > 1) {
             sourceBuilder.slice(new SliceBuilder(numSlice, nbSlices));
         }
+        if (pointInTime) {
+            return searchAfter();
+        }
         SearchResponse search;
         if (scrollId == null) {
             Object[] indexesArray = indexesNames.toArray();
@@ -102,6 +168,60 @@ class ElasticsearchSearcher implements Indexer.Searcher {
         return resultStream(this.cls, () -> search.getHits().iterator());
     }
 
+    private Stream<? extends Entity> searchAfter() throws IOException {
+        if (pointInTimeId == null && searchAfter != null) {
+            return Stream.empty();
+        }
+        boolean firstPage = pointInTimeId == null;
+        if (firstPage) {
+            pointInTimeId = openPointInTime();
+        } else {
+            sourceBuilder.searchAfter(searchAfter);
+        }
+        sourceBuilder.trackTotalHits(firstPage);
+        ObjectNode body = (ObjectNode) MAPPER.readTree(Strings.toString(sourceBuilder));
+        body.putObject("pit").put("id", pointInTimeId).put("keep_alive", KEEP_ALIVE.getStringRep());
+        Request request = new Request("POST", "/_search");
+        request.setJsonEntity(MAPPER.writeValueAsString(body));
+        SearchResponse search = performSearch(request);
+        if (firstPage) {
+            totalHits = search.getHits().getTotalHits().value;
+        }
+        SearchHit[] hits = search.getHits().getHits();
+        if (hits.length == 0) {
+            closePointInTime();
+        } else {
+            searchAfter = hits[hits.length - 1].getSortValues();
+        }
+        return resultStream(this.cls, () -> Arrays.asList(hits).iterator());
+    }
+
+    private String openPointInTime() throws IOException {
+        Request request = new Request("POST", "/" + String.join(",", indexesNames) + "/_pit");
+        request.addParameter("keep_alive", KEEP_ALIVE.getStringRep());
+        Response response = client.getLowLevelClient().performRequest(request);
+        return MAPPER.readTree(EntityUtils.toString(response.getEntity())).get("id").asText();
+    }
+
+    private void closePointInTime() throws IOException {
+        if (pointInTimeId == null) {
+            return;
+        }
+        Request request = new Request("DELETE", "/_pit");
+        request.setJsonEntity(MAPPER.writeValueAsString(MAPPER.createObjectNode().put("id", pointInTimeId)));
+        pointInTimeId = null;
+        client.getLowLevelClient().performRequest(request);
+    }
+
+    private SearchResponse performSearch(Request request) throws IOException {
+        Response response = client.getLowLevelClient().performRequest(request);
+        try (InputStream content = response.getEntity().getContent();
+             XContentParser parser = JsonXContent.jsonXContent.createParser(NamedXContentRegistry.EMPTY,
+                     DeprecationHandler.THROW_UNSUPPORTED_OPERATION, content)) {
+            return SearchResponse.fromXContent(parser);
+        }
+    }
+
     @Override
     public Indexer.Searcher withSource(String... fields) {
         sourceBuilder.fetchSource(fields, new String[]{});
@@ -199,6 +319,12 @@ class ElasticsearchSearcher implements Indexer.Searcher {
 
     @Override
     public void clearScroll() throws IOException {
+        if (pointInTime) {
+            closePointInTime();
+            searchAfter = null;
+            totalHits = 0;
+            return;
+        }
         ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
         clearScrollRequest.addScrollId(scrollId);
         this.client.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
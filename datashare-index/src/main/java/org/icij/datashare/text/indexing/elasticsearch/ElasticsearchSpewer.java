@@ -1,15 +1,39 @@
 package org.icij.datashare.text.indexing.elasticsearch;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 import org.apache.tika.metadata.DublinCore;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.support.WriteRequest;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.reindex.DeleteByQueryRequest;
 import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 import org.icij.datashare.Entity;
 import org.icij.datashare.HumanReadableSize;
@@ -26,15 +50,26 @@ import org.joda.time.format.ISODateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Flushable;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.Serializable;
 import java.text.Normalizer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static java.lang.String.format;
 import static java.lang.System.currentTimeMillis;
 import static java.nio.file.Paths.get;
+import static java.util.Arrays.asList;
 import static java.util.Optional.ofNullable;
 import static org.apache.tika.metadata.HttpHeaders.*;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
 import static org.icij.datashare.com.Channel.NLP;
 import static org.icij.datashare.com.Message.Type.EXTRACT_NLP;
 import static org.icij.datashare.text.Hasher.shorten;
@@ -43,114 +78,482 @@ import static org.icij.datashare.text.indexing.elasticsearch.ElasticsearchConfig
 public class ElasticsearchSpewer extends Spewer implements Serializable {
     private static final Logger logger = LoggerFactory.getLogger(ElasticsearchSpewer.class);
     public static final String DEFAULT_VALUE_UNKNOWN = "unknown";
+    public static final String NLP_PUBLISHER = "nlpPublisher";
+    static final int LANGUAGE_SAMPLE_LENGTH = 1024 * 1024;
+    private static final JsonFactory JSON_FACTORY = new ObjectMapper().getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    public static final String BULK_INDEX_PROP = "bulkIndex";
+    public static final String BULK_INDEX_ACTIONS_PROP = "bulkIndexActions";
+    public static final String BULK_INDEX_SIZE_PROP = "bulkIndexSize";
+    public static final String BULK_INDEX_FLUSH_INTERVAL_PROP = "bulkIndexFlushIntervalSeconds";
+    public static final String BULK_INDEX_CONCURRENT_REQUESTS_PROP = "bulkIndexConcurrentRequests";
+    public static final String BULK_INDEX_MAX_RETRIES_PROP = "bulkIndexMaxRetries";
+    public static final String DUPLICATE_FILTER_EXPECTED_DOCUMENTS_PROP = "duplicateFilterExpectedDocuments";
+    public static final String DUPLICATE_FILTER_SLICES_PROP = "duplicateFilterSlices";
+    public static final String CONTENT_PAGE_SIZE_PROP = "contentPageSize";
+    static final long CONTENT_PAGES_BULK_SIZE = 5 * 1024 * 1024;
+    private static final String CONTENT_PAGE_ID_INFIX = "-page-";
+    public static final String BULK_INGEST_PROP = "bulkIngest";
+    public static final String BULK_INGEST_FORCE_MERGE_SEGMENTS_PROP = "bulkIngestForceMergeSegments";
+    static final String REFRESH_INTERVAL_SETTING = "index.refresh_interval";
+    static final String NUMBER_OF_REPLICAS_SETTING = "index.number_of_replicas";
 
     private final RestHighLevelClient client;
     private final ElasticsearchConfiguration esCfg;
     private final Publisher publisher;
     private final LanguageGuesser languageGuesser;
     private final int maxContentLength;
+    private final int contentPageSize;
     private final Hasher digestAlgorithm;
+    private final PropertiesProvider propertiesProvider;
+    private final boolean bulkIndex;
+    private transient volatile BulkProcessor bulkProcessor;
+    private transient volatile DocumentIdFilter documentIdFilter;
+    // number of content pages of the documents being written, until elasticsearch tells if they already existed
+    private final Map<String, Integer> contentPages = new ConcurrentHashMap<>();
+    // failure of whole bulk requests (after the retries), thrown by awaitBulkFlush
+    private final AtomicReference<Throwable> bulkFailure = new AtomicReference<>();
+    private final AtomicInteger nbBulkFailedDocuments = new AtomicInteger();
+    // ids of the documents buffered or in flight in the bulk processor, that elasticsearch cannot return yet
+    private final Set<String> bulkPendingIds = ConcurrentHashMap.newKeySet();
     private String indexName;
 
     @Inject
     public ElasticsearchSpewer(final RestHighLevelClient client, LanguageGuesser languageGuesser, final FieldNames fields,
-                               Publisher publisher, final PropertiesProvider propertiesProvider) {
+                               @Named(NLP_PUBLISHER) Publisher publisher, final PropertiesProvider propertiesProvider) {
         super(fields);
         this.client = client;
         this.languageGuesser = languageGuesser;
         this.publisher = publisher;
         this.esCfg = new ElasticsearchConfiguration(propertiesProvider);
         this.maxContentLength = getMaxContentLength(propertiesProvider);
+        this.contentPageSize = propertiesProvider.get(CONTENT_PAGE_SIZE_PROP).map(Integer::parseInt).orElse(-1);
         this.digestAlgorithm = getDigestAlgorithm(propertiesProvider);
-        logger.info("spewer defined with {}", esCfg);
+        this.propertiesProvider = propertiesProvider;
+        this.bulkIndex = Boolean.parseBoolean(propertiesProvider.get(BULK_INDEX_PROP).orElse("false"));
+        logger.info("spewer defined with {} (bulk={})", esCfg, bulkIndex);
     }
 
     @Override
     protected void writeDocument(TikaDocument doc, TikaDocument parent, TikaDocument root, int level) throws IOException {
         final IndexRequest req = prepareRequest(doc, parent, root, level);
+        if (bulkIndex) {
+            getBulkProcessor().add(req);
+            return;
+        }
+        req.setRefreshPolicy(esCfg.refreshPolicy);
         long before = currentTimeMillis();
-        IndexResponse indexResponse = client.index(req, RequestOptions.DEFAULT);
+        String rootId = parent == null ? doc.getId() : root.getId();
+        IndexResponse indexResponse;
+        try {
+            indexResponse = client.index(req, RequestOptions.DEFAULT);
+        } catch (IOException | RuntimeException e) {
+            contentPages.remove(req.id());
+            throw e;
+        }
         logger.info("{} {} added to elasticsearch in {}ms: {}", parent == null ? "Document" : "Child",
                 shorten(indexResponse.getId(), 4), currentTimeMillis() - before, doc);
-        synchronized (publisher) { // jedis instance is not thread safe and Spewer is shared in DocumentConsumer threads
-            publisher.publish(NLP, new Message(EXTRACT_NLP)
-                    .add(Message.Field.INDEX_NAME, indexName)
-                    .add(Message.Field.DOC_ID, indexResponse.getId())
-                    .add(Message.Field.R_ID, parent == null ? doc.getId() : root.getId()));
+        deleteStalePages(indexResponse, rootId);
+        publishNlpMessage(indexResponse.getId(), rootId);
+    }
+
+    /**
+     * flushes the pending bulk requests and waits for the in-flight bulks to complete.
+     * It must be called when all the documents have been written, before signaling the end of indexing.
+     * A new bulk processor is created if the spewer is used again after.
+     *
+     * @return true if all bulk requests have completed, false if the timeout elapsed before.
+     * @throws IOException if bulk requests have failed (after their retries), their documents are not indexed.
+     */
+    public boolean awaitBulkFlush(long timeout, TimeUnit unit) throws InterruptedException, IOException {
+        BulkProcessor processor;
+        synchronized (this) {
+            processor = bulkProcessor;
+            bulkProcessor = null;
+        }
+        boolean completed = processor == null || processor.awaitClose(timeout, unit);
+        Throwable failure = bulkFailure.getAndSet(null);
+        int nbFailedDocuments = nbBulkFailedDocuments.getAndSet(0);
+        if (failure != null) {
+            throw new IOException(format("bulk requests failed, %d document(s) not indexed", nbFailedDocuments), failure);
+        }
+        return completed;
+    }
+
+    /**
+     * waits for the NLP messages of the written documents to be published, when the publisher buffers them.
+     * It must be called before signaling the end of indexing, and it throws the errors of the buffered messages.
+     */
+    public void flushNlpMessages() throws IOException {
+        if (publisher instanceof Flushable) {
+            ((Flushable) publisher).flush();
+        }
+    }
+
+    private BulkProcessor getBulkProcessor() {
+        BulkProcessor processor = bulkProcessor;
+        if (processor == null) {
+            synchronized (this) {
+                if (bulkProcessor == null) {
+                    bulkProcessor = createBulkProcessor();
+                }
+                processor = bulkProcessor;
+            }
         }
+        return processor;
+    }
+
+    private BulkProcessor createBulkProcessor() {
+        int bulkActions = propertiesProvider.get(BULK_INDEX_ACTIONS_PROP).map(Integer::parseInt).orElse(1000);
+        long bulkSize = HumanReadableSize.parse(propertiesProvider.get(BULK_INDEX_SIZE_PROP).orElse("5M"));
+        int flushInterval = propertiesProvider.get(BULK_INDEX_FLUSH_INTERVAL_PROP).map(Integer::parseInt).orElse(5);
+        int concurrentRequests = propertiesProvider.get(BULK_INDEX_CONCURRENT_REQUESTS_PROP).map(Integer::parseInt).orElse(2);
+        int maxRetries = propertiesProvider.get(BULK_INDEX_MAX_RETRIES_PROP).map(Integer::parseInt).orElse(3);
+        logger.info("creating bulk processor with actions={} size={} flushInterval={}s concurrentRequests={} maxRetries={}",
+                bulkActions, bulkSize, flushInterval, concurrentRequests, maxRetries);
+        return BulkProcessor.builder((request, listener) -> client.bulkAsync(request, RequestOptions.DEFAULT, listener), new BulkIndexListener())
+                .setBulkActions(bulkActions)
+                .setBulkSize(new ByteSizeValue(bulkSize))
+                .setFlushInterval(TimeValue.timeValueSeconds(flushInterval))
+                .setConcurrentRequests(concurrentRequests)
+                .setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(100), maxRetries))
+                .build();
+    }
+
+    // the filter is warmed by startBulkIngest, lazily if the spewer is used without it
+    private DocumentIdFilter getDocumentIdFilter() {
+        Optional<Long> expectedDocuments = propertiesProvider.get(DUPLICATE_FILTER_EXPECTED_DOCUMENTS_PROP).map(Long::parseLong);
+        if (expectedDocuments.isEmpty()) {
+            return null;
+        }
+        DocumentIdFilter filter = documentIdFilter;
+        if (filter == null) {
+            synchronized (this) {
+                if (documentIdFilter == null) {
+                    int nbSlices = propertiesProvider.get(DUPLICATE_FILTER_SLICES_PROP).map(Integer::parseInt).orElse(1);
+                    DocumentIdFilter newFilter = new DocumentIdFilter(expectedDocuments.get());
+                    newFilter.warm(client, esCfg.docTypeField, indexName, nbSlices);
+                    documentIdFilter = newFilter;
+                }
+                filter = documentIdFilter;
+            }
+        }
+        return filter;
+    }
+
+    private void publishNlpMessage(String docId, String rootId) {
+        // publisher is shared by the DocumentConsumer threads and the bulk listener, it must be thread safe
+        publisher.publish(NLP, new Message(EXTRACT_NLP)
+                .add(Message.Field.INDEX_NAME, indexName)
+                .add(Message.Field.DOC_ID, docId)
+                .add(Message.Field.R_ID, rootId));
+    }
+
+    private class BulkIndexListener implements BulkProcessor.Listener {
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            request.setRefreshPolicy(esCfg.refreshPolicy);
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            int nbFailures = 0;
+            for (BulkItemResponse item : response.getItems()) {
+                if (item.isFailed()) {
+                    logger.error("bulk index failed for document {}: {}", item.getId(), item.getFailureMessage());
+                    contentPages.remove(item.getId());
+                    bulkPendingIds.remove(item.getId());
+                    nbFailures++;
+                } else if (!isContentPage(item.getId())) {
+                    // acknowledged documents are seen by the realtime get of isDuplicate
+                    bulkPendingIds.remove(item.getId());
+                    DocWriteRequest<?> itemRequest = request.requests().get(item.getItemId());
+                    String rootId = ofNullable(itemRequest.routing()).orElse(item.getId());
+                    try {
+                        deleteStalePages(item.getResponse(), rootId);
+                    } catch (IOException e) {
+                        logger.warn("cannot delete stale content pages of document {}", item.getId(), e);
+                    }
+                    publishNlpMessage(item.getId(), rootId);
+                }
+            }
+            logger.info("bulk #{} of {} document(s) added to elasticsearch in {}ms ({} failure(s))",
+                    executionId, request.numberOfActions(), response.getTook().millis(), nbFailures);
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            logger.error("bulk #{} of {} document(s) failed", executionId, request.numberOfActions(), failure);
+            nbBulkFailedDocuments.addAndGet(request.numberOfActions());
+            bulkFailure.compareAndSet(null, failure); // the first one, the others are logged
+            request.requests().forEach(itemRequest -> {
+                contentPages.remove(itemRequest.id());
+                bulkPendingIds.remove(itemRequest.id());
+            });
+        }
+    }
+
+    /**
+     * deletes the pages left by a previous indexing of the document with more pages. Only an update
+     * of an existing document can leave such pages, so new documents don't cost a delete by query.
+     * In bulk mode the delete is done in the background: the pages that are kept are not affected.
+     */
+    private void deleteStalePages(DocWriteResponse response, String rootId) throws IOException {
+        Integer nbPages = contentPages.remove(response.getId());
+        if (nbPages == null || response.getResult() != DocWriteResponse.Result.UPDATED) {
+            return;
+        }
+        DeleteByQueryRequest deleteRequest = new DeleteByQueryRequest(indexName).setRouting(rootId)
+                .setQuery(boolQuery()
+                        .filter(termQuery(esCfg.docTypeField, ES_CONTENT_PAGE_TYPE))
+                        .filter(termQuery("documentId", response.getId()))
+                        .filter(rangeQuery("pageIndex").gte(nbPages)))
+                .setAbortOnVersionConflict(false)
+                .setRefresh(esCfg.refreshPolicy != WriteRequest.RefreshPolicy.NONE);
+        if (bulkIndex) {
+            client.deleteByQueryAsync(deleteRequest, RequestOptions.DEFAULT, ActionListener.wrap(r -> {},
+                    e -> logger.warn("cannot delete stale content pages of document {}", response.getId(), e)));
+        } else {
+            client.deleteByQuery(deleteRequest, RequestOptions.DEFAULT);
+        }
+    }
+
+    /**
+     * warms the duplicate filter, if it is enabled, so that the documents don't wait for it.
+     * Then if bulk ingest is enabled, disables the refresh and the replicas of the index
+     * to speed up a large indexing.
+     * It must be called before the documents are written.
+     *
+     * @return the index settings to give to {@link #endBulkIngest(Settings)} or null if bulk ingest is disabled
+     */
+    public Settings startBulkIngest() throws IOException {
+        getDocumentIdFilter();
+        if (!Boolean.parseBoolean(propertiesProvider.get(BULK_INGEST_PROP).orElse("false"))) {
+            return null;
+        }
+        GetSettingsResponse response = client.indices().getSettings(new GetSettingsRequest().indices(indexName)
+                .names(REFRESH_INTERVAL_SETTING, NUMBER_OF_REPLICAS_SETTING), RequestOptions.DEFAULT);
+        Settings originalSettings = ofNullable(response.getIndexToSettings().get(indexName)).orElse(Settings.EMPTY);
+        updateIndexSettings(Settings.builder()
+                .put(REFRESH_INTERVAL_SETTING, "-1")
+                .put(NUMBER_OF_REPLICAS_SETTING, 0).build());
+        logger.info("bulk ingest started for index {} (original settings {})", indexName, originalSettings);
+        return originalSettings;
+    }
+
+    /**
+     * restores the settings saved by {@link #startBulkIngest()}, refreshes the index
+     * and force merges it if <code>bulkIngestForceMergeSegments</code> is set.
+     * It must be called even if the indexing failed.
+     */
+    public void endBulkIngest(Settings originalSettings) throws IOException {
+        if (originalSettings == null) {
+            return;
+        }
+        Settings.Builder restoredSettings = Settings.builder();
+        for (String setting : asList(REFRESH_INTERVAL_SETTING, NUMBER_OF_REPLICAS_SETTING)) {
+            if (originalSettings.get(setting) == null) {
+                restoredSettings.putNull(setting);
+            } else {
+                restoredSettings.put(setting, originalSettings.get(setting));
+            }
+        }
+        updateIndexSettings(restoredSettings.build());
+        client.indices().refresh(new RefreshRequest(indexName), RequestOptions.DEFAULT);
+        logger.info("bulk ingest ended for index {}, settings restored and index refreshed", indexName);
+
+        int maxSegments = propertiesProvider.get(BULK_INGEST_FORCE_MERGE_SEGMENTS_PROP).map(Integer::parseInt).orElse(0);
+        if (maxSegments > 0) {
+            long before = currentTimeMillis();
+            try {
+                client.indices().forcemerge(new ForceMergeRequest(indexName).maxNumSegments(maxSegments), RequestOptions.DEFAULT);
+                logger.info("index {} force merged to {} segment(s) in {}ms", indexName, maxSegments, currentTimeMillis() - before);
+            } catch (IOException e) {
+                // the merge goes on in elasticsearch when the request times out
+                logger.warn("force merge of index {} did not complete: {}", indexName, e.getMessage());
+            }
+        }
+    }
+
+    private void updateIndexSettings(Settings settings) throws IOException {
+        client.indices().putSettings(new UpdateSettingsRequest(indexName).settings(settings), RequestOptions.DEFAULT);
     }
 
     public ElasticsearchSpewer withIndex(final String indexName) {
         this.indexName = indexName;
+        this.documentIdFilter = null;
         return this;
     }
 
     public void createIndex() {
-        ElasticsearchConfiguration.createIndex(client, indexName);
+        ElasticsearchConfiguration.createIndex(client, indexName, esCfg::getIndexSettings);
     }
 
     private IndexRequest prepareRequest(final TikaDocument document, final TikaDocument parent, TikaDocument root, final int level) throws IOException {
-        IndexRequest req = new IndexRequest(indexName).id(document.getId());
-        Map<String, Object> jsonDocument = getDocumentMap(document);
-
         if (parent == null && isDuplicate(document.getId())) {
+            drain(document.getReader());
             IndexRequest indexRequest = new IndexRequest(indexName).id(digestAlgorithm.hash(document.getPath()));
             indexRequest.source(getDuplicateMap(document));
-            indexRequest.setRefreshPolicy(esCfg.refreshPolicy);
             return indexRequest;
         }
-
+        IndexRequest req = new IndexRequest(indexName).id(document.getId());
         if (parent != null) {
-            jsonDocument.put(DEFAULT_PARENT_DOC_FIELD, parent.getId());
-            jsonDocument.put("rootDocument", root.getId());
             req.routing(root.getId());
         }
-        jsonDocument.put("extractionLevel", level);
-        req = req.source(jsonDocument);
-        req.setRefreshPolicy(esCfg.refreshPolicy);
+        try {
+            req.source(getDocumentSource(document, parent, root, level), XContentType.JSON);
+        } catch (IOException | RuntimeException e) {
+            contentPages.remove(document.getId());
+            bulkPendingIds.remove(document.getId());
+            throw e;
+        }
+        DocumentIdFilter filter = getDocumentIdFilter();
+        if (filter != null) {
+            filter.put(document.getId());
+        }
         return req;
     }
 
+    /**
+     * in bulk mode, the id is also marked as pending (until its bulk is done) when it is not a duplicate,
+     * so that the same document written again in this run is a duplicate before elasticsearch can return it.
+     */
     private boolean isDuplicate(String docId) throws IOException {
+        if (bulkIndex && !bulkPendingIds.add(docId)) {
+            return true;
+        }
+        boolean exists = true;
+        try {
+            exists = existsInIndex(docId);
+            return exists;
+        } finally {
+            if (bulkIndex && exists) {
+                bulkPendingIds.remove(docId);
+            }
+        }
+    }
+
+    private boolean existsInIndex(String docId) throws IOException {
+        DocumentIdFilter filter = getDocumentIdFilter();
+        if (filter != null && !filter.mightContain(docId)) {
+            return false;
+        }
         GetRequest getRequest = new GetRequest(indexName, docId);
         getRequest.fetchSourceContext(new FetchSourceContext(false));
         getRequest.storedFields("_none_");
         return client.exists(getRequest, RequestOptions.DEFAULT);
     }
 
-    Map<String, Object> getDocumentMap(TikaDocument document) throws IOException {
-        Map<String, Object> jsonDocument = new HashMap<>();
+    /**
+     * serializes the document to JSON while reading its content, so that only
+     * the JSON bytes (and not the content string and its copies) are held in memory.
+     */
+    BytesReference getDocumentSource(TikaDocument document, TikaDocument parent, TikaDocument root, int level) throws IOException {
+        String language = document.getLanguage() == null ? null : Language.parse(document.getLanguage()).toString();
+        BytesStreamOutput output = new BytesStreamOutput();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(output)) {
+            generator.writeStartObject();
+            generator.writeStringField(esCfg.docTypeField, ES_DOCUMENT_TYPE);
+            generator.writeObjectFieldStart(esCfg.indexJoinField);
+            generator.writeStringField("name", "Document");
+            generator.writeEndObject();
+            generator.writeStringField("path", document.getPath().toString());
+            generator.writeStringField("dirname", ofNullable(document.getPath().getParent()).orElse(get("")).toString());
+            generator.writeStringField("status", "INDEXED");
+            generator.writeObjectField("nerTags", new HashSet<>());
+            generator.writeObjectField("tags", new HashSet<>());
+            generator.writeStringField("extractionDate", ISODateTimeFormat.dateTime().print(new Date().getTime()));
+            generator.writeObjectField("metadata", getMetadata(document));
+            generator.writeStringField("contentType", ofNullable(document.getMetadata().get(CONTENT_TYPE)).orElse(DEFAULT_VALUE_UNKNOWN).split(";")[0]);
+            generator.writeNumberField("contentLength", Long.parseLong(ofNullable(document.getMetadata().get(CONTENT_LENGTH)).orElse("-1")));
+            generator.writeStringField("contentEncoding", ofNullable(document.getMetadata().get(CONTENT_ENCODING)).orElse(DEFAULT_VALUE_UNKNOWN));
+            generator.writeStringField("title", ofNullable(getTitle(document.getMetadata())).orElse(DEFAULT_VALUE_UNKNOWN));
+            generator.writeStringField("titleNorm", ofNullable(normalize(getTitle(document.getMetadata()))).orElse(DEFAULT_VALUE_UNKNOWN));
 
-        jsonDocument.put(esCfg.docTypeField, ES_DOCUMENT_TYPE);
-        jsonDocument.put(esCfg.indexJoinField, new HashMap<String, String>() {{
-            put("name", "Document");
-        }});
-        jsonDocument.put("path", document.getPath().toString());
-        jsonDocument.put("dirname", ofNullable(document.getPath().getParent()).orElse(get("")).toString());
-        jsonDocument.put("status", "INDEXED");
-        jsonDocument.put("nerTags", new HashSet<>());
-        jsonDocument.put("tags", new HashSet<>());
-        jsonDocument.put("extractionDate", ISODateTimeFormat.dateTime().print(new Date().getTime()));
-        jsonDocument.put("metadata", getMetadata(document));
-        jsonDocument.put("contentType", ofNullable(document.getMetadata().get(CONTENT_TYPE)).orElse(DEFAULT_VALUE_UNKNOWN).split(";")[0]);
-        jsonDocument.put("contentLength", Long.valueOf(ofNullable(document.getMetadata().get(CONTENT_LENGTH)).orElse("-1")));
-        jsonDocument.put("contentEncoding", ofNullable(document.getMetadata().get(CONTENT_ENCODING)).orElse(DEFAULT_VALUE_UNKNOWN));
-        jsonDocument.put("title", ofNullable(getTitle(document.getMetadata())).orElse(DEFAULT_VALUE_UNKNOWN));
-        jsonDocument.put("titleNorm", ofNullable(normalize(getTitle(document.getMetadata()))).orElse(DEFAULT_VALUE_UNKNOWN));
-
-        String content = toString(document.getReader()).trim();
-        if (maxContentLength != -1 && content.length() > maxContentLength) {
-            logger.warn("document id {} extracted text will be truncated to {} bytes", document.getId(), maxContentLength);
-            content = content.substring(0, maxContentLength).trim();
-        }
-        if (document.getLanguage() == null) {
-            jsonDocument.put("language", languageGuesser.guess(content));
-        } else  {
-            jsonDocument.put("language", Language.parse(document.getLanguage()).toString());
-        }
-        jsonDocument.put("contentTextLength", content.length());
-        jsonDocument.put(ES_CONTENT_FIELD, content);
-        return jsonDocument;
+            ContentReader content = new ContentReader(document.getReader(), maxContentLength, language == null ? LANGUAGE_SAMPLE_LENGTH : 0);
+            generator.writeFieldName(ES_CONTENT_FIELD);
+            if (contentPageSize > 0) {
+                ContentPageWriter pageWriter = new ContentPageWriter(document.getId(), parent == null ? document.getId() : root.getId());
+                ContentPager pager = new ContentPager(content, contentPageSize, pageWriter);
+                generator.writeString(pager, -1);
+                pageWriter.flush();
+                contentPages.put(document.getId(), pager.nbPages());
+                generator.writeNumberField("contentPageSize", contentPageSize);
+            } else {
+                generator.writeString(content, -1);
+            }
+            if (content.isTruncated()) {
+                logger.warn("document id {} extracted text has been truncated to {} bytes", document.getId(), maxContentLength);
+            }
+            generator.writeNumberField("contentTextLength", content.length());
+            generator.writeStringField("language", language == null ? languageGuesser.guess(content.sample()).toString() : language);
+
+            if (parent != null) {
+                generator.writeStringField(DEFAULT_PARENT_DOC_FIELD, parent.getId());
+                generator.writeStringField("rootDocument", root.getId());
+            }
+            generator.writeNumberField("extractionLevel", level);
+            generator.writeEndObject();
+        }
+        return output.bytes();
+    }
+
+    /**
+     * indexes the content pages of a document (routed with its root document) by bulks of about 5MB,
+     * or with the bulk processor in bulk mode, so that a page of the extracted text can be read without
+     * loading the whole content.
+     */
+    private class ContentPageWriter implements ContentPager.PageConsumer {
+        private final String documentId;
+        private final String rootId;
+        private BulkRequest bulkRequest = new BulkRequest();
+
+        ContentPageWriter(String documentId, String rootId) {
+            this.documentId = documentId;
+            this.rootId = rootId;
+        }
+
+        @Override
+        public void accept(int pageIndex, long pageStart, String pageContent) throws IOException {
+            Map<String, Object> page = new HashMap<>();
+            page.put(esCfg.docTypeField, ES_CONTENT_PAGE_TYPE);
+            page.put("documentId", documentId);
+            page.put("rootDocument", rootId);
+            page.put("pageIndex", pageIndex);
+            page.put("pageStart", pageStart);
+            page.put("pageEnd", pageStart + pageContent.length());
+            page.put("pageContent", pageContent);
+            IndexRequest pageRequest = new IndexRequest(indexName).id(documentId + CONTENT_PAGE_ID_INFIX + pageIndex).routing(rootId).source(page);
+            if (bulkIndex) {
+                getBulkProcessor().add(pageRequest);
+                return;
+            }
+            bulkRequest.add(pageRequest);
+            if (bulkRequest.estimatedSizeInBytes() >= CONTENT_PAGES_BULK_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            if (bulkRequest.numberOfActions() == 0) {
+                return;
+            }
+            BulkResponse response = client.bulk(bulkRequest.setRefreshPolicy(esCfg.refreshPolicy), RequestOptions.DEFAULT);
+            if (response.hasFailures()) {
+                throw new IOException("cannot index content pages of document " + documentId + ": " + response.buildFailureMessage());
+            }
+            bulkRequest = new BulkRequest();
+        }
+    }
+
+    private static boolean isContentPage(String id) {
+        return id.contains(CONTENT_PAGE_ID_INFIX);
+    }
+
+    private static void drain(Reader reader) throws IOException {
+        char[] buffer = new char[8192];
+        while (reader.read(buffer) != -1) {
+            // consumes the parsing of the document and its embedded documents
+        }
     }
 
     Map<String, Object> getDuplicateMap(TikaDocument document) {
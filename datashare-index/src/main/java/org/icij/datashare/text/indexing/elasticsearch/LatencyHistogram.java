@@ -0,0 +1,76 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.String.format;
+
+/**
+ * Lock-free latency histogram with power of two buckets (in microseconds).
+ *
+ * Percentiles are approximated by the upper bound of their bucket, so they are
+ * at most twice the real value. It is enough to compare operations and spot outliers.
+ */
+public class LatencyHistogram {
+    static final int NB_BUCKETS = 40;
+    private final AtomicLongArray buckets = new AtomicLongArray(NB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public void record(long durationNanos) {
+        long micros = Math.max(0, durationNanos / 1000);
+        buckets.incrementAndGet(bucket(micros));
+        count.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public double meanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalMicros.sum() / (n * 1000.0);
+    }
+
+    public double maxMillis() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound in milliseconds of the bucket containing the percentile
+     */
+    public double percentileMillis(double percentile) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * n);
+        long cumulated = 0;
+        for (int i = 0; i < NB_BUCKETS; i++) {
+            cumulated += buckets.get(i);
+            if (cumulated >= rank) {
+                return Math.min(upperBoundMicros(i), maxMicros.get()) / 1000.0;
+            }
+        }
+        return maxMillis();
+    }
+
+    static int bucket(long micros) {
+        return Math.min(NB_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    private static long upperBoundMicros(int bucket) {
+        return (1L << bucket) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return format("count=%d mean=%.1fms p50=%.1fms p99=%.1fms max=%.1fms",
+                count(), meanMillis(), percentileMillis(50), percentileMillis(99), maxMillis());
+    }
+}
@@ -0,0 +1,288 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.icij.datashare.text.Document;
+import org.icij.datashare.text.NamedEntity;
+import org.icij.datashare.text.nlp.Pipeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer of named entities shared by the NLP consumers.
+ *
+ * The named entities of many documents are coalesced into large bulks, sent when the buffer reaches
+ * <code>maxActions</code> actions or <code>maxBytes</code> bytes, or every <code>flushIntervalMillis</code>.
+ * The status DONE and the NER tag of a document are only written (in a second bulk, coalesced as well)
+ * once all its named entities, including the ones of its previous chunks, have been acknowledged.
+ * So a document that is not DONE can always be resumed.
+ *
+ * The flusher thread is started with the first named entities, and {@link #close()} waits for all the writes.
+ */
+public class NamedEntityBulkBuffer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(NamedEntityBulkBuffer.class);
+    private final ElasticsearchIndexer indexer;
+    private final int maxActions;
+    private final long maxBytes;
+    private final Semaphore inFlightBulks;
+    private final int maxConcurrentBulks;
+    private final long flushIntervalMillis;
+    private final Map<String, CompletableFuture<Boolean>> chunkWrites = new ConcurrentHashMap<>();
+    // documents waiting for their previous chunks to write their status, they hold no bulk permit
+    private final Set<CompletableFuture<Boolean>> waitingDoneWrites = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService flusher;
+    private boolean closed = false;
+    private Batch batch = new Batch();
+
+    public NamedEntityBulkBuffer(ElasticsearchIndexer indexer, int maxActions, long maxBytes, long flushIntervalMillis, int maxConcurrentBulks) {
+        this.indexer = indexer;
+        this.maxActions = maxActions;
+        this.maxBytes = maxBytes;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxConcurrentBulks = maxConcurrentBulks;
+        this.inFlightBulks = new Semaphore(maxConcurrentBulks);
+    }
+
+    /**
+     * buffers the named entities of a document, then the document will be marked as DONE for the pipeline.
+     *
+     * @return a future completed with true when the entities and the document status are written
+     */
+    public CompletableFuture<Boolean> add(String indexName, Pipeline.Type nerType, List<NamedEntity> namedEntities, Document parent) throws IOException {
+        PendingDocument pending = new PendingDocument(parent.getId(), indexer.createNerDoneRequests(indexName, nerType, parent),
+                chunkWrites.remove(chunkKey(indexName, parent)));
+        return add(pending, indexer.createNamedEntityRequests(indexName, namedEntities, parent));
+    }
+
+    /**
+     * buffers the named entities of a chunk of a document. The document status is not updated.
+     */
+    public CompletableFuture<Boolean> addChunk(String indexName, List<NamedEntity> namedEntities, Document parent) {
+        PendingDocument pending = new PendingDocument(parent.getId(), new ArrayList<>(), null);
+        CompletableFuture<Boolean> written = add(pending, indexer.createNamedEntityRequests(indexName, namedEntities, parent));
+        chunkWrites.merge(chunkKey(indexName, parent), written, (previous, next) -> previous.thenCombine(next, Boolean::logicalAnd));
+        return written;
+    }
+
+    /**
+     * forgets the chunks written for a document that won't be added, when the extraction of its other chunks failed.
+     */
+    public void discardChunks(String indexName, Document parent) {
+        chunkWrites.remove(chunkKey(indexName, parent));
+    }
+
+    boolean hasChunks(String indexName, Document parent) {
+        return chunkWrites.containsKey(chunkKey(indexName, parent));
+    }
+
+    private CompletableFuture<Boolean> add(PendingDocument pending, List<? extends DocWriteRequest<?>> entityRequests) {
+        Batch full = null;
+        synchronized (this) {
+            startFlusher();
+            entityRequests.forEach(batch.entities::add);
+            pending.nbEntities = entityRequests.size();
+            batch.documents.add(pending);
+            batch.nbDoneActions += pending.doneRequests.size();
+            if (batch.entities.numberOfActions() + batch.nbDoneActions >= maxActions || batch.entities.estimatedSizeInBytes() >= maxBytes) {
+                full = swap();
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return pending.written;
+    }
+
+    public void flush() {
+        Batch current;
+        synchronized (this) {
+            current = swap();
+        }
+        if (!current.documents.isEmpty()) {
+            send(current);
+        }
+    }
+
+    /**
+     * an exception thrown by a scheduled task cancels its next executions, so it is logged here.
+     */
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("cannot flush named entities buffer", e);
+        }
+    }
+
+    private void startFlusher() {
+        if (flusher != null || closed) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("ner-bulk-flusher-%d").setDaemon(true).build());
+        flusher.scheduleWithFixedDelay(this::scheduledFlush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * flushes the buffer and waits for the pending bulks to be written, then for the status
+     * of the documents that were waiting for their previous chunks.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (flusher != null) {
+                flusher.shutdown();
+            }
+        }
+        flush();
+        inFlightBulks.acquireUninterruptibly(maxConcurrentBulks);
+        inFlightBulks.release(maxConcurrentBulks);
+        // all the bulks are done, so the chunks have been written and no document can start waiting
+        CompletableFuture.allOf(waitingDoneWrites.toArray(new CompletableFuture[0])).handle((v, e) -> null).join();
+    }
+
+    private Batch swap() {
+        Batch current = batch;
+        batch = new Batch();
+        return current;
+    }
+
+    private void send(Batch batch) {
+        inFlightBulks.acquireUninterruptibly();
+        if (batch.entities.numberOfActions() == 0) {
+            onEntitiesWritten(batch, new BulkItemResponse[0]);
+            return;
+        }
+        try {
+            indexer.client.bulkAsync(batch.entities.setRefreshPolicy(indexer.getRefreshPolicy()), RequestOptions.DEFAULT, ActionListener.wrap(
+                    response -> {
+                        indexer.invalidateSearches(batch.entities);
+                        onEntitiesWritten(batch, response.getItems());
+                    },
+                    e -> {
+                        onFailure(batch.documents, e);
+                        inFlightBulks.release();
+                    }));
+        } catch (RuntimeException e) {
+            onFailure(batch.documents, e);
+            inFlightBulks.release();
+        }
+    }
+
+    private void onEntitiesWritten(Batch batch, BulkItemResponse[] items) {
+        List<PendingDocument> done = new ArrayList<>();
+        BulkRequest doneRequest = new BulkRequest().setRefreshPolicy(indexer.getRefreshPolicy());
+        int position = 0;
+        for (PendingDocument pending : batch.documents) {
+            boolean entitiesWritten = true;
+            for (int i = position; i < position + pending.nbEntities; i++) {
+                entitiesWritten &= !items[i].isFailed();
+            }
+            position += pending.nbEntities;
+            if (!entitiesWritten) {
+                logger.warn("some named entities of doc {} have not been added", pending.documentId);
+                pending.written.complete(false);
+            } else if (pending.doneRequests.isEmpty()) {
+                pending.written.complete(true);
+            } else if (pending.previousChunks != null && !pending.previousChunks.isDone()) {
+                waitingDoneWrites.add(pending.written);
+                pending.written.whenComplete((written, throwable) -> waitingDoneWrites.remove(pending.written));
+                pending.previousChunks.whenComplete((chunksWritten, throwable) -> writeDone(pending, chunksWritten));
+            } else if (pending.previousChunks != null && (pending.previousChunks.isCompletedExceptionally() || !pending.previousChunks.join())) {
+                pending.written.complete(false);
+            } else {
+                pending.doneRequests.forEach(doneRequest::add);
+                done.add(pending);
+            }
+        }
+        if (done.isEmpty()) {
+            inFlightBulks.release();
+            return;
+        }
+        indexer.bulkWithStoredScriptsAsync(doneRequest).whenComplete((response, e) -> {
+            if (e == null) {
+                indexer.invalidateSearches(doneRequest);
+                onDoneWritten(done, response.getItems());
+            } else {
+                onFailure(done, e);
+            }
+            inFlightBulks.release();
+        });
+    }
+
+    private void writeDone(PendingDocument pending, Boolean chunksWritten) {
+        if (chunksWritten == null || !chunksWritten) {
+            pending.written.complete(false);
+            return;
+        }
+        BulkRequest doneRequest = new BulkRequest().setRefreshPolicy(indexer.getRefreshPolicy());
+        pending.doneRequests.forEach(doneRequest::add);
+        indexer.bulkWithStoredScriptsAsync(doneRequest).whenComplete((response, e) -> {
+            if (e == null) {
+                indexer.invalidateSearches(doneRequest);
+                onDoneWritten(List.of(pending), response.getItems());
+            } else {
+                onFailure(List.of(pending), e);
+            }
+        });
+    }
+
+    private void onDoneWritten(List<PendingDocument> done, BulkItemResponse[] items) {
+        int position = 0;
+        for (PendingDocument pending : done) {
+            boolean written = true;
+            for (int i = position; i < position + pending.doneRequests.size(); i++) {
+                written &= !items[i].isFailed();
+            }
+            position += pending.doneRequests.size();
+            pending.written.complete(written);
+        }
+    }
+
+    private void onFailure(List<PendingDocument> documents, Throwable e) {
+        logger.error("cannot write named entities of {} document(s)", documents.size(), e);
+        documents.forEach(pending -> pending.written.completeExceptionally(e));
+    }
+
+    private static String chunkKey(String indexName, Document parent) {
+        return indexName + "/" + parent.getId();
+    }
+
+    private static class Batch {
+        final BulkRequest entities = new BulkRequest();
+        final List<PendingDocument> documents = new ArrayList<>();
+        int nbDoneActions = 0;
+    }
+
+    private static class PendingDocument {
+        final String documentId;
+        final List<? extends DocWriteRequest<?>> doneRequests;
+        final CompletableFuture<Boolean> previousChunks;
+        final CompletableFuture<Boolean> written = new CompletableFuture<>();
+        int nbEntities;
+
+        PendingDocument(String documentId, List<? extends DocWriteRequest<?>> doneRequests, CompletableFuture<Boolean> previousChunks) {
+            this.documentId = documentId;
+            this.doneRequests = doneRequests;
+            this.previousChunks = previousChunks;
+        }
+    }
+}
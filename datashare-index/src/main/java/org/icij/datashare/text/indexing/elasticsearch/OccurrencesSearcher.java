@@ -0,0 +1,212 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.icij.datashare.PropertiesProvider;
+import org.icij.datashare.text.indexing.SearchedText;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches the occurrences of a text in the content (or a translation) of a document.
+ *
+ * The lower cased contents are kept in a LRU cache bounded by their number of characters,
+ * so that the successive searches made in the document viewer only read the document once
+ * and are computed in the JVM instead of running a painless script over the whole content.
+ * Contents larger than a segment of the cache are not cached (only their offsets are).
+ * The offsets of the last searched queries are also cached.
+ *
+ * The documents can be written by other processes (the spewer, the NLP pipelines), so the cached
+ * entries are stamped with the sequence number of the document and checked with a get request
+ * that doesn't read the source.
+ */
+class OccurrencesSearcher {
+    static final String CACHE_SIZE_PROP = "occurrencesCacheSize";
+    static final long DEFAULT_CACHE_SIZE = 32L * 1024 * 1024; // chars
+    static final int CACHE_CONCURRENCY_LEVEL = 4;
+    static final int OFFSETS_CACHE_SIZE = 1024;
+    static final int CACHE_EXPIRATION_MINUTES = 10;
+    private final RestHighLevelClient client;
+    private final long maxCachedContentLength;
+    private final Cache<ContentKey, Versioned<String>> contents;
+    private final Cache<QueryKey, Versioned<int[]>> offsets;
+
+    OccurrencesSearcher(RestHighLevelClient client, PropertiesProvider propertiesProvider) {
+        this.client = client;
+        long cacheSize = propertiesProvider.get(CACHE_SIZE_PROP).map(Long::parseLong).orElse(DEFAULT_CACHE_SIZE);
+        // guava splits the weight between the segments: a larger content would be evicted at once
+        this.maxCachedContentLength = cacheSize / CACHE_CONCURRENCY_LEVEL;
+        this.contents = CacheBuilder.newBuilder()
+                .concurrencyLevel(CACHE_CONCURRENCY_LEVEL)
+                .maximumWeight(cacheSize)
+                .weigher((ContentKey key, Versioned<String> content) -> content.value.length())
+                .expireAfterAccess(CACHE_EXPIRATION_MINUTES, TimeUnit.MINUTES)
+                .build();
+        this.offsets = CacheBuilder.newBuilder()
+                .maximumSize(OFFSETS_CACHE_SIZE)
+                .expireAfterAccess(CACHE_EXPIRATION_MINUTES, TimeUnit.MINUTES)
+                .build();
+    }
+
+    SearchedText search(String indexName, String id, String routing, String query, String targetLanguage) throws IOException {
+        if (query.length() == 0) {
+            throw new IllegalArgumentException();
+        }
+        ContentKey contentKey = new ContentKey(indexName, id, isOriginal(targetLanguage) ? null : targetLanguage);
+        String lowerQuery = query.toLowerCase(Locale.ROOT);
+        int[] queryOffsets = getOffsets(new QueryKey(contentKey, lowerQuery), routing);
+        return targetLanguage == null ?
+                new SearchedText(queryOffsets.clone(), queryOffsets.length, query) :
+                new SearchedText(queryOffsets.clone(), queryOffsets.length, query, targetLanguage);
+    }
+
+    private int[] getOffsets(QueryKey queryKey, String routing) throws IOException {
+        Versioned<int[]> cachedOffsets = offsets.getIfPresent(queryKey);
+        Versioned<String> cachedContent = contents.getIfPresent(queryKey.contentKey);
+        if (cachedOffsets != null || cachedContent != null) {
+            GetResponse version = client.get(new GetRequest(queryKey.contentKey.indexName, queryKey.contentKey.id).routing(routing)
+                    .fetchSourceContext(FetchSourceContext.DO_NOT_FETCH_SOURCE), RequestOptions.DEFAULT);
+            if (!version.isExists()) {
+                throw new IllegalArgumentException("Document not found");
+            }
+            if (cachedOffsets != null && cachedOffsets.isVersionOf(version)) {
+                return cachedOffsets.value;
+            }
+            if (cachedContent != null && cachedContent.isVersionOf(version)) {
+                return putOffsets(queryKey, cachedContent);
+            }
+        }
+        Versioned<String> content = readLowerContent(queryKey.contentKey, routing);
+        if (content.value.length() <= maxCachedContentLength) {
+            contents.put(queryKey.contentKey, content);
+        }
+        return putOffsets(queryKey, content);
+    }
+
+    private int[] putOffsets(QueryKey queryKey, Versioned<String> content) {
+        int[] queryOffsets = getOffsets(queryKey.query, content.value);
+        offsets.put(queryKey, new Versioned<>(content.seqNo, content.primaryTerm, queryOffsets));
+        return queryOffsets;
+    }
+
+    static int[] getOffsets(String lowerQuery, String lowerContent) {
+        int[] result = new int[16];
+        int count = 0;
+        int lastIndex = lowerContent.indexOf(lowerQuery);
+        while (lastIndex != -1) {
+            if (count == result.length) {
+                result = Arrays.copyOf(result, count * 2);
+            }
+            result[count++] = lastIndex;
+            lastIndex = lowerContent.indexOf(lowerQuery, lastIndex + lowerQuery.length());
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private Versioned<String> readLowerContent(ContentKey key, String routing) throws IOException {
+        String field = key.targetLanguage == null ? "content" : "content_translated";
+        GetResponse response = client.get(new GetRequest(key.indexName, key.id).routing(routing)
+                .fetchSourceContext(new FetchSourceContext(true, new String[] {field}, null)), RequestOptions.DEFAULT);
+        if (!response.isExists()) {
+            throw new IllegalArgumentException("Document not found");
+        }
+        return new Versioned<>(response.getSeqNo(), response.getPrimaryTerm(),
+                getContent(response.getSourceAsMap(), key.targetLanguage).toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean isOriginal(String targetLanguage) {
+        return targetLanguage == null || "original".equals(targetLanguage);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String getContent(Map<String, Object> source, String targetLanguage) {
+        if (targetLanguage == null) {
+            return (String) source.getOrDefault("content", "");
+        }
+        List<Map<String, Object>> translations = (List<Map<String, Object>>) source.get("content_translated");
+        if (translations == null) {
+            throw new IllegalArgumentException("Translation not found");
+        }
+        // first translation of maybe many with the same target (different interpreters)
+        return translations.stream()
+                .filter(translation -> targetLanguage.equals(translation.get("target_language")))
+                .map(translation -> (String) translation.get("content"))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Translation not found"));
+    }
+
+    private static class Versioned<T> {
+        final long seqNo;
+        final long primaryTerm;
+        final T value;
+
+        Versioned(long seqNo, long primaryTerm, T value) {
+            this.seqNo = seqNo;
+            this.primaryTerm = primaryTerm;
+            this.value = value;
+        }
+
+        boolean isVersionOf(GetResponse response) {
+            return seqNo == response.getSeqNo() && primaryTerm == response.getPrimaryTerm();
+        }
+    }
+
+    private static class ContentKey {
+        final String indexName;
+        final String id;
+        final String targetLanguage;
+
+        ContentKey(String indexName, String id, String targetLanguage) {
+            this.indexName = indexName;
+            this.id = id;
+            this.targetLanguage = targetLanguage;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ContentKey that = (ContentKey) o;
+            return indexName.equals(that.indexName) && id.equals(that.id) && Objects.equals(targetLanguage, that.targetLanguage);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(indexName, id, targetLanguage);
+        }
+    }
+
+    private static class QueryKey {
+        final ContentKey contentKey;
+        final String query;
+
+        QueryKey(ContentKey contentKey, String query) {
+            this.contentKey = contentKey;
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            QueryKey that = (QueryKey) o;
+            return contentKey.equals(that.contentKey) && query.equals(that.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(contentKey, query);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.icij.datashare.Entity;
+import org.icij.datashare.text.indexing.Indexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Scrolls the slices of a search in parallel.
+ *
+ * Each slice is scrolled by its own searcher in a dedicated thread pool, and its pages are put in a bounded queue
+ * read by the consumer of the stream: when the consumer is slower than elasticsearch, the slices wait for room
+ * in the queue. An error in a slice is thrown by the stream. The scroll (or point in time) of every slice is cleared
+ * when the slice ends, fails or when the stream is closed.
+ */
+public class ParallelScroll implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelScroll.class);
+    static final int PAGES_BY_SLICE = 2;
+    private final Supplier<Indexer.Searcher> searcherSupplier;
+    private final int nbSlices;
+    private final BlockingQueue<Page> pages;
+    private final ExecutorService executor;
+    private final CountDownLatch firstPages;
+    private final AtomicLong totalHits = new AtomicLong();
+    private boolean started = false;
+
+    /**
+     * @param searcherSupplier creates a new searcher for each slice (with the same query)
+     * @param nbSlices number of slices scrolled in parallel
+     */
+    public ParallelScroll(Supplier<Indexer.Searcher> searcherSupplier, int nbSlices) {
+        this.searcherSupplier = searcherSupplier;
+        this.nbSlices = nbSlices;
+        this.pages = new ArrayBlockingQueue<>(nbSlices * PAGES_BY_SLICE);
+        this.firstPages = new CountDownLatch(nbSlices);
+        this.executor = Executors.newFixedThreadPool(nbSlices, new ThreadFactoryBuilder()
+                .setNameFormat("scroll-slice-%d").setDaemon(true).build());
+    }
+
+    /**
+     * @return the pages of all the slices, in the order they are read
+     */
+    public synchronized Stream<List<? extends Entity>> pages() {
+        if (started) {
+            throw new IllegalStateException("the slices are already scrolled");
+        }
+        started = true;
+        for (int i = 0; i < nbSlices; i++) {
+            int numSlice = i;
+            executor.submit(() -> scrollSlice(numSlice));
+        }
+        executor.shutdown();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new PageIterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+    }
+
+    public Stream<? extends Entity> stream() {
+        return pages().flatMap(List::stream);
+    }
+
+    /**
+     * waits for the first page of every slice.
+     *
+     * @return the number of hits of the search
+     */
+    public long totalHits() throws InterruptedException {
+        firstPages.await();
+        return totalHits.get();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void scrollSlice(int numSlice) {
+        Indexer.Searcher searcher = searcherSupplier.get();
+        boolean firstPage = true;
+        try {
+            List<? extends Entity> page;
+            do {
+                page = (nbSlices > 1 ? searcher.scroll(numSlice, nbSlices) : searcher.scroll()).collect(toList());
+                if (firstPage) {
+                    totalHits.addAndGet(searcher.totalHits());
+                    firstPages.countDown();
+                    firstPage = false;
+                }
+                if (!page.isEmpty()) {
+                    pages.put(new Page(numSlice, page, null));
+                }
+            } while (!page.isEmpty());
+            pages.put(new Page(numSlice, null, null));
+        } catch (InterruptedException e) {
+            logger.info("slice {} interrupted", numSlice);
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            logger.error("error in slice {}", numSlice, e);
+            try {
+                pages.put(new Page(numSlice, null, e));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            if (firstPage) {
+                firstPages.countDown();
+            }
+            try {
+                searcher.clearScroll();
+            } catch (IOException | RuntimeException e) {
+                logger.warn("cannot clear scroll of slice {}", numSlice, e);
+            }
+        }
+    }
+
+    private class PageIterator implements Iterator<List<? extends Entity>> {
+        private int nbEndedSlices = 0;
+        private Page next;
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && nbEndedSlices < nbSlices) {
+                Page page;
+                try {
+                    page = pages.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    close();
+                    throw new IllegalStateException("interrupted while waiting for slices", e);
+                }
+                if (page.error != null) {
+                    close();
+                    throw page.error instanceof IOException ?
+                            new UncheckedIOException("error in slice " + page.numSlice, (IOException) page.error) :
+                            new IllegalStateException("error in slice " + page.numSlice, page.error);
+                }
+                if (page.entities == null) {
+                    nbEndedSlices++;
+                } else {
+                    next = page;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public List<? extends Entity> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<? extends Entity> entities = next.entities;
+            next = null;
+            return entities;
+        }
+    }
+
+    private static class Page {
+        final int numSlice;
+        final List<? extends Entity> entities;
+        final Exception error;
+
+        Page(int numSlice, List<? extends Entity> entities, Exception error) {
+            this.numSlice = numSlice;
+            this.entities = entities;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.icij.datashare.PropertiesProvider;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toCollection;
+import static org.icij.datashare.json.JsonObjectMapper.MAPPER;
+
+/**
+ * Short lived cache of the search and count responses of the search proxy.
+ *
+ * The UI sends the same aggregations (facets, counts by tab) for all the users browsing a project,
+ * so the responses are cached for a few seconds, by request path, body and indices. The paths are
+ * checked against the user's indices before the cache is read. Concurrent identical requests wait
+ * for the first one instead of being sent to elasticsearch.
+ *
+ * The keys contain a generation of their indices, incremented when the indexer writes into an index:
+ * the entries read before a write are not found anymore and expire. So an invalidation only updates
+ * the generation of the index, and a response loaded while the index is written is never served after.
+ */
+public class SearchProxyCache {
+    static final String TTL_PROP = "searchCacheTtlSeconds";
+    static final int DEFAULT_TTL_SECONDS = 5;
+    static final String SIZE_PROP = "searchCacheSize";
+    static final long DEFAULT_SIZE = 32L * 1024 * 1024; // bytes
+    private static final Pattern CACHEABLE_PATH = Pattern.compile("^/?[^_/][^/]*/(_doc/)?(_search|_count)(\\?.*)?$");
+    private final Cache<Key, CachedResponse> responses;
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+    private final AtomicLong allGenerations = new AtomicLong();
+    private final boolean enabled;
+
+    SearchProxyCache(PropertiesProvider propertiesProvider) {
+        int ttlSeconds = propertiesProvider.get(TTL_PROP).map(Integer::parseInt).orElse(DEFAULT_TTL_SECONDS);
+        this.enabled = ttlSeconds > 0;
+        this.responses = CacheBuilder.newBuilder()
+                .maximumWeight(propertiesProvider.get(SIZE_PROP).map(Long::parseLong).orElse(DEFAULT_SIZE))
+                .weigher((Key key, CachedResponse response) -> key.weight() + response.content.length)
+                .expireAfterWrite(Math.max(ttlSeconds, 1), TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * @return true for the search and count requests on indices (and not for scrolls)
+     */
+    boolean isCacheable(String method, String path) {
+        return enabled && ("GET".equals(method) || "POST".equals(method)) &&
+                CACHEABLE_PATH.matcher(path).matches() && !path.contains("scroll=");
+    }
+
+    CachedResponse get(String method, String path, byte[] body, Callable<CachedResponse> loader) throws IOException {
+        try {
+            return responses.get(new Key(method, path, body, this::generation), loader);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IOException(e.getCause());
+        }
+    }
+
+    void invalidate(String indexName) {
+        generations.merge(indexName, 1L, Long::sum);
+        allGenerations.incrementAndGet();
+    }
+
+    /**
+     * @return a number incremented each time one of the indices is written
+     */
+    private long generation(Set<String> indices) {
+        if (indices.stream().anyMatch(index -> index.contains("*"))) {
+            return allGenerations.get();
+        }
+        return indices.stream().mapToLong(index -> generations.getOrDefault(index, 0L)).sum();
+    }
+
+    long size() {
+        return responses.size();
+    }
+
+    public static class CachedResponse {
+        public final int status;
+        public final String contentType;
+        public final byte[] content;
+
+        CachedResponse(int status, String contentType, byte[] content) {
+            this.status = status;
+            this.contentType = contentType;
+            this.content = content;
+        }
+    }
+
+    private static class Key {
+        final String method;
+        final String path;
+        final String body;
+        final long generation;
+
+        Key(String method, String path, byte[] body, ToLongFunction<Set<String>> generationOfIndices) {
+            this.method = method;
+            this.path = normalizePath(path);
+            this.body = normalizeBody(body);
+            this.generation = generationOfIndices.applyAsLong(
+                    Arrays.stream(this.path.split("/")[0].split(",")).collect(toCollection(TreeSet::new)));
+        }
+
+        int weight() {
+            return path.length() + body.length();
+        }
+
+        private static String normalizePath(String path) {
+            String[] pathAndQuery = (path.startsWith("/") ? path.substring(1) : path).split("\\?", 2);
+            if (pathAndQuery.length == 1) {
+                return pathAndQuery[0];
+            }
+            return pathAndQuery[0] + "?" + Arrays.stream(pathAndQuery[1].split("&")).sorted().collect(joining("&"));
+        }
+
+        private static String normalizeBody(byte[] body) {
+            if (body == null || body.length == 0) {
+                return "";
+            }
+            try {
+                return MAPPER.readTree(body).toString();
+            } catch (IOException e) {
+                return new String(body, StandardCharsets.UTF_8);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return generation == key.generation && method.equals(key.method) && path.equals(key.path) && body.equals(key.body);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(method, path, body, generation);
+        }
+    }
+}
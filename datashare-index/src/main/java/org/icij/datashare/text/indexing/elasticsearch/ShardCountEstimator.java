@@ -0,0 +1,65 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.stream.Stream;
+
+/**
+ * Proposes a number of primary shards for a project index from the size of the documents to index.
+ *
+ * The index size is estimated as a ratio of the source files size (the extracted text and metadata
+ * are usually much smaller than the original files), and divided by the target size of a shard.
+ */
+public class ShardCountEstimator {
+    private static final Logger logger = LoggerFactory.getLogger(ShardCountEstimator.class);
+    static final double DEFAULT_INDEX_TO_SOURCE_RATIO = 0.3;
+    static final long DEFAULT_TARGET_SHARD_SIZE = 30L * 1024 * 1024 * 1024;
+    static final int MAX_SHARDS = 64;
+    private final long targetShardSize;
+    private final double indexToSourceRatio;
+
+    public ShardCountEstimator() {
+        this(DEFAULT_TARGET_SHARD_SIZE, DEFAULT_INDEX_TO_SOURCE_RATIO);
+    }
+
+    public ShardCountEstimator(long targetShardSize, double indexToSourceRatio) {
+        this.targetShardSize = targetShardSize;
+        this.indexToSourceRatio = indexToSourceRatio;
+    }
+
+    public int estimate(Path dataDir) {
+        long sourceSize = directorySize(dataDir);
+        int nbShards = estimate(sourceSize);
+        logger.info("{} contains {} bytes, proposing {} shard(s) of at most {} bytes", dataDir, sourceSize, nbShards, targetShardSize);
+        return nbShards;
+    }
+
+    int estimate(long sourceSize) {
+        long estimatedIndexSize = (long) (sourceSize * indexToSourceRatio);
+        long nbShards = (estimatedIndexSize + targetShardSize - 1) / targetShardSize;
+        return (int) Math.max(1, Math.min(MAX_SHARDS, nbShards));
+    }
+
+    static long directorySize(Path dataDir) {
+        try (Stream<Path> paths = Files.walk(dataDir)) {
+            return paths.mapToLong(ShardCountEstimator::regularFileSize).sum();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long regularFileSize(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return attributes.isRegularFile() ? attributes.size() : 0;
+        } catch (IOException e) {
+            return 0; // unreadable files will not be indexed
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import com.google.common.hash.Hashing;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.cluster.storedscripts.PutStoredScriptRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Arrays.asList;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+/**
+ * Painless scripts used by the indexer.
+ *
+ * They are registered as stored scripts in the background, with an id containing a hash of their source
+ * so that a new version of a script never collides with the version stored by an older datashare.
+ * Once stored, the requests only send the script id and parameters. Until then, or if elasticsearch cannot
+ * be reached, the scripts are sent inline without waiting for elasticsearch, and storing them is tried again
+ * after a delay. If the cluster refuses a stored script, the requests always send its source inline.
+ *
+ * The stored scripts can disappear from the cluster (deleted, or cluster state lost): the callers
+ * check the errors with {@link #isMissingScript(Throwable)}, {@link #restore()} the scripts and send their request again.
+ */
+class StoredScripts {
+    private static final Logger logger = LoggerFactory.getLogger(StoredScripts.class);
+    static final String LANG = "painless";
+    private static final String MISSING_SCRIPT_ERROR = "unable to find script";
+    static final long RETRY_DELAY_MILLIS = 30_000;
+
+    static final Definition EXTRACTED_TEXT = new Definition("extracted-text", ElasticsearchIndexer.getScriptStringFromFile("extractedText.painless.java"));
+    static final Definition ADD_NER_TAG = new Definition("add-ner-tag",
+            "if (!ctx._source.nerTags.contains(params.nerTag)) ctx._source.nerTags.add(params.nerTag);");
+    static final Definition TAG = new Definition("tag",
+            "int updates = 0;" +
+                    "if (ctx._source.tags == null) ctx._source.tags = [];" +
+                    "for (int i = 0; i < params.tags.length; i++) {" +
+                    "  if (!ctx._source.tags.contains(params.tags[i])) {" +
+                    "   ctx._source.tags.add(params.tags[i]);" +
+                    "   updates++;" +
+                    "  }" +
+                    "}" +
+                    "if (updates == 0) ctx.op = 'noop';");
+    static final Definition UNTAG = new Definition("untag",
+            "int updates = 0;" +
+                    "for (int i = 0; i < params.tags.length; i++) {" +
+                    "  if (ctx._source.tags.contains(params.tags[i])) {" +
+                    "    ctx._source.tags.remove(ctx._source.tags.indexOf(params.tags[i]));" +
+                    "    updates++;" +
+                    "  }" +
+                    "}" +
+                    "if (updates == 0) ctx.op = 'noop';");
+    static final List<Definition> ALL = asList(EXTRACTED_TEXT, ADD_NER_TAG, TAG, UNTAG);
+
+    private final RestHighLevelClient client;
+    private final Set<String> storedIds = ConcurrentHashMap.newKeySet();
+    private final Set<String> refusedIds = ConcurrentHashMap.newKeySet();
+    private final Map<String, CompletableFuture<Void>> pendingIds = new ConcurrentHashMap<>();
+    private volatile long retryTime = 0;
+
+    StoredScripts(RestHighLevelClient client) {
+        this.client = client;
+    }
+
+    /**
+     * stores the scripts in the background
+     *
+     * @return a future completed when the scripts have been stored, refused, or could not be stored
+     */
+    CompletableFuture<Void> register() {
+        return CompletableFuture.allOf(ALL.stream().map(this::storeAsync).toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * builds the script without calling elasticsearch: a stored script if it is stored,
+     * else an inline script (and the script is stored in the background if the retry delay has elapsed).
+     */
+    Script script(Definition definition, Map<String, Object> params) {
+        if (storedIds.contains(definition.id)) {
+            return new Script(ScriptType.STORED, null, definition.id, params);
+        }
+        if (System.currentTimeMillis() >= retryTime) {
+            storeAsync(definition);
+        }
+        return new Script(ScriptType.INLINE, LANG, definition.source, params);
+    }
+
+    boolean isStored(Definition definition) {
+        return storedIds.contains(definition.id);
+    }
+
+    boolean isRefused(Definition definition) {
+        return refusedIds.contains(definition.id);
+    }
+
+    /**
+     * stores again the scripts, after they have been found missing from the cluster.
+     * It waits for elasticsearch, so that the failed request can be sent again.
+     */
+    void restore() {
+        logger.warn("stored scripts are missing from the cluster, storing them again");
+        storedIds.clear();
+        for (Definition definition : ALL) {
+            if (refusedIds.contains(definition.id)) {
+                continue;
+            }
+            try {
+                onResponse(definition, client.putScript(putRequest(definition), RequestOptions.DEFAULT).isAcknowledged());
+            } catch (IOException | RuntimeException e) {
+                onFailure(definition, e);
+            }
+        }
+    }
+
+    private CompletableFuture<Void> storeAsync(Definition definition) {
+        if (storedIds.contains(definition.id) || refusedIds.contains(definition.id)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> stored = new CompletableFuture<>();
+        CompletableFuture<Void> pending = pendingIds.putIfAbsent(definition.id, stored);
+        if (pending != null) {
+            return pending;
+        }
+        stored.whenComplete((v, e) -> pendingIds.remove(definition.id));
+        try {
+            client.putScriptAsync(putRequest(definition), RequestOptions.DEFAULT, ActionListener.wrap(response -> {
+                onResponse(definition, response.isAcknowledged());
+                stored.complete(null);
+            }, e -> {
+                onFailure(definition, e);
+                stored.complete(null);
+            }));
+        } catch (IOException | RuntimeException e) {
+            onFailure(definition, e);
+            stored.complete(null);
+        }
+        return stored;
+    }
+
+    private static PutStoredScriptRequest putRequest(Definition definition) throws IOException {
+        return new PutStoredScriptRequest().id(definition.id).content(BytesReference.bytes(
+                jsonBuilder().startObject().startObject("script")
+                        .field("lang", LANG).field("source", definition.source)
+                        .endObject().endObject()), XContentType.JSON);
+    }
+
+    private void onResponse(Definition definition, boolean acknowledged) {
+        if (acknowledged) {
+            storedIds.add(definition.id);
+            logger.info("stored script {}", definition.id);
+        } else {
+            retryTime = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+            logger.warn("script {} has not been acknowledged, it is sent inline", definition.id);
+        }
+    }
+
+    private void onFailure(Definition definition, Exception e) {
+        int status = statusOf(e);
+        if (status >= 400 && status < 500) {
+            refusedIds.add(definition.id);
+            logger.warn("script {} refused by the cluster, it will be sent inline: {}", definition.id, e.getMessage());
+        } else {
+            retryTime = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+            logger.warn("cannot store script {}, it is sent inline: {}", definition.id, e.getMessage());
+        }
+    }
+
+    private static int statusOf(Exception e) {
+        if (e instanceof ElasticsearchException) {
+            return ((ElasticsearchException) e).status().getStatus();
+        }
+        if (e instanceof ResponseException) {
+            return ((ResponseException) e).getResponse().getStatusLine().getStatusCode();
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the error (or one of its causes) is a stored script missing from the cluster
+     */
+    static boolean isMissingScript(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (isMissingScript(t.getMessage())) {
+                return true;
+            }
+            for (Throwable suppressed : t.getSuppressed()) {
+                if (isMissingScript(suppressed.getMessage())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static boolean isMissingScript(String errorMessage) {
+        return errorMessage != null && errorMessage.contains(MISSING_SCRIPT_ERROR);
+    }
+
+    static class Definition {
+        final String id;
+        final String source;
+
+        Definition(String name, String source) {
+            this.id = "datashare-" + name + "-" + Hashing.sha256().hashString(source, StandardCharsets.UTF_8).toString().substring(0, 8);
+            this.source = source;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Progress of an update by query running as an elasticsearch task (read from <code>GET /_tasks/:id</code>).
+ * For sliced requests, the status of the parent task sums the slices.
+ */
+public class UpdateByQueryProgress {
+    public final boolean completed;
+    public final long total;
+    public final long processed;
+    public final long updated;
+    public final String error;
+
+    UpdateByQueryProgress(boolean completed, long total, long processed, long updated, String error) {
+        this.completed = completed;
+        this.total = total;
+        this.processed = processed;
+        this.updated = updated;
+        this.error = error;
+    }
+
+    static UpdateByQueryProgress fromTask(JsonNode task) {
+        JsonNode status = task.path("task").path("status");
+        long updated = status.path("updated").asLong();
+        long processed = updated + status.path("created").asLong() + status.path("deleted").asLong() +
+                status.path("noops").asLong() + status.path("version_conflicts").asLong();
+        String error = null;
+        if (task.has("error")) {
+            error = task.get("error").toString();
+        } else if (task.path("response").path("failures").size() > 0) {
+            error = task.get("response").get("failures").toString();
+        }
+        return new UpdateByQueryProgress(task.path("completed").asBoolean(), status.path("total").asLong(), processed, updated, error);
+    }
+
+    public double getProgressRate() {
+        if (completed) {
+            return 1;
+        }
+        return total == 0 ? 0 : (double) processed / total;
+    }
+
+    @Override
+    public String toString() {
+        return "UpdateByQueryProgress{completed=" + completed + ", processed=" + processed + "/" + total + ", updated=" + updated + "}";
+    }
+}
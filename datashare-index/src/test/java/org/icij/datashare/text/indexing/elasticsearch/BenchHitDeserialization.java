@@ -0,0 +1,62 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import com.sun.management.ThreadMXBean;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.icij.datashare.PropertiesProvider;
+import org.icij.datashare.test.ElasticsearchRule;
+import org.icij.datashare.text.Document;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
+import static org.elasticsearch.action.support.WriteRequest.RefreshPolicy.IMMEDIATE;
+import static org.icij.datashare.test.ElasticsearchRule.TEST_INDEX;
+import static org.icij.datashare.text.DocumentBuilder.createDoc;
+
+public class BenchHitDeserialization {
+    static Logger logger = LoggerFactory.getLogger(BenchHitDeserialization.class);
+    @ClassRule
+    public static ElasticsearchRule es = new ElasticsearchRule();
+    private static final int NB_HITS = 3500;
+    private static final int NB_ITERATIONS = 20;
+
+    @Test
+    public void bench_hit_to_document() throws Exception {
+        ElasticsearchIndexer indexer = new ElasticsearchIndexer(es.client, new PropertiesProvider()).withRefresh(IMMEDIATE);
+        String content = "The funds were transferred through a network of offshore companies before reaching the accounts. ".repeat(50);
+        List<Document> docs = range(0, NB_HITS).mapToObj(i -> createDoc("bench" + i).with(content).build()).collect(toList());
+        indexer.bulkAdd(TEST_INDEX, docs);
+        SearchHit[] hits = es.client.search(new SearchRequest(TEST_INDEX).source(new SearchSourceBuilder().size(NB_HITS)),
+                RequestOptions.DEFAULT).getHits().getHits();
+
+        bench("source map", hits, ElasticsearchSearcher::hitToObjectFromMap);
+        bench("streaming", hits, ElasticsearchSearcher::hitToObject);
+        bench("source map", hits, ElasticsearchSearcher::hitToObjectFromMap);
+        bench("streaming", hits, ElasticsearchSearcher::hitToObject);
+    }
+
+    private void bench(String name, SearchHit[] hits, BiFunction<SearchHit, Class<Document>, Document> hitToObject) {
+        ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long before = System.nanoTime();
+        for (int i = 0; i < NB_ITERATIONS; i++) {
+            for (SearchHit hit : hits) {
+                hitToObject.apply(hit, Document.class);
+            }
+        }
+        long elapsedNanos = System.nanoTime() - before;
+        long allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+        long nbHits = (long) NB_ITERATIONS * hits.length;
+        logger.info("{}: {} ns/hit, {} bytes allocated/hit", name, elapsedNanos / nbHits, allocated / nbHits);
+    }
+}
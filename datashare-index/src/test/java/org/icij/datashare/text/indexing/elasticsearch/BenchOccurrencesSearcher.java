@@ -0,0 +1,49 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import org.icij.datashare.PropertiesProvider;
+import org.icij.datashare.test.ElasticsearchRule;
+import org.icij.datashare.text.Document;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.elasticsearch.action.support.WriteRequest.RefreshPolicy.IMMEDIATE;
+import static org.icij.datashare.test.ElasticsearchRule.TEST_INDEX;
+import static org.icij.datashare.text.DocumentBuilder.createDoc;
+
+public class BenchOccurrencesSearcher {
+    static Logger logger = LoggerFactory.getLogger(BenchOccurrencesSearcher.class);
+    @ClassRule
+    public static ElasticsearchRule es = new ElasticsearchRule();
+    private static final String[] KEYSTROKES = {"o", "of", "off", "offs", "offsh", "offsho", "offshor", "offshore"};
+
+    @Test
+    public void bench_keystroke_searches() throws Exception {
+        String sentence = "The funds were transferred through a network of offshore companies before reaching the accounts. ";
+        for (int nbRepeats : new int[] {100, 10000, 100000}) {
+            ElasticsearchIndexer indexer = new ElasticsearchIndexer(es.client, new PropertiesProvider()).withRefresh(IMMEDIATE);
+            Document doc = createDoc("bench" + nbRepeats).with(sentence.repeat(nbRepeats)).build();
+            indexer.add(TEST_INDEX, doc);
+
+            long firstSearchNanos = 0;
+            long elapsedNanos = 0;
+            for (String query : KEYSTROKES) {
+                long before = System.nanoTime();
+                indexer.searchTextOccurrences(TEST_INDEX, doc.getId(), query, null);
+                long elapsed = System.nanoTime() - before;
+                firstSearchNanos = firstSearchNanos == 0 ? elapsed : firstSearchNanos;
+                elapsedNanos += elapsed;
+            }
+            long repeatedNanos = 0;
+            for (String query : KEYSTROKES) {
+                long before = System.nanoTime();
+                indexer.searchTextOccurrences(TEST_INDEX, doc.getId(), query, null);
+                repeatedNanos += System.nanoTime() - before;
+            }
+            logger.info("{} chars: first search {} µs, keystroke searches {} µs/op, repeated searches {} µs/op",
+                    doc.getContent().length(), firstSearchNanos / 1000,
+                    elapsedNanos / KEYSTROKES.length / 1000, repeatedNanos / KEYSTROKES.length / 1000);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ContentPagerTest {
+    private final List<String> pages = new ArrayList<>();
+    private final List<Long> pageStarts = new ArrayList<>();
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_page_size_should_be_positive() {
+        new ContentPager(new StringReader(""), 0, this::addPage);
+    }
+
+    @Test
+    public void test_empty_content() throws IOException {
+        ContentPager pager = new ContentPager(new StringReader(""), 3, this::addPage);
+        assertThat(IOUtils.toString(pager)).isEqualTo("");
+        assertThat(pager.nbPages()).isEqualTo(0);
+    }
+
+    @Test
+    public void test_content_is_read_unchanged() throws IOException {
+        ContentPager pager = new ContentPager(new StringReader("test content"), 5, this::addPage);
+        assertThat(IOUtils.toString(pager)).isEqualTo("test content");
+    }
+
+    @Test
+    public void test_pages_with_last_partial_page() throws IOException {
+        ContentPager pager = new ContentPager(new StringReader("test content"), 5, this::addPage);
+        IOUtils.toString(pager);
+
+        assertThat(pager.nbPages()).isEqualTo(3);
+        assertThat(pages).isEqualTo(asList("test ", "conte", "nt"));
+        assertThat(pageStarts).isEqualTo(asList(0L, 5L, 10L));
+    }
+
+    @Test
+    public void test_pages_with_exact_page_size() throws IOException {
+        ContentPager pager = new ContentPager(new StringReader("abcdef"), 3, this::addPage);
+        IOUtils.toString(pager);
+
+        assertThat(pages).isEqualTo(asList("abc", "def"));
+    }
+
+    @Test
+    public void test_pages_read_char_by_char() throws IOException {
+        ContentPager pager = new ContentPager(new StringReader("abcde"), 2, this::addPage);
+        while (pager.read() != -1) { }
+        pager.read();
+
+        assertThat(pages).isEqualTo(asList("ab", "cd", "e"));
+    }
+
+    private void addPage(int pageIndex, long pageStart, String pageContent) {
+        assertThat(pageIndex).isEqualTo(pages.size());
+        pages.add(pageContent);
+        pageStarts.add(pageStart);
+    }
+}
@@ -0,0 +1,66 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ContentReaderTest {
+    @Test
+    public void test_read_empty_content() throws Exception {
+        ContentReader reader = new ContentReader(new StringReader(""), -1, 10);
+        assertThat(IOUtils.toString(reader)).isEqualTo("");
+        assertThat(reader.length()).isEqualTo(0);
+    }
+
+    @Test
+    public void test_read_trims_content() throws Exception {
+        assertThat(read(" \n\tcontent with  spaces \n", -1)).isEqualTo("content with  spaces");
+    }
+
+    @Test
+    public void test_read_truncates_and_trims_content() throws Exception {
+        ContentReader reader = new ContentReader(new StringReader("this content should be truncated"), 20, 0);
+        assertThat(IOUtils.toString(reader)).isEqualTo("this content should");
+        assertThat(reader.isTruncated()).isTrue();
+        assertThat(reader.length()).isEqualTo(19);
+    }
+
+    @Test
+    public void test_read_truncated_content_consumes_the_whole_source() throws Exception {
+        StringReader source = new StringReader("this content should be truncated" + " and consumed".repeat(10000));
+        ContentReader reader = new ContentReader(source, 20, 0);
+
+        assertThat(IOUtils.toString(reader)).isEqualTo("this content should");
+        assertThat(source.read()).isEqualTo(-1);
+    }
+
+    @Test
+    public void test_read_content_with_trailing_spaces_after_limit_is_not_truncated() throws Exception {
+        ContentReader reader = new ContentReader(new StringReader("  content   "), 7, 0);
+        assertThat(IOUtils.toString(reader)).isEqualTo("content");
+        assertThat(reader.isTruncated()).isFalse();
+    }
+
+    @Test
+    public void test_read_content_larger_than_buffer() throws Exception {
+        String content = "a b ".repeat(10000);
+        assertThat(read(content, -1)).isEqualTo(content.trim());
+        assertThat(read(content, 10001)).isEqualTo(content.trim().substring(0, 10001).trim());
+    }
+
+    @Test
+    public void test_sample() throws Exception {
+        ContentReader reader = new ContentReader(new StringReader("  sample of content"), -1, 6);
+        IOUtils.toString(reader);
+        assertThat(reader.sample()).isEqualTo("sample");
+        assertThat(reader.length()).isEqualTo(17);
+    }
+
+    private String read(String content, int maxLength) throws IOException {
+        return IOUtils.toString(new ContentReader(new StringReader(content), maxLength, 0));
+    }
+}
@@ -0,0 +1,57 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.icij.datashare.test.ElasticsearchRule;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+import static org.elasticsearch.action.support.WriteRequest.RefreshPolicy.IMMEDIATE;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.icij.datashare.test.ElasticsearchRule.TEST_INDEX;
+
+public class DocumentIdFilterTest {
+    @ClassRule
+    public static ElasticsearchRule es = new ElasticsearchRule();
+
+    @Test
+    public void test_empty_filter() {
+        assertThat(new DocumentIdFilter(100).mightContain("id")).isFalse();
+    }
+
+    @Test
+    public void test_put() {
+        DocumentIdFilter filter = new DocumentIdFilter(100);
+        filter.put("id");
+        assertThat(filter.mightContain("id")).isTrue();
+    }
+
+    @Test
+    public void test_warm_with_index_documents() throws Exception {
+        indexDocument("doc1", "Document");
+        indexDocument("doc2", "Document");
+        indexDocument("ne1", "NamedEntity");
+        DocumentIdFilter filter = new DocumentIdFilter(100);
+
+        assertThat(filter.warm(es.client, "type", TEST_INDEX, 2)).isEqualTo(2);
+
+        assertThat(filter.mightContain("doc1")).isTrue();
+        assertThat(filter.mightContain("doc2")).isTrue();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        es.removeAll();
+    }
+
+    private void indexDocument(String id, String type) throws IOException {
+        es.client.index(new IndexRequest(TEST_INDEX).id(id).source(new HashMap<String, Object>() {{
+            put("type", type);
+            put("join", new HashMap<String, String>() {{ put("name", "Document"); }});
+        }}).setRefreshPolicy(IMMEDIATE), RequestOptions.DEFAULT);
+    }
+}
@@ -2,6 +2,7 @@ package org.icij.datashare.text.indexing.elasticsearch;
 
 import org.apache.http.util.EntityUtils;
 import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.Response;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.icij.datashare.PropertiesProvider;
@@ -9,6 +10,8 @@ import org.icij.datashare.test.ElasticsearchRule;
 import org.junit.ClassRule;
 import org.junit.Test;
 
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.HashMap;
 
 import static org.fest.assertions.Assertions.assertThat;
@@ -46,4 +49,28 @@ public class ElasticsearchConfigurationTest {
 
         assertThat(EntityUtils.toString(response.getEntity())).contains("settings");
     }
+
+    @Test
+    public void test_create_client_with_several_nodes_fails_over_unreachable_node() throws Exception {
+        RestHighLevelClient esClient = ElasticsearchConfiguration.createESClient(new PropertiesProvider(new HashMap<String, String>() {{
+            put("elasticsearchAddress", "http://unreachable:9200,http://elasticsearch:9200");
+            put("elasticsearchMaxConnectionsPerRoute", "2");
+        }}));
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(esClient.ping(RequestOptions.DEFAULT)).isTrue();
+        }
+        esClient.close();
+    }
+
+    @Test
+    public void test_parse_addresses() throws Exception {
+        assertThat(ElasticsearchConfiguration.parseAddresses("http://es1:9200, http://es2:9200,")).containsExactly(
+                new URL("http://es1:9200"), new URL("http://es2:9200"));
+    }
+
+    @Test(expected = MalformedURLException.class)
+    public void test_parse_empty_addresses() throws Exception {
+        ElasticsearchConfiguration.parseAddresses(" ,");
+    }
 }
@@ -1,11 +1,17 @@
 package org.icij.datashare.text.indexing.elasticsearch;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.http.ConnectionClosedException;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NStringEntity;
 import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.cluster.storedscripts.DeleteStoredScriptRequest;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
 import org.elasticsearch.script.Script;
 import org.elasticsearch.script.ScriptType;
 import org.icij.datashare.Entity;
@@ -28,12 +34,17 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPInputStream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.toList;
 import static org.elasticsearch.action.support.WriteRequest.RefreshPolicy.IMMEDIATE;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 import static org.fest.assertions.Assertions.assertThat;
 import static org.icij.datashare.test.ElasticsearchRule.TEST_INDEX;
 import static org.icij.datashare.test.ElasticsearchRule.TEST_INDEXES;
@@ -49,6 +60,7 @@ import static org.icij.datashare.text.Project.project;
 import static org.icij.datashare.text.Tag.tag;
 import static org.icij.datashare.text.nlp.Pipeline.Type.*;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 public class ElasticsearchIndexerTest {
@@ -86,6 +98,24 @@ public class ElasticsearchIndexerTest {
         assertThat(es.client.get(new GetRequest(TEST_INDEX, "doc1"), RequestOptions.DEFAULT).getFields().get("_routing").getValues()).isEqualTo(asList(root.getId()));
     }
 
+    @Test
+    public void test_multi_get() throws IOException {
+        Document root = createDoc("root").with("root content").build();
+        Document doc = createDoc("doc").with("doc content").withParentId(root.getId()).withRootId(root.getId()).build();
+        indexer.bulkAdd(TEST_INDEX, asList(root, doc));
+
+        Map<String, Document> docs = indexer.get(TEST_INDEX, new HashMap<String, String>() {{
+            put(root.getId(), root.getId());
+            put(doc.getId(), root.getId());
+            put("unknown", "unknown");
+        }}, "content");
+
+        assertThat(docs.keySet()).containsOnly(root.getId(), doc.getId());
+        assertThat(docs.get(doc.getId()).getRootDocument()).isEqualTo(root.getId());
+        assertThat(docs.get(doc.getId()).getContentLength()).isEqualTo(doc.getContentLength());
+        assertThat(docs.get(doc.getId()).getContent()).isNull();
+    }
+
     @Test
     public void test_bulk_add_named_entities() throws IOException {
         Document doc = createDoc("id").build();
@@ -239,6 +269,105 @@ public class ElasticsearchIndexerTest {
         assertThat(indexer.tag(project(TEST_INDEX), doc.getId(), doc.getId(), tag("tag"))).isTrue();
     }
 
+    @Test
+    public void test_tag_document_after_stored_scripts_have_been_deleted() throws Exception {
+        Document doc = createDoc("id").build();
+        indexer.add(TEST_INDEX, doc);
+        indexer.registerScripts().get();
+        assertThat(indexer.tag(project(TEST_INDEX), doc.getId(), doc.getId(), tag("foo"))).isTrue();
+        es.client.deleteScript(new DeleteStoredScriptRequest(StoredScripts.TAG.id), RequestOptions.DEFAULT);
+
+        assertThat(indexer.tag(project(TEST_INDEX), doc.getId(), doc.getId(), tag("bar"))).isTrue();
+        es.client.deleteScript(new DeleteStoredScriptRequest(StoredScripts.TAG.id), RequestOptions.DEFAULT);
+        assertThat(indexer.tagAsync(project(TEST_INDEX), doc.getId(), doc.getId(), tag("baz")).get()).isTrue();
+
+        assertThat(((Document) indexer.get(TEST_INDEX, doc.getId())).getTags()).containsOnly(tag("foo"), tag("bar"), tag("baz"));
+    }
+
+    @Test
+    public void test_async_requests_are_rejected_when_too_many_are_waiting() {
+        ElasticsearchIndexer limited = new ElasticsearchIndexer(es.client, new PropertiesProvider(new HashMap<>() {{
+            put("indexerMaxInFlightRequests", "1");
+            put("indexerMaxWaitingRequests", "1");
+        }}));
+        List<ActionListener<Boolean>> sent = new ArrayList<>();
+
+        CompletableFuture<Boolean> first = limited.execute("test", sent::add);
+        CompletableFuture<Boolean> second = limited.execute("test", sent::add);
+        CompletableFuture<Boolean> third = limited.execute("test", sent::add);
+
+        assertThat(sent).hasSize(1);
+        assertThat(third.isCompletedExceptionally()).isTrue();
+        sent.get(0).onResponse(true);
+        assertThat(first.join()).isTrue();
+        assertThat(sent).hasSize(2);
+        sent.get(1).onResponse(true);
+        assertThat(second.join()).isTrue();
+    }
+
+    @Test
+    public void test_waiting_requests_failing_when_sent_do_not_recurse() {
+        ElasticsearchIndexer limited = new ElasticsearchIndexer(es.client, new PropertiesProvider(new HashMap<>() {{
+            put("indexerMaxInFlightRequests", "1");
+            put("indexerMaxWaitingRequests", "100000");
+        }}));
+        List<ActionListener<Boolean>> sent = new ArrayList<>();
+        CompletableFuture<Boolean> first = limited.execute("test", sent::add);
+        List<CompletableFuture<Boolean>> failing = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            failing.add(limited.execute("test", listener -> { throw new IllegalStateException("client closed"); }));
+        }
+
+        sent.get(0).onResponse(true);
+
+        assertThat(first.join()).isTrue();
+        assertThat(failing.stream().allMatch(CompletableFuture::isCompletedExceptionally)).isTrue();
+    }
+
+    @Test
+    public void test_group_tag_task_result_is_read_with_the_tasks_api() throws Exception {
+        indexer.add(TEST_INDEX, createDoc("doc1").build());
+        String taskId = indexer.startGroupTag(project(TEST_INDEX), singletonList("doc1"), tag("foo"));
+
+        UpdateByQueryProgress progress;
+        while (!(progress = indexer.getUpdateByQueryProgress(taskId)).completed) {
+            Thread.sleep(50);
+        }
+
+        assertThat(progress.updated).isEqualTo(1);
+        assertThat(indexer.getUpdateByQueryProgress(taskId).completed).isTrue();
+    }
+
+    @Test
+    public void test_async_bulk_add_and_get() throws Exception {
+        assertThat(indexer.bulkAddAsync(TEST_INDEX, asList(createDoc("doc1").build(), createDoc("doc2").build())).get()).isTrue();
+
+        assertThat(indexer.<Document>getAsync(TEST_INDEX, "doc1", "doc1").get()).isNotNull();
+        assertThat(indexer.<Document>getAsync(TEST_INDEX, "unknown", "unknown").get()).isNull();
+        assertThat(indexer.getLatencies().get("bulkAdd").count()).isEqualTo(1);
+        assertThat(indexer.getLatencies().get("get").count()).isEqualTo(2);
+    }
+
+    @Test
+    public void test_async_tag_document() throws Exception {
+        Document doc = createDoc("id").build();
+        indexer.addAsync(TEST_INDEX, doc).get();
+
+        assertThat(indexer.tagAsync(project(TEST_INDEX), doc.getId(), doc.getId(), tag("foo"), tag("bar")).get()).isTrue();
+        assertThat(indexer.tagAsync(project(TEST_INDEX), doc.getId(), doc.getId(), tag("foo")).get()).isFalse();
+        assertThat(((Document) indexer.get(TEST_INDEX, doc.getId())).getTags()).containsOnly(tag("foo"), tag("bar"));
+    }
+
+    @Test
+    public void test_async_tag_unknown_document() throws Exception {
+        try {
+            indexer.tagAsync(project(TEST_INDEX), "unknown", "routing", tag("foo")).get();
+            fail("ExecutionException should have been thrown");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(ElasticsearchStatusException.class);
+        }
+    }
+
     @Test(expected = ElasticsearchStatusException.class)
     public void test_tag_unknown_document() throws IOException {
         indexer.tag(project(TEST_INDEX), "unknown", "routing", tag("foo"), tag("bar"));
@@ -410,6 +539,29 @@ public class ElasticsearchIndexerTest {
         assertThat(indexer.executeRaw("POST", TEST_INDEX + "/_search", "{\"query\":{\"match\":{\"content\":\"foo\"}}}")).doesNotContain("my content");
     }
 
+    @Test
+    public void test_execute_raw_streamed_search() throws Exception {
+        Document doc = createDoc("id").with("my content").with(OPENNLP).build();
+        indexer.add(TEST_INDEX, doc);
+
+        Response response = indexer.executeRaw("POST", TEST_INDEX + "/_search",
+                new NStringEntity("{\"query\":{\"match_all\":{}}}", ContentType.APPLICATION_JSON), false);
+
+        assertThat(response.getHeader("Content-Encoding")).isNull();
+        assertThat(IOUtils.toString(response.getEntity().getContent(), UTF_8)).contains("my content");
+    }
+
+    @Test
+    public void test_execute_raw_streamed_search_with_gzip() throws Exception {
+        Document doc = createDoc("id").with("my content").with(OPENNLP).build();
+        indexer.add(TEST_INDEX, doc);
+
+        Response response = indexer.executeRaw("GET", TEST_INDEX + "/_search", null, true);
+
+        assertThat(response.getHeader("Content-Encoding")).isEqualTo("gzip");
+        assertThat(IOUtils.toString(new GZIPInputStream(response.getEntity().getContent()), UTF_8)).contains("my content");
+    }
+
     @Test
     public void test_execute_raw_with_head() throws Exception {
         assertThat(indexer.executeRaw("HEAD", TEST_INDEX, "")).isNull();
@@ -576,6 +728,49 @@ public class ElasticsearchIndexerTest {
         assertThat(actual.targetLanguage).isEqualTo("FRENCH");
         assertArrayEquals(actual.offsets, new int[]{3,11,23,31});
     }
+    @Test(expected = IllegalArgumentException.class)
+    public void test_search_occurrences_of_document_not_found() throws Exception {
+        indexer.searchTextOccurrences(TEST_INDEX, "id", "cont", null);
+    }
+    @Test(expected = IllegalArgumentException.class)
+    public void test_search_occurrences_of_translation_not_found() throws Exception {
+        Document doc = createDoc("id").with("this content contains content containing john doe").build();
+        indexer.add(TEST_INDEX, doc);
+        indexer.searchTextOccurrences(TEST_INDEX, "id", "cont", "FRENCH");
+    }
+    @Test
+    public void test_search_occurrences_of_query_in_original_content() throws Exception {
+        Document doc = createDoc("id").with("this content contains content containing john doe").build();
+        indexer.add(TEST_INDEX, doc);
+
+        SearchedText actual = indexer.searchTextOccurrences(TEST_INDEX, "id", "cont", "original");
+
+        assertThat(actual.targetLanguage).isEqualTo("original");
+        assertArrayEquals(actual.offsets, new int[]{5,13,22,30});
+    }
+    @Test
+    public void test_search_occurrences_after_document_written_by_another_client() throws Exception {
+        Document doc = createDoc("id").with("this content contains content containing john doe").build();
+        indexer.add(TEST_INDEX, doc);
+        indexer.searchTextOccurrences(TEST_INDEX, "id", "cont", null);
+        indexer.searchTextOccurrences(TEST_INDEX, "id", "john", null);
+
+        es.client.update(new UpdateRequest(TEST_INDEX, "id").doc(jsonBuilder().startObject().field("content", "john").endObject())
+                .setRefreshPolicy(IMMEDIATE), RequestOptions.DEFAULT);
+
+        assertThat(indexer.searchTextOccurrences(TEST_INDEX, "id", "john", null).offsets).isEqualTo(new int[] {0});
+        assertThat(indexer.searchTextOccurrences(TEST_INDEX, "id", "cont", null).offsets).isEqualTo(new int[] {});
+    }
+    @Test
+    public void test_search_occurrences_after_document_update() throws Exception {
+        Document doc = createDoc("id").with("this content contains content containing john doe").build();
+        indexer.add(TEST_INDEX, doc);
+        indexer.searchTextOccurrences(TEST_INDEX, "id", "john", null);
+
+        indexer.update(TEST_INDEX, createDoc("id").with("john").build());
+
+        assertThat(indexer.searchTextOccurrences(TEST_INDEX, "id", "john", null).offsets).isEqualTo(new int[] {0});
+    }
     @Test
     public void test_retrieve_script_from_resource_file() throws IOException {
         String filename= "extractedText.painless.java";
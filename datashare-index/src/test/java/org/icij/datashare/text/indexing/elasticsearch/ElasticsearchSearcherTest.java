@@ -0,0 +1,138 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.icij.datashare.Entity;
+import org.icij.datashare.PropertiesProvider;
+import org.icij.datashare.test.ElasticsearchRule;
+import org.icij.datashare.text.Document;
+import org.icij.datashare.text.NamedEntity;
+import org.icij.datashare.text.indexing.Indexer;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
+import static org.elasticsearch.action.support.WriteRequest.RefreshPolicy.IMMEDIATE;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.icij.datashare.test.ElasticsearchRule.TEST_INDEX;
+import static org.icij.datashare.text.DocumentBuilder.createDoc;
+import static org.icij.datashare.text.Language.ENGLISH;
+import static org.icij.datashare.text.NamedEntity.Category.PERSON;
+import static org.icij.datashare.text.NamedEntity.create;
+import static org.icij.datashare.text.Project.project;
+import static org.icij.datashare.text.Tag.tag;
+import static org.icij.datashare.text.nlp.Pipeline.Type.CORENLP;
+
+public class ElasticsearchSearcherTest {
+    @ClassRule
+    public static ElasticsearchRule es = new ElasticsearchRule();
+    private final ElasticsearchIndexer indexer = new ElasticsearchIndexer(es.client, new PropertiesProvider()).withRefresh(IMMEDIATE);
+
+    @After
+    public void tearDown() throws Exception {
+        es.removeAll();
+    }
+
+    @Test
+    public void test_hit_to_document_is_the_same_as_with_source_map() throws IOException {
+        Document root = createDoc("root").build();
+        Document doc = createDoc("doc").with("content with ünicode").with(ENGLISH).withParentId(root.getId()).withRootId(root.getId()).build();
+        indexer.add(TEST_INDEX, doc);
+        indexer.tag(project(TEST_INDEX), doc.getId(), root.getId(), tag("foo"));
+
+        SearchHit hit = searchOne("Document");
+        Document streamed = ElasticsearchSearcher.hitToObject(hit, Document.class);
+        Document fromMap = ElasticsearchSearcher.hitToObjectFromMap(hit, Document.class);
+
+        assertThat(streamed.getId()).isEqualTo(fromMap.getId()).isEqualTo(doc.getId());
+        assertThat(streamed.getProject()).isEqualTo(fromMap.getProject());
+        assertThat(streamed.getContent()).isEqualTo(fromMap.getContent()).isEqualTo("content with ünicode");
+        assertThat(streamed.getLanguage()).isEqualTo(fromMap.getLanguage());
+        assertThat(streamed.getPath()).isEqualTo(fromMap.getPath());
+        assertThat(streamed.getRootDocument()).isEqualTo(fromMap.getRootDocument()).isEqualTo(root.getId());
+        assertThat(streamed.getTags()).isEqualTo(fromMap.getTags()).containsOnly(tag("foo"));
+    }
+
+    @Test
+    public void test_hit_to_named_entity_is_the_same_as_with_source_map() throws IOException {
+        Document doc = createDoc("doc").build();
+        indexer.add(TEST_INDEX, doc);
+        indexer.bulkAdd(TEST_INDEX, CORENLP, asList(create(PERSON, "John Doe", asList(12L, 42L), doc.getId(), doc.getId(), CORENLP, ENGLISH)), doc);
+
+        SearchHit hit = searchOne("NamedEntity");
+        NamedEntity streamed = ElasticsearchSearcher.hitToObject(hit, NamedEntity.class);
+        NamedEntity fromMap = ElasticsearchSearcher.hitToObjectFromMap(hit, NamedEntity.class);
+
+        assertThat(streamed.getId()).isEqualTo(fromMap.getId());
+        assertThat(streamed.getMention()).isEqualTo(fromMap.getMention()).isEqualTo("John Doe");
+        assertThat(streamed.getCategory()).isEqualTo(fromMap.getCategory());
+        assertThat(streamed.getOffsets()).isEqualTo(fromMap.getOffsets());
+        assertThat(streamed.getDocumentId()).isEqualTo(fromMap.getDocumentId());
+    }
+
+    @Test
+    public void test_scroll_with_point_in_time() throws IOException {
+        indexer.bulkAdd(TEST_INDEX, range(0, 12).mapToObj(i -> createDoc("doc" + i).build()).collect(toList()));
+
+        Indexer.Searcher searcher = indexer.search(singletonList(TEST_INDEX), Document.class, true).limit(5);
+        assertThat(((ElasticsearchSearcher) searcher).isPointInTime()).isTrue();
+        List<String> ids = scrollIds(searcher, 0, 0);
+
+        assertThat(ids).hasSize(12);
+        assertThat(ids).containsOnly(range(0, 12).mapToObj(i -> "doc" + i).toArray());
+        assertThat(searcher.totalHits()).isEqualTo(12);
+        assertThat(searcher.scroll().count()).isEqualTo(0);
+        searcher.clearScroll();
+    }
+
+    @Test
+    public void test_scroll_with_point_in_time_documents_with_the_same_score() throws IOException {
+        indexer.bulkAdd(TEST_INDEX, range(0, 12).mapToObj(i -> createDoc("doc" + i).with("same content").build()).collect(toList()));
+
+        Indexer.Searcher searcher = indexer.search(singletonList(TEST_INDEX), Document.class, true).with("same").limit(5);
+        List<String> ids = scrollIds(searcher, 0, 0);
+
+        assertThat(ids).hasSize(12);
+        assertThat(ids).containsOnly(range(0, 12).mapToObj(i -> "doc" + i).toArray());
+        searcher.clearScroll();
+    }
+
+    @Test
+    public void test_scroll_slices_with_point_in_time() throws IOException {
+        indexer.bulkAdd(TEST_INDEX, range(0, 12).mapToObj(i -> createDoc("doc" + i).build()).collect(toList()));
+
+        List<String> ids = new ArrayList<>();
+        ids.addAll(scrollIds(indexer.search(singletonList(TEST_INDEX), Document.class, true).limit(2), 0, 2));
+        ids.addAll(scrollIds(indexer.search(singletonList(TEST_INDEX), Document.class, true).limit(2), 1, 2));
+
+        assertThat(ids).hasSize(12);
+        assertThat(ids).containsOnly(range(0, 12).mapToObj(i -> "doc" + i).toArray());
+    }
+
+    private List<String> scrollIds(Indexer.Searcher searcher, int numSlice, int nbSlices) throws IOException {
+        List<String> ids = new ArrayList<>();
+        List<? extends Entity> page;
+        while (!(page = searcher.scroll(numSlice, nbSlices).collect(toList())).isEmpty()) {
+            page.forEach(doc -> ids.add(doc.getId()));
+        }
+        return ids;
+    }
+
+    private SearchHit searchOne(String type) throws IOException {
+        SearchHit[] hits = es.client.search(new SearchRequest(TEST_INDEX).source(new SearchSourceBuilder()
+                .query(termQuery("type", type))), RequestOptions.DEFAULT).getHits().getHits();
+        assertThat(hits).hasSize(1);
+        return hits[0];
+    }
+}
@@ -3,11 +3,15 @@ package org.icij.datashare.text.indexing.elasticsearch;
 import org.apache.tika.metadata.DublinCore;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.ParsingReader;
+import org.elasticsearch.action.admin.cluster.settings.ClusterUpdateSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.reindex.DeleteByQueryRequest;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
@@ -22,6 +26,7 @@ import org.icij.datashare.text.Document;
 import org.icij.datashare.text.Hasher;
 import org.icij.datashare.text.Language;
 import org.icij.datashare.text.Project;
+import org.icij.datashare.text.indexing.ExtractedText;
 import org.icij.extract.document.DocumentFactory;
 import org.icij.extract.document.PathIdentifier;
 import org.icij.extract.document.TikaDocument;
@@ -41,6 +46,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 import static java.nio.file.Paths.get;
 import static org.apache.tika.metadata.HttpHeaders.CONTENT_TYPE;
@@ -51,8 +57,10 @@ import static org.icij.datashare.test.ElasticsearchRule.TEST_INDEX;
 import static org.icij.datashare.text.DocumentBuilder.createDoc;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -84,6 +92,157 @@ public class ElasticsearchSpewerTest {
         assertThat(argument.getValue().content).includes(entry(Field.DOC_ID, document.getId()));
     }
 
+    @Test
+    public void test_bulk_write() throws Exception {
+        ElasticsearchSpewer bulkSpewer = new ElasticsearchSpewer(es.client,
+                text -> Language.ENGLISH, new FieldNames(), publisher, new PropertiesProvider(new HashMap<>() {{
+            put("bulkIndex", "true");
+            put("bulkIndexActions", "2");
+        }})).withRefresh(IMMEDIATE).withIndex("test-datashare");
+        final TikaDocument document = new DocumentFactory().withIdentifier(new PathIdentifier()).create(get("bulk-file.txt"));
+        document.setReader(new ParsingReader(new ByteArrayInputStream("test".getBytes())));
+
+        bulkSpewer.write(document);
+        assertThat(bulkSpewer.awaitBulkFlush(10, TimeUnit.SECONDS)).isTrue();
+
+        GetResponse documentFields = es.client.get(new GetRequest(TEST_INDEX, document.getId()), RequestOptions.DEFAULT);
+        assertThat(documentFields.isExists()).isTrue();
+        ArgumentCaptor<Message> argument = ArgumentCaptor.forClass(Message.class);
+        verify(publisher).publish(eq(Channel.NLP), argument.capture());
+        assertThat(argument.getValue().content).includes(entry(Field.DOC_ID, document.getId()), entry(Field.R_ID, document.getId()));
+    }
+
+    @Test
+    public void test_bulk_write_throws_the_failure_of_a_whole_bulk() throws Exception {
+        ElasticsearchSpewer bulkSpewer = new ElasticsearchSpewer(es.client,
+                text -> Language.ENGLISH, new FieldNames(), publisher, new PropertiesProvider(new HashMap<>() {{
+            put("bulkIndex", "true");
+        }})).withRefresh(IMMEDIATE).withIndex(TEST_INDEX);
+        final TikaDocument document = new DocumentFactory().withIdentifier(new PathIdentifier()).create(get("bulk-failed-file.txt"));
+        document.setReader(new ParsingReader(new ByteArrayInputStream("test".getBytes())));
+
+        // a global write block makes elasticsearch reject the whole bulk request
+        es.client.cluster().putSettings(new ClusterUpdateSettingsRequest().transientSettings(
+                Settings.builder().put("cluster.blocks.read_only", true)), RequestOptions.DEFAULT);
+        try {
+            bulkSpewer.write(document);
+            bulkSpewer.awaitBulkFlush(10, TimeUnit.SECONDS);
+            fail("the bulk failure should be thrown");
+        } catch (IOException e) {
+            assertThat(e.getMessage()).contains("1 document(s) not indexed");
+        } finally {
+            es.client.cluster().putSettings(new ClusterUpdateSettingsRequest().transientSettings(
+                    Settings.builder().putNull("cluster.blocks.read_only")), RequestOptions.DEFAULT);
+        }
+        verify(publisher, never()).publish(eq(Channel.NLP), any(Message.class));
+        assertThat(bulkSpewer.awaitBulkFlush(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void test_write_with_content_pages() throws Exception {
+        ElasticsearchSpewer pagingSpewer = new ElasticsearchSpewer(es.client,
+                text -> Language.ENGLISH, new FieldNames(), publisher, new PropertiesProvider(new HashMap<>() {{
+            put("contentPageSize", "3");
+        }})).withRefresh(IMMEDIATE).withIndex(TEST_INDEX);
+        final TikaDocument document = new DocumentFactory().withIdentifier(new PathIdentifier()).create(get("paged-file.txt"));
+        document.setReader(new ParsingReader(new ByteArrayInputStream("test content".getBytes())));
+
+        pagingSpewer.write(document);
+
+        GetResponse documentFields = es.client.get(new GetRequest(TEST_INDEX, document.getId()), RequestOptions.DEFAULT);
+        assertThat(documentFields.getSourceAsMap()).includes(entry("content", "test content"), entry("contentPageSize", 3));
+        GetResponse lastPage = es.client.get(new GetRequest(TEST_INDEX, document.getId() + "-page-3").routing(document.getId()), RequestOptions.DEFAULT);
+        assertThat(lastPage.getSourceAsMap()).includes(entry("type", "ContentPage"), entry("pageStart", 9), entry("pageContent", "ent"));
+
+        ElasticsearchIndexer indexer = new ElasticsearchIndexer(es.client, new PropertiesProvider(new HashMap<>() {{
+            put("contentPageSize", "3");
+        }}));
+        ExtractedText extractedText = indexer.getExtractedText(TEST_INDEX, document.getId(), null, 2, 6, null);
+        assertThat(extractedText.content).isEqualTo("st con");
+        assertThat(extractedText.maxOffset).isEqualTo(12);
+        assertThat(indexer.getExtractedText(TEST_INDEX, document.getId(), null, 0, 12, null).content).isEqualTo("test content");
+        assertThat(indexer.getExtractedText(TEST_INDEX, document.getId(), null, 12, 0, null).content).isEqualTo("");
+    }
+
+    @Test(expected = StringIndexOutOfBoundsException.class)
+    public void test_read_content_pages_out_of_range() throws Exception {
+        ElasticsearchSpewer pagingSpewer = new ElasticsearchSpewer(es.client,
+                text -> Language.ENGLISH, new FieldNames(), publisher, new PropertiesProvider(new HashMap<>() {{
+            put("contentPageSize", "3");
+        }})).withRefresh(IMMEDIATE).withIndex(TEST_INDEX);
+        final TikaDocument document = new DocumentFactory().withIdentifier(new PathIdentifier()).create(get("paged-file.txt"));
+        document.setReader(new ParsingReader(new ByteArrayInputStream("test content".getBytes())));
+        pagingSpewer.write(document);
+
+        new ElasticsearchIndexer(es.client, new PropertiesProvider(new HashMap<>() {{
+            put("contentPageSize", "3");
+        }})).getExtractedText(TEST_INDEX, document.getId(), null, 10, 3, null);
+    }
+
+    @Test
+    public void test_write_with_fewer_content_pages_deletes_stale_pages() throws Exception {
+        PropertiesProvider pagingProperties = new PropertiesProvider(new HashMap<>() {{
+            put("contentPageSize", "6");
+        }});
+        TikaDocument root = new DocumentFactory().withIdentifier(new PathIdentifier()).create(get("paged-root.txt"));
+        new ElasticsearchSpewer(es.client, text -> Language.ENGLISH, new FieldNames(), publisher, new PropertiesProvider(new HashMap<>() {{
+            put("contentPageSize", "3");
+        }})).withRefresh(IMMEDIATE).withIndex(TEST_INDEX).writeDocument(pagedDocument("test content"), root, root, 1);
+
+        new ElasticsearchSpewer(es.client, text -> Language.ENGLISH, new FieldNames(), publisher, pagingProperties)
+                .withRefresh(IMMEDIATE).withIndex(TEST_INDEX).writeDocument(pagedDocument("test content"), root, root, 1);
+
+        String documentId = pagedDocument("").getId();
+        assertThat(es.client.exists(new GetRequest(TEST_INDEX, documentId + "-page-1").routing(root.getId()), RequestOptions.DEFAULT)).isTrue();
+        assertThat(es.client.exists(new GetRequest(TEST_INDEX, documentId + "-page-2").routing(root.getId()), RequestOptions.DEFAULT)).isFalse();
+        assertThat(new ElasticsearchIndexer(es.client, pagingProperties).getExtractedText(TEST_INDEX, documentId, root.getId(), 0, 12, null).content)
+                .isEqualTo("test content");
+    }
+
+    @Test
+    public void test_write_new_document_keeps_the_pages_of_another_indexing() throws Exception {
+        new ElasticsearchSpewer(es.client, text -> Language.ENGLISH, new FieldNames(), publisher, new PropertiesProvider(new HashMap<>() {{
+            put("contentPageSize", "3");
+        }})).withRefresh(IMMEDIATE).withIndex(TEST_INDEX).write(pagedDocument("test content"));
+        String documentId = pagedDocument("").getId();
+        es.client.delete(new DeleteRequest(TEST_INDEX, documentId).setRefreshPolicy(IMMEDIATE), RequestOptions.DEFAULT);
+
+        new ElasticsearchSpewer(es.client, text -> Language.ENGLISH, new FieldNames(), publisher, new PropertiesProvider(new HashMap<>() {{
+            put("contentPageSize", "6");
+        }})).withRefresh(IMMEDIATE).withIndex(TEST_INDEX).write(pagedDocument("test content"));
+
+        // the document did not exist: no delete by query is made for the pages of a new document
+        assertThat(es.client.exists(new GetRequest(TEST_INDEX, documentId + "-page-2").routing(documentId), RequestOptions.DEFAULT)).isTrue();
+    }
+
+    private TikaDocument pagedDocument(String content) throws IOException {
+        TikaDocument document = new DocumentFactory().withIdentifier(new PathIdentifier()).create(get("paged-file.txt"));
+        document.setReader(new ParsingReader(new ByteArrayInputStream(content.getBytes())));
+        return document;
+    }
+
+    @Test
+    public void test_bulk_ingest_restores_index_settings() throws Exception {
+        ElasticsearchSpewer bulkIngestSpewer = new ElasticsearchSpewer(es.client,
+                text -> Language.ENGLISH, new FieldNames(), publisher, new PropertiesProvider(new HashMap<>() {{
+            put("bulkIngest", "true");
+        }})).withIndex(TEST_INDEX);
+        Settings before = getIndexSettings();
+
+        Settings originalSettings = bulkIngestSpewer.startBulkIngest();
+        assertThat(getIndexSettings().get("index.refresh_interval")).isEqualTo("-1");
+        assertThat(getIndexSettings().get("index.number_of_replicas")).isEqualTo("0");
+
+        bulkIngestSpewer.endBulkIngest(originalSettings);
+        assertThat(getIndexSettings().get("index.refresh_interval")).isEqualTo(before.get("index.refresh_interval"));
+        assertThat(getIndexSettings().get("index.number_of_replicas")).isEqualTo(before.get("index.number_of_replicas"));
+    }
+
+    @Test
+    public void test_bulk_ingest_disabled() throws Exception {
+        assertThat(spewer.startBulkIngest()).isNull();
+    }
+
     @Test
     public void test_write_with_correct_iso1_language() throws Exception {
         Path path = get(Objects.requireNonNull(getClass().getResource("/docs/a/b/c/zho.txt")).getPath());
@@ -367,6 +526,57 @@ public class ElasticsearchSpewerTest {
         assertThat(actualDocument2.getId().length()).isEqualTo(Hasher.SHA_256.digestLength);
     }
 
+    @Test
+    public void test_duplicate_file_with_document_id_filter() throws Exception {
+        HashMap<String, String> digestProperties = new HashMap<>() {{
+            put("digestAlgorithm", "SHA-256");
+            put("digestProjectName", "project");
+            put("duplicateFilterExpectedDocuments", "1000");
+        }};
+        ElasticsearchSpewer filteredSpewer = new ElasticsearchSpewer(es.client,
+                text -> Language.ENGLISH, new FieldNames(), publisher, new PropertiesProvider(digestProperties)).withRefresh(IMMEDIATE).withIndex("test-datashare");
+        Options<String> from = Options.from(digestProperties);
+        Extractor extractor = new Extractor(new DocumentFactory().configure(from)).configure(from);
+
+        final TikaDocument document = extractor.extract(get(Objects.requireNonNull(getClass().getResource("/docs/doc.txt")).getPath()));
+        final TikaDocument document2 = extractor.extract(get(Objects.requireNonNull(getClass().getResource("/docs/doc-duplicate.txt")).getPath()));
+
+        filteredSpewer.write(document);
+        filteredSpewer.write(document2);
+
+        GetResponse actualDocument2 = es.client.get(new GetRequest(TEST_INDEX, Hasher.SHA_256.hash(document2.getPath())), RequestOptions.DEFAULT);
+        assertThat(actualDocument2.isExists()).isTrue();
+        assertThat(actualDocument2.getSourceAsMap()).includes(entry("type", "Duplicate"));
+    }
+
+    @Test
+    public void test_duplicate_file_in_the_same_bulk() throws Exception {
+        HashMap<String, String> bulkProperties = new HashMap<>() {{
+            put("digestAlgorithm", "SHA-256");
+            put("digestProjectName", "project");
+            put("bulkIndex", "true");
+            put("duplicateFilterExpectedDocuments", "1000");
+        }};
+        ElasticsearchSpewer bulkSpewer = new ElasticsearchSpewer(es.client,
+                text -> Language.ENGLISH, new FieldNames(), publisher, new PropertiesProvider(bulkProperties)).withRefresh(IMMEDIATE).withIndex("test-datashare");
+        Options<String> from = Options.from(bulkProperties);
+        Extractor extractor = new Extractor(new DocumentFactory().configure(from)).configure(from);
+        bulkSpewer.startBulkIngest();
+
+        final TikaDocument document = extractor.extract(get(Objects.requireNonNull(getClass().getResource("/docs/doc.txt")).getPath()));
+        final TikaDocument document2 = extractor.extract(get(Objects.requireNonNull(getClass().getResource("/docs/doc-duplicate.txt")).getPath()));
+
+        bulkSpewer.write(document);
+        bulkSpewer.write(document2);
+        assertThat(bulkSpewer.awaitBulkFlush(10, TimeUnit.SECONDS)).isTrue();
+
+        GetResponse actualDocument = es.client.get(new GetRequest(TEST_INDEX, document.getId()), RequestOptions.DEFAULT);
+        GetResponse actualDocument2 = es.client.get(new GetRequest(TEST_INDEX, Hasher.SHA_256.hash(document2.getPath())), RequestOptions.DEFAULT);
+        assertThat(actualDocument.getSourceAsMap()).includes(entry("type", "Document"));
+        assertThat(actualDocument2.isExists()).isTrue();
+        assertThat(actualDocument2.getSourceAsMap()).includes(entry("type", "Duplicate"));
+    }
+
     @Test
     public void test_truncated_content() throws Exception {
         ElasticsearchSpewer limitedContentSpewer = new ElasticsearchSpewer(es.client,
@@ -383,6 +593,23 @@ public class ElasticsearchSpewerTest {
         assertThat(documentFields.getSourceAsMap()).includes(entry("content", "this content should"));
     }
 
+    @Test
+    public void test_truncated_content_still_indexes_embedded_documents() throws Exception {
+        ElasticsearchSpewer limitedContentSpewer = new ElasticsearchSpewer(es.client,
+                text -> Language.ENGLISH, new FieldNames(), publisher, new PropertiesProvider(new HashMap<>() {{
+            put("maxContentLength", "20");
+        }})).withRefresh(IMMEDIATE).withIndex("test-datashare");
+        Path path = get(Objects.requireNonNull(getClass().getResource("/docs/embedded_doc.eml")).getPath());
+        final TikaDocument document = new Extractor().extract(path);
+
+        limitedContentSpewer.write(document);
+
+        SearchResponse response = es.client.search(new SearchRequest(TEST_INDEX).source(new SearchSourceBuilder()
+                .query(QueryBuilders.termQuery("parentDocument", document.getId()))), RequestOptions.DEFAULT);
+        assertThat(response.getHits().getTotalHits().value).isEqualTo(1);
+        verify(publisher, times(2)).publish(eq(Channel.NLP), any(Message.class));
+    }
+
     @Test
     public void test_truncated_content_if_document_is_smaller_than_limit() throws Exception {
         ElasticsearchSpewer limitedContentSpewer = new ElasticsearchSpewer(es.client,
@@ -425,4 +652,9 @@ public class ElasticsearchSpewerTest {
         }
         return map;
     }
+
+    private Settings getIndexSettings() throws IOException {
+        return es.client.indices().getSettings(new GetSettingsRequest().indices(TEST_INDEX), RequestOptions.DEFAULT)
+                .getIndexToSettings().get(TEST_INDEX);
+    }
 }
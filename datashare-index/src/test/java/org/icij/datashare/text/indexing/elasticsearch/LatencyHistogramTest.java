@@ -0,0 +1,41 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LatencyHistogramTest {
+    @Test
+    public void test_empty_histogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.count()).isEqualTo(0);
+        assertThat(histogram.meanMillis()).isEqualTo(0.0);
+        assertThat(histogram.percentileMillis(99)).isEqualTo(0.0);
+    }
+
+    @Test
+    public void test_bucket() {
+        assertThat(LatencyHistogram.bucket(0)).isEqualTo(0);
+        assertThat(LatencyHistogram.bucket(1)).isEqualTo(1);
+        assertThat(LatencyHistogram.bucket(3)).isEqualTo(2);
+        assertThat(LatencyHistogram.bucket(4)).isEqualTo(3);
+        assertThat(LatencyHistogram.bucket(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.NB_BUCKETS - 1);
+    }
+
+    @Test
+    public void test_record() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(MICROSECONDS.toNanos(1000));
+        }
+        histogram.record(MILLISECONDS.toNanos(100));
+
+        assertThat(histogram.count()).isEqualTo(100);
+        assertThat(histogram.maxMillis()).isEqualTo(100.0);
+        assertThat(histogram.meanMillis()).isEqualTo(1.99);
+        assertThat(histogram.percentileMillis(50)).isEqualTo(1.023); // upper bound of [512, 1023]µs
+        assertThat(histogram.percentileMillis(100)).isEqualTo(100.0);
+    }
+}
@@ -0,0 +1,163 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import org.elasticsearch.action.index.IndexRequest;
+import org.icij.datashare.PropertiesProvider;
+import org.icij.datashare.test.ElasticsearchRule;
+import org.icij.datashare.text.Document;
+import org.icij.datashare.text.Language;
+import org.icij.datashare.text.NamedEntity;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.elasticsearch.action.support.WriteRequest.RefreshPolicy.IMMEDIATE;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.icij.datashare.test.ElasticsearchRule.TEST_INDEX;
+import static org.icij.datashare.text.Document.Status.DONE;
+import static org.icij.datashare.text.Document.Status.INDEXED;
+import static org.icij.datashare.text.DocumentBuilder.createDoc;
+import static org.icij.datashare.text.NamedEntity.Category.ORGANIZATION;
+import static org.icij.datashare.text.NamedEntity.Category.PERSON;
+import static org.icij.datashare.text.NamedEntity.create;
+import static org.icij.datashare.text.nlp.Pipeline.Type.CORENLP;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class NamedEntityBulkBufferTest {
+    @ClassRule
+    public static ElasticsearchRule es = new ElasticsearchRule();
+    private final ElasticsearchIndexer indexer = new ElasticsearchIndexer(es.client, new PropertiesProvider()).withRefresh(IMMEDIATE);
+
+    @After
+    public void tearDown() throws Exception {
+        es.removeAll();
+    }
+
+    @Test
+    public void test_scheduled_flush_goes_on_after_a_failure() throws Exception {
+        ElasticsearchIndexer failingIndexer = mock(ElasticsearchIndexer.class); // null client: sending a bulk throws
+        when(failingIndexer.createNamedEntityRequests(any(), any(), any())).thenReturn(singletonList(new IndexRequest(TEST_INDEX)));
+        Document doc = createDoc("doc").build();
+
+        try (NamedEntityBulkBuffer buffer = new NamedEntityBulkBuffer(failingIndexer, 1000, 5 * 1024 * 1024, 10, 2)) {
+            CompletableFuture<Boolean> first = buffer.addChunk(TEST_INDEX, emptyList(), doc);
+            assertThat(waitFailure(first)).isInstanceOf(NullPointerException.class);
+
+            CompletableFuture<Boolean> second = buffer.addChunk(TEST_INDEX, emptyList(), doc);
+            assertThat(waitFailure(second)).isInstanceOf(NullPointerException.class);
+        }
+    }
+
+    @Test
+    public void test_named_entities_of_several_documents_are_written_on_flush() throws Exception {
+        Document doc1 = createDoc("doc1").with(INDEXED).build();
+        Document doc2 = createDoc("doc2").with(INDEXED).build();
+        indexer.add(TEST_INDEX, doc1);
+        indexer.add(TEST_INDEX, doc2);
+        NamedEntity ne1 = create(PERSON, "John Doe", asList(12L), doc1.getId(), doc1.getId(), CORENLP, Language.FRENCH);
+        NamedEntity ne2 = create(ORGANIZATION, "AAA", asList(123L), doc2.getId(), doc2.getId(), CORENLP, Language.FRENCH);
+
+        try (NamedEntityBulkBuffer buffer = new NamedEntityBulkBuffer(indexer, 1000, 5 * 1024 * 1024, 60000, 2)) {
+            CompletableFuture<Boolean> written1 = buffer.add(TEST_INDEX, CORENLP, asList(ne1), doc1);
+            CompletableFuture<Boolean> written2 = buffer.add(TEST_INDEX, CORENLP, asList(ne2), doc2);
+            assertThat(((Document) indexer.get(TEST_INDEX, doc1.getId())).getStatus()).isEqualTo(INDEXED);
+
+            buffer.flush();
+
+            assertThat(written1.get()).isTrue();
+            assertThat(written2.get()).isTrue();
+        }
+        assertThat(((Document) indexer.get(TEST_INDEX, doc1.getId())).getStatus()).isEqualTo(DONE);
+        assertThat(((Document) indexer.get(TEST_INDEX, doc2.getId())).getNerTags()).containsOnly(CORENLP);
+        assertThat((NamedEntity) indexer.get(TEST_INDEX, ne1.getId(), doc1.getId())).isNotNull();
+        assertThat((NamedEntity) indexer.get(TEST_INDEX, ne2.getId(), doc2.getId())).isNotNull();
+    }
+
+    @Test
+    public void test_named_entities_are_written_when_buffer_is_full() throws Exception {
+        Document doc = createDoc("doc").with(INDEXED).build();
+        indexer.add(TEST_INDEX, doc);
+        NamedEntity ne1 = create(PERSON, "John Doe", asList(12L), doc.getId(), doc.getId(), CORENLP, Language.FRENCH);
+        NamedEntity ne2 = create(ORGANIZATION, "AAA", asList(123L), doc.getId(), doc.getId(), CORENLP, Language.FRENCH);
+
+        try (NamedEntityBulkBuffer buffer = new NamedEntityBulkBuffer(indexer, 4, 5 * 1024 * 1024, 60000, 2)) {
+            assertThat(buffer.add(TEST_INDEX, CORENLP, asList(ne1, ne2), doc).get()).isTrue();
+        }
+        assertThat(((Document) indexer.get(TEST_INDEX, doc.getId())).getStatus()).isEqualTo(DONE);
+    }
+
+    @Test
+    public void test_document_without_named_entities() throws Exception {
+        Document doc = createDoc("doc").with(INDEXED).build();
+        indexer.add(TEST_INDEX, doc);
+
+        try (NamedEntityBulkBuffer buffer = new NamedEntityBulkBuffer(indexer, 1000, 5 * 1024 * 1024, 60000, 2)) {
+            CompletableFuture<Boolean> written = buffer.add(TEST_INDEX, CORENLP, emptyList(), doc);
+            buffer.flush();
+            assertThat(written.get()).isTrue();
+        }
+        assertThat(((Document) indexer.get(TEST_INDEX, doc.getId())).getStatus()).isEqualTo(DONE);
+    }
+
+    @Test
+    public void test_document_with_chunks_is_done_after_last_chunk() throws Exception {
+        Document doc = createDoc("doc").with(INDEXED).build();
+        indexer.add(TEST_INDEX, doc);
+        NamedEntity ne1 = create(PERSON, "John Doe", asList(12L), doc.getId(), doc.getId(), CORENLP, Language.FRENCH);
+        NamedEntity ne2 = create(ORGANIZATION, "AAA", asList(123L), doc.getId(), doc.getId(), CORENLP, Language.FRENCH);
+
+        try (NamedEntityBulkBuffer buffer = new NamedEntityBulkBuffer(indexer, 1000, 5 * 1024 * 1024, 60000, 2)) {
+            CompletableFuture<Boolean> chunkWritten = buffer.addChunk(TEST_INDEX, asList(ne1), doc);
+            buffer.flush();
+            assertThat(chunkWritten.get()).isTrue();
+            assertThat(((Document) indexer.get(TEST_INDEX, doc.getId())).getStatus()).isEqualTo(INDEXED);
+
+            CompletableFuture<Boolean> written = buffer.add(TEST_INDEX, CORENLP, asList(ne2), doc);
+            buffer.flush();
+            assertThat(written.get()).isTrue();
+        }
+        assertThat(((Document) indexer.get(TEST_INDEX, doc.getId())).getStatus()).isEqualTo(DONE);
+        assertThat((NamedEntity) indexer.get(TEST_INDEX, ne1.getId(), doc.getId())).isNotNull();
+        assertThat((NamedEntity) indexer.get(TEST_INDEX, ne2.getId(), doc.getId())).isNotNull();
+    }
+
+    @Test
+    public void test_discarded_chunks_are_forgotten() throws Exception {
+        Document doc = createDoc("doc").with(INDEXED).build();
+        indexer.add(TEST_INDEX, doc);
+        NamedEntity ne1 = create(PERSON, "John Doe", asList(12L), doc.getId(), doc.getId(), CORENLP, Language.FRENCH);
+
+        try (NamedEntityBulkBuffer buffer = new NamedEntityBulkBuffer(indexer, 1000, 5 * 1024 * 1024, 60000, 2)) {
+            buffer.addChunk(TEST_INDEX, asList(ne1), doc);
+            assertThat(buffer.hasChunks(TEST_INDEX, doc)).isTrue();
+
+            buffer.discardChunks(TEST_INDEX, doc);
+
+            assertThat(buffer.hasChunks(TEST_INDEX, doc)).isFalse();
+        }
+        assertThat((NamedEntity) indexer.get(TEST_INDEX, ne1.getId(), doc.getId())).isNotNull();
+        assertThat(((Document) indexer.get(TEST_INDEX, doc.getId())).getStatus()).isEqualTo(INDEXED);
+    }
+
+    @Test
+    public void test_close_without_named_entities() {
+        new NamedEntityBulkBuffer(indexer, 1000, 5 * 1024 * 1024, 60000, 2).close();
+    }
+
+    private static Throwable waitFailure(CompletableFuture<Boolean> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            throw new AssertionError("future should have failed");
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import org.icij.datashare.Entity;
+import org.icij.datashare.text.Document;
+import org.icij.datashare.text.indexing.Indexer;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.icij.datashare.text.DocumentBuilder.createDoc;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ParallelScrollTest {
+    private final List<Indexer.Searcher> searchers = new CopyOnWriteArrayList<>();
+    private final Semaphore clearedScrolls = new Semaphore(0);
+
+    @Test
+    public void test_scroll_all_slices() throws Exception {
+        try (ParallelScroll scroll = new ParallelScroll(() -> searcher(2, 3), 3)) {
+            List<String> ids = scroll.stream().map(Entity::getId).collect(toList());
+
+            assertThat(ids).hasSize(3 * 2 * 3);
+            assertThat(scroll.totalHits()).isEqualTo(3 * 6);
+        }
+        assertThat(searchers).hasSize(3);
+        for (Indexer.Searcher searcher : searchers) {
+            verify(searcher).clearScroll();
+        }
+    }
+
+    @Test
+    public void test_one_slice_uses_unsliced_scroll() throws Exception {
+        try (ParallelScroll scroll = new ParallelScroll(() -> searcher(2, 1), 1)) {
+            assertThat(scroll.stream().count()).isEqualTo(2);
+        }
+        verify(searchers.get(0)).clearScroll();
+    }
+
+    @Test
+    public void test_slice_error_is_thrown_by_the_stream() throws Exception {
+        try (ParallelScroll scroll = new ParallelScroll(() -> {
+            Indexer.Searcher searcher = mock(Indexer.Searcher.class);
+            when(searcher.scroll(anyInt(), eq(2))).thenThrow(new IOException("slice failure"));
+            searchers.add(searcher);
+            return searcher;
+        }, 2)) {
+            scroll.stream().count();
+            fail("slice error should be thrown");
+        } catch (UncheckedIOException e) {
+            assertThat(e.getMessage()).startsWith("error in slice");
+            assertThat(e.getCause().getMessage()).isEqualTo("slice failure");
+        }
+    }
+
+    @Test
+    public void test_close_before_the_end_clears_the_scrolls() throws Exception {
+        ParallelScroll scroll = new ParallelScroll(() -> searcher(1000, 1), 2);
+        try (Stream<? extends Entity> stream = scroll.stream()) {
+            assertThat(stream.limit(5).count()).isEqualTo(5);
+        }
+        assertThat(clearedScrolls.tryAcquire(2, 5, SECONDS)).isTrue();
+        for (Indexer.Searcher searcher : searchers) {
+            verify(searcher).clearScroll();
+        }
+    }
+
+    private Indexer.Searcher searcher(int nbPages, int pageSize) {
+        Indexer.Searcher searcher = mock(Indexer.Searcher.class);
+        try {
+            when(searcher.scroll()).thenAnswer(new PagesAnswer(nbPages, pageSize));
+            when(searcher.scroll(anyInt(), anyInt())).thenAnswer(new PagesAnswer(nbPages, pageSize));
+            when(searcher.totalHits()).thenReturn((long) nbPages * pageSize);
+            doAnswer(invocation -> {
+                clearedScrolls.release();
+                return null;
+            }).when(searcher).clearScroll();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        searchers.add(searcher);
+        return searcher;
+    }
+
+    private static class PagesAnswer implements Answer<Stream<Document>> {
+        private final int nbPages;
+        private final int pageSize;
+        private int page = 0;
+
+        PagesAnswer(int nbPages, int pageSize) {
+            this.nbPages = nbPages;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public Stream<Document> answer(InvocationOnMock invocation) {
+            if (page++ >= nbPages) {
+                return Stream.empty();
+            }
+            return Stream.iterate(0, i -> i + 1).limit(pageSize).map(i -> createDoc(invocation.getArguments().length > 0 ?
+                    "doc-" + invocation.getArguments()[0] + "-" + page + "-" + i : "doc-" + page + "-" + i).build());
+        }
+    }
+}
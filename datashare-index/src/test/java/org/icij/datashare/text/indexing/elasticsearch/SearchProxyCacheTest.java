@@ -0,0 +1,136 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import org.icij.datashare.PropertiesProvider;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SearchProxyCacheTest {
+    private final SearchProxyCache cache = new SearchProxyCache(new PropertiesProvider());
+    private final AtomicInteger nbLoads = new AtomicInteger();
+
+    @Test
+    public void test_is_cacheable() {
+        assertThat(cache.isCacheable("POST", "index/_search")).isTrue();
+        assertThat(cache.isCacheable("GET", "/index1,index2/_count?q=foo")).isTrue();
+        assertThat(cache.isCacheable("POST", "index/_doc/_search")).isTrue();
+
+        assertThat(cache.isCacheable("POST", "index/_search?scroll=1m")).isFalse();
+        assertThat(cache.isCacheable("POST", "_search/scroll")).isFalse();
+        assertThat(cache.isCacheable("GET", "index/_doc/id")).isFalse();
+        assertThat(cache.isCacheable("PUT", "index/_search")).isFalse();
+    }
+
+    @Test
+    public void test_is_not_cacheable_with_ttl_zero() {
+        SearchProxyCache disabled = new SearchProxyCache(new PropertiesProvider(new HashMap<>() {{
+            put(SearchProxyCache.TTL_PROP, "0");
+        }}));
+        assertThat(disabled.isCacheable("POST", "index/_search")).isFalse();
+    }
+
+    @Test
+    public void test_same_request_is_loaded_once() throws Exception {
+        cache.get("POST", "index/_search?size=10&from=0", body("{\"query\": {\"match_all\": {}}, \"size\": 0}"), this::load);
+        SearchProxyCache.CachedResponse response = cache.get("POST", "/index/_search?from=0&size=10", body("{\"query\":{\"match_all\":{}},\"size\":0}"), this::load);
+
+        assertThat(nbLoads.get()).isEqualTo(1);
+        assertThat(new String(response.content, UTF_8)).isEqualTo("{\"hits\":1}");
+    }
+
+    @Test
+    public void test_different_bodies_are_loaded() throws Exception {
+        cache.get("POST", "index/_search", body("{\"size\":0}"), this::load);
+        cache.get("POST", "index/_search", body("{\"size\":10}"), this::load);
+
+        assertThat(nbLoads.get()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void test_invalidate_index() throws Exception {
+        cache.get("POST", "index1/_search", body("{}"), this::load);
+        cache.get("POST", "index1,index2/_count", body("{}"), this::load);
+        cache.get("POST", "index3/_search", body("{}"), this::load);
+
+        cache.invalidate("index1");
+        cache.get("POST", "index1/_search", body("{}"), this::load);
+        cache.get("POST", "index1,index2/_count", body("{}"), this::load);
+        cache.get("POST", "index3/_search", body("{}"), this::load);
+
+        assertThat(nbLoads.get()).isEqualTo(5);
+    }
+
+    @Test
+    public void test_invalidate_index_with_wildcard_requests() throws Exception {
+        cache.get("POST", "index*/_search", body("{}"), this::load);
+
+        cache.invalidate("index1");
+        cache.get("POST", "index*/_search", body("{}"), this::load);
+
+        assertThat(nbLoads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void test_response_loaded_during_a_write_is_not_served_after() throws Exception {
+        cache.get("POST", "index/_search", body("{}"), () -> {
+            cache.invalidate("index");
+            return load();
+        });
+
+        cache.get("POST", "index/_search", body("{}"), this::load);
+
+        assertThat(nbLoads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void test_concurrent_requests_are_coalesced() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<SearchProxyCache.CachedResponse> first = executor.submit(() -> cache.get("POST", "index/_search", body("{}"), () -> {
+                loading.countDown();
+                release.await();
+                return load();
+            }));
+            loading.await();
+            Future<SearchProxyCache.CachedResponse> second = executor.submit(() -> cache.get("POST", "index/_search", body("{}"), this::load));
+            release.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS)).isSameAs(second.get(5, TimeUnit.SECONDS));
+            assertThat(nbLoads.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void test_loader_error_is_thrown() throws Exception {
+        cache.get("POST", "index/_search", body("{}"), () -> { throw new IOException("es down"); });
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_loader_runtime_error_is_thrown() throws Exception {
+        cache.get("POST", "index/_search", body("{}"), () -> { throw new IllegalStateException("bad response"); });
+    }
+
+    private SearchProxyCache.CachedResponse load() {
+        nbLoads.incrementAndGet();
+        return new SearchProxyCache.CachedResponse(200, "application/json", body("{\"hits\":1}"));
+    }
+
+    private static byte[] body(String json) {
+        return json.getBytes(UTF_8);
+    }
+}
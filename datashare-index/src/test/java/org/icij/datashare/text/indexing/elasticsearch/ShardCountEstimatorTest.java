@@ -0,0 +1,48 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import org.icij.datashare.PropertiesProvider;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.util.HashMap;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ShardCountEstimatorTest {
+    @Rule public TemporaryFolder dataDir = new TemporaryFolder();
+
+    @Test
+    public void test_estimate_from_source_size() {
+        ShardCountEstimator estimator = new ShardCountEstimator(100, 0.5);
+        assertThat(estimator.estimate(0L)).isEqualTo(1);
+        assertThat(estimator.estimate(200L)).isEqualTo(1);
+        assertThat(estimator.estimate(202L)).isEqualTo(2);
+        assertThat(estimator.estimate(Long.MAX_VALUE / 2)).isEqualTo(ShardCountEstimator.MAX_SHARDS);
+    }
+
+    @Test
+    public void test_estimate_from_data_dir() throws Exception {
+        Files.write(dataDir.newFile("doc1.txt").toPath(), new byte[150]);
+        Files.write(dataDir.newFolder("sub").toPath().resolve("doc2.txt"), new byte[150]);
+
+        assertThat(ShardCountEstimator.directorySize(dataDir.getRoot().toPath())).isEqualTo(300);
+        assertThat(new ShardCountEstimator(100, 0.5).estimate(dataDir.getRoot().toPath())).isEqualTo(2);
+    }
+
+    @Test
+    public void test_configuration_auto_shards() throws Exception {
+        Files.write(dataDir.newFile("doc.txt").toPath(), new byte[1000]);
+        ElasticsearchConfiguration configuration = new ElasticsearchConfiguration(new PropertiesProvider(new HashMap<>() {{
+            put("indexShards", "auto");
+            put("indexTargetShardSize", "100");
+            put("dataDir", dataDir.getRoot().toString());
+        }}));
+
+        assertThat(configuration.getIndexSettings().get("index.number_of_shards")).isEqualTo("3");
+        assertThat(configuration.getIndexSettings().get("index.number_of_replicas")).isNull();
+        assertThat(configuration.getIndexSettings(5, 0).get("index.number_of_shards")).isEqualTo("5");
+        assertThat(configuration.getIndexSettings(5, 0).get("index.number_of_replicas")).isEqualTo("0");
+    }
+}
@@ -0,0 +1,96 @@
+package org.icij.datashare.text.indexing.elasticsearch;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.admin.cluster.storedscripts.DeleteStoredScriptRequest;
+import org.elasticsearch.action.admin.cluster.storedscripts.GetStoredScriptRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.icij.datashare.test.ElasticsearchRule;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class StoredScriptsTest {
+    @ClassRule
+    public static ElasticsearchRule es = new ElasticsearchRule();
+
+    @Test
+    public void test_script_ids_are_versioned() {
+        assertThat(StoredScripts.TAG.id).startsWith("datashare-tag-");
+        assertThat(StoredScripts.TAG.id).isNotEqualTo(new StoredScripts.Definition("tag", StoredScripts.TAG.source + ";").id);
+        assertThat(StoredScripts.TAG.id).isEqualTo(new StoredScripts.Definition("tag", StoredScripts.TAG.source).id);
+    }
+
+    @Test
+    public void test_inline_script_when_elasticsearch_is_unavailable() throws Exception {
+        try (RestHighLevelClient unavailable = new RestHighLevelClient(RestClient.builder(HttpHost.create("http://localhost:1")))) {
+            StoredScripts scripts = new StoredScripts(unavailable);
+            scripts.register().get();
+
+            Script script = scripts.script(StoredScripts.TAG, new HashMap<>());
+
+            assertThat(script.getType()).isEqualTo(ScriptType.INLINE);
+            assertThat(script.getIdOrCode()).isEqualTo(StoredScripts.TAG.source);
+            assertThat(script.getLang()).isEqualTo("painless");
+            assertThat(scripts.isRefused(StoredScripts.TAG)).isFalse();
+        }
+    }
+
+    @Test
+    public void test_inline_script_until_scripts_are_registered() throws Exception {
+        StoredScripts scripts = new StoredScripts(es.client);
+
+        assertThat(scripts.script(StoredScripts.TAG, new HashMap<>()).getType()).isEqualTo(ScriptType.INLINE);
+        scripts.register().get();
+        Script script = scripts.script(StoredScripts.TAG, new HashMap<>());
+
+        assertThat(script.getType()).isEqualTo(ScriptType.STORED);
+        assertThat(script.getIdOrCode()).isEqualTo(StoredScripts.TAG.id);
+        assertThat(es.client.getScript(new GetStoredScriptRequest(StoredScripts.TAG.id), RequestOptions.DEFAULT).getSource().getSource())
+                .isEqualTo(StoredScripts.TAG.source);
+    }
+
+    @Test
+    public void test_refused_script_is_not_stored_again() throws Exception {
+        StoredScripts scripts = new StoredScripts(es.client);
+        StoredScripts.Definition invalid = new StoredScripts.Definition("invalid", "this is not painless (");
+
+        scripts.script(invalid, new HashMap<>());
+        for (int i = 0; i < 100 && !scripts.isRefused(invalid); i++) {
+            Thread.sleep(50);
+        }
+
+        assertThat(scripts.isRefused(invalid)).isTrue();
+        assertThat(scripts.isStored(invalid)).isFalse();
+        assertThat(scripts.script(invalid, new HashMap<>()).getType()).isEqualTo(ScriptType.INLINE);
+    }
+
+    @Test
+    public void test_restore_scripts() throws Exception {
+        StoredScripts scripts = new StoredScripts(es.client);
+        scripts.register().get();
+        es.client.deleteScript(new DeleteStoredScriptRequest(StoredScripts.TAG.id), RequestOptions.DEFAULT);
+
+        scripts.restore();
+
+        for (StoredScripts.Definition definition : StoredScripts.ALL) {
+            assertThat(es.client.getScript(new GetStoredScriptRequest(definition.id), RequestOptions.DEFAULT).getSource().getSource())
+                    .isEqualTo(definition.source);
+        }
+    }
+
+    @Test
+    public void test_is_missing_script() {
+        assertThat(StoredScripts.isMissingScript(new ElasticsearchStatusException("unable to find script [datashare-tag-1234] in cluster state", RestStatus.NOT_FOUND))).isTrue();
+        assertThat(StoredScripts.isMissingScript(new RuntimeException(new IllegalStateException("unable to find script [foo]")))).isTrue();
+        assertThat(StoredScripts.isMissingScript(new ElasticsearchStatusException("document missing", RestStatus.NOT_FOUND))).isFalse();
+    }
+}
@@ -9,6 +9,7 @@ import edu.stanford.nlp.ling.TaggedWord;
 import edu.stanford.nlp.tagger.maxent.MaxentTagger;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.Triple;
+import org.icij.datashare.HumanReadableSize;
 import org.icij.datashare.PropertiesProvider;
 import org.icij.datashare.function.ThrowingFunctions;
 import org.icij.datashare.text.Document;
@@ -20,6 +21,8 @@ import org.icij.datashare.text.nlp.Annotations;
 import org.icij.datashare.text.nlp.NlpStage;
 import org.icij.datashare.text.nlp.Pipeline;
 import org.icij.datashare.text.nlp.corenlp.models.CoreNlpAnnotator;
+import org.icij.datashare.text.nlp.corenlp.models.CoreNlpAnnotatorPool;
+import org.icij.datashare.text.nlp.corenlp.models.CoreNlpModelPool;
 import org.icij.datashare.text.nlp.corenlp.models.CoreNlpNerModels;
 import org.icij.datashare.text.nlp.corenlp.models.CoreNlpPipelineModels;
 import org.icij.datashare.text.nlp.corenlp.models.CoreNlpPosModels;
@@ -56,6 +59,10 @@ public final class CorenlpPipeline extends AbstractPipeline {
         stageDependencies.get(POS)     .add(SENTENCE);
         stageDependencies.get(LEMMA)   .add(POS);
         stageDependencies.get(NER)     .add(LEMMA);
+        propertiesProvider.get(CoreNlpModelPool.HEAP_BUDGET_PROP).map(HumanReadableSize::parse)
+                .ifPresent(CoreNlpModelPool.getInstance()::setHeapBudget);
+        propertiesProvider.get(CoreNlpNerModels.ANNOTATOR_INSTANCES_PROP).map(Integer::parseInt)
+                .ifPresent(CoreNlpNerModels.getInstance()::setAnnotatorInstances);
     }
 
     /**
@@ -74,6 +81,12 @@ public final class CorenlpPipeline extends AbstractPipeline {
         if( ! super.initialize(language) )
             return false;
 
+        // models are kept in the pool between documents, and unloaded when the pool is full
+        if ( ! caching) {
+            CoreNlpModelPool.getInstance().acquire(getModelsStage(), language);
+            return true;
+        }
+
         if (singletonList(NER).equals(targetStages))
             return initializeNerAnnotator(language);
 
@@ -110,12 +123,21 @@ public final class CorenlpPipeline extends AbstractPipeline {
         super.terminate(language);
         // (Don't) keep pipelines and models
         if ( ! caching) {
-            CoreNlpPipelineModels.getInstance().unload(language);
-            CoreNlpNerModels.getInstance().unload(language);
-            CoreNlpPosModels.getInstance().unload(language);
+            CoreNlpModelPool.getInstance().release(getModelsStage(), language);
         }
     }
 
+    /**
+     * @return the stage of the models used by the target stages, or null for the whole pipeline
+     */
+    private NlpStage getModelsStage() {
+        if (singletonList(NER).equals(targetStages))
+            return NER;
+        if (singletonList(POS).equals(targetStages))
+            return POS;
+        return null;
+    }
+
 
     private boolean initializePipelineAnnotator(Language language) throws InterruptedException {
         CoreNlpPipelineModels.getInstance().get(language);
@@ -193,11 +215,12 @@ public final class CorenlpPipeline extends AbstractPipeline {
         Annotations annotations = new Annotations(doc.getId(), doc.getRootDocument(), getType(), doc.getLanguage());
         NamedEntitiesBuilder namedEntitiesBuilder = new NamedEntitiesBuilder(getType(), doc.getId(), doc.getLanguage()).withRoot(doc.getRootDocument());
         LOGGER.info("name-finding for {} in document {} (offset {})", doc.getLanguage(), doc.getId(), contentOffset);
-        // Recognize named entities from input
-        final CoreNlpAnnotator<AbstractSequenceClassifier<CoreLabel>> abstractSequenceClassifierCoreNlpAnnotator;
-        abstractSequenceClassifierCoreNlpAnnotator = CoreNlpNerModels.getInstance().get(doc.getLanguage());
+        // Recognize named entities from input, with a classifier used only by this thread
         String chunk = doc.getContent().substring(contentOffset, Math.min(contentOffset + contentLength, doc.getContentTextLength()));
-        List<Triple<String, Integer, Integer>> items = abstractSequenceClassifierCoreNlpAnnotator.annotator.classifyToCharacterOffsets(chunk);
+        List<Triple<String, Integer, Integer>> items;
+        try (CoreNlpAnnotatorPool.Lease<AbstractSequenceClassifier<CoreLabel>> classifier = CoreNlpNerModels.getInstance().lease(doc.getLanguage())) {
+            items = classifier.annotator.classifyToCharacterOffsets(chunk);
+        }
         // For each recognized named entity
         for (Triple<String, Integer, Integer> item : items) {
             // Triple: <category, begin, end>
@@ -0,0 +1,87 @@
+package org.icij.datashare.text.nlp.corenlp.models;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Pool of the annotators of a language, leased to one thread at a time.
+ *
+ * The first annotator is the one of the models. The other ones are created on demand, up to
+ * <code>maxInstances</code>, when all the annotators are leased: then the threads wait for an annotator
+ * to be returned to the pool. With one instance, the annotator is shared by the threads (as it is used
+ * without pool) instead of being leased to one thread at a time.
+ */
+public class CoreNlpAnnotatorPool<T> {
+    private final AnnotatorFactory<T> factory;
+    private final int maxInstances;
+    private final BlockingQueue<CoreNlpAnnotator<T>> idle = new LinkedBlockingQueue<>();
+    private final CoreNlpAnnotator<T> shared;
+    private int nbInstances;
+
+    CoreNlpAnnotatorPool(CoreNlpAnnotator<T> first, AnnotatorFactory<T> factory, int maxInstances) {
+        this.factory = factory;
+        this.maxInstances = Math.max(maxInstances, 1);
+        this.shared = this.maxInstances == 1 ? first : null;
+        this.idle.add(first);
+        this.nbInstances = 1;
+    }
+
+    /**
+     * @return an annotator that is only used by the calling thread until the lease is closed
+     * (or the shared annotator when the pool has only one instance)
+     */
+    public Lease<T> lease() throws InterruptedException {
+        if (shared != null) {
+            return new Lease<>(null, shared);
+        }
+        CoreNlpAnnotator<T> annotator = idle.poll();
+        if (annotator != null) {
+            return new Lease<>(this, annotator);
+        }
+        boolean create;
+        synchronized (this) {
+            create = nbInstances < maxInstances;
+            if (create) {
+                nbInstances++;
+            }
+        }
+        if (!create) {
+            return new Lease<>(this, idle.take());
+        }
+        try {
+            return new Lease<>(this, factory.create());
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                nbInstances--;
+            }
+            throw e;
+        }
+    }
+
+    synchronized int size() {
+        return nbInstances;
+    }
+
+    interface AnnotatorFactory<T> {
+        CoreNlpAnnotator<T> create();
+    }
+
+    public static class Lease<T> implements AutoCloseable {
+        private final CoreNlpAnnotatorPool<T> pool;
+        public final T annotator;
+        private final CoreNlpAnnotator<T> instance;
+
+        Lease(CoreNlpAnnotatorPool<T> pool, CoreNlpAnnotator<T> instance) {
+            this.pool = pool;
+            this.instance = instance;
+            this.annotator = instance.annotator;
+        }
+
+        @Override
+        public void close() {
+            if (pool != null) {
+                pool.idle.add(instance);
+            }
+        }
+    }
+}
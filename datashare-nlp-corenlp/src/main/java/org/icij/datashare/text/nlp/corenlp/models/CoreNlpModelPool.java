@@ -0,0 +1,263 @@
+package org.icij.datashare.text.nlp.corenlp.models;
+
+import org.icij.datashare.text.Language;
+import org.icij.datashare.text.nlp.NlpStage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.icij.datashare.text.nlp.NlpStage.NER;
+import static org.icij.datashare.text.nlp.NlpStage.POS;
+
+/**
+ * Pool of the CoreNLP models loaded in memory, by stage and language.
+ *
+ * The models are acquired by the pipeline for each document and released after. Released models stay loaded
+ * so that the next documents in the same language don't reload them, until the (approximate) heap used by the
+ * loaded models exceeds the budget: then the least recently used models that are not in use are unloaded.
+ * The heap used by a model is measured when it is loaded.
+ *
+ * The stage of the full pipeline models is null (like {@link CoreNlpPipelineModels}).
+ */
+public class CoreNlpModelPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CoreNlpModelPool.class);
+    public static final String HEAP_BUDGET_PROP = "nlpModelsHeapBudget";
+    static final long DEFAULT_MODEL_SIZE = 100L * 1024 * 1024;
+    private static volatile CoreNlpModelPool instance;
+    private static final Object mutex = new Object();
+
+    private final ModelLoader loader;
+    private final Map<Key, PooledModel> models = new LinkedHashMap<>(16, 0.75f, true);
+    private volatile long heapBudget;
+    private long heapUsed = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long loadTimeMillis = 0;
+
+    public static CoreNlpModelPool getInstance() {
+        CoreNlpModelPool local_instance = instance;
+        if (local_instance == null) {
+            synchronized (mutex) {
+                local_instance = instance;
+                if (local_instance == null) {
+                    instance = new CoreNlpModelPool(new CoreNlpModelLoader(), Runtime.getRuntime().maxMemory() / 2);
+                }
+            }
+        }
+        return instance;
+    }
+
+    CoreNlpModelPool(ModelLoader loader, long heapBudget) {
+        this.loader = loader;
+        this.heapBudget = heapBudget;
+    }
+
+    public void setHeapBudget(long heapBudget) {
+        this.heapBudget = heapBudget;
+        synchronized (this) {
+            evict();
+        }
+    }
+
+    /**
+     * loads the model if needed and marks it in use: it won't be unloaded before it is released.
+     * When another thread is loading the same model, waits for it.
+     */
+    public void acquire(NlpStage stage, Language language) throws InterruptedException {
+        Key key = new Key(stage, language);
+        PooledModel model;
+        boolean load = false;
+        synchronized (this) {
+            model = models.get(key);
+            if (model == null) {
+                model = new PooledModel();
+                models.put(key, model);
+                misses++;
+                load = true;
+            } else {
+                hits++;
+            }
+            model.references++;
+        }
+        if (load) {
+            load(key, model);
+        } else {
+            await(key, model);
+        }
+    }
+
+    public void release(NlpStage stage, Language language) {
+        Key key = new Key(stage, language);
+        synchronized (this) {
+            PooledModel model = models.get(key);
+            if (model == null || model.references == 0) {
+                LOGGER.warn("releasing {} models that are not acquired", key);
+                return;
+            }
+            model.references--;
+            evict();
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(models.size(), heapUsed, hits, misses, evictions, loadTimeMillis);
+    }
+
+    private void load(Key key, PooledModel model) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        try {
+            long size = loader.load(key.stage, key.language);
+            long duration = System.currentTimeMillis() - start;
+            synchronized (this) {
+                model.size = size;
+                heapUsed += size;
+                loadTimeMillis += duration;
+                LOGGER.info("loaded {} models in {}ms ({} bytes), {}", key, duration, size, getStats());
+                evict();
+            }
+            model.loaded.complete(null);
+        } catch (InterruptedException | RuntimeException e) {
+            synchronized (this) {
+                models.remove(key);
+            }
+            model.loaded.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void await(Key key, PooledModel model) throws InterruptedException {
+        try {
+            model.loaded.get();
+        } catch (ExecutionException e) {
+            synchronized (this) {
+                model.references--;
+            }
+            throw new IllegalStateException("cannot load " + key + " models", e.getCause());
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, PooledModel>> lru = models.entrySet().iterator();
+        while (heapUsed > heapBudget && lru.hasNext()) {
+            Map.Entry<Key, PooledModel> entry = lru.next();
+            PooledModel model = entry.getValue();
+            if (model.references == 0 && model.loaded.isDone()) {
+                lru.remove();
+                loader.unload(entry.getKey().stage, entry.getKey().language);
+                heapUsed -= model.size;
+                evictions++;
+                LOGGER.info("unloaded {} models, {}", entry.getKey(), getStats());
+            }
+        }
+    }
+
+    interface ModelLoader {
+        /**
+         * @return the heap used by the model in bytes
+         */
+        long load(NlpStage stage, Language language) throws InterruptedException;
+
+        void unload(NlpStage stage, Language language);
+    }
+
+    static class CoreNlpModelLoader implements ModelLoader {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        @Override
+        public long load(NlpStage stage, Language language) throws InterruptedException {
+            long heapBefore = memory.getHeapMemoryUsage().getUsed();
+            if (stage == NER) {
+                CoreNlpNerModels.getInstance().get(language);
+            } else if (stage == POS) {
+                CoreNlpPosModels.getInstance().get(language);
+            } else {
+                CoreNlpPipelineModels.getInstance().get(language);
+            }
+            long heapDelta = memory.getHeapMemoryUsage().getUsed() - heapBefore;
+            return heapDelta > 0 ? heapDelta : DEFAULT_MODEL_SIZE;
+        }
+
+        @Override
+        public void unload(NlpStage stage, Language language) {
+            if (stage == NER) {
+                CoreNlpNerModels.getInstance().removeAnnotators(language);
+                CoreNlpNerModels.getInstance().unload(language);
+            } else if (stage == POS) {
+                CoreNlpPosModels.getInstance().unload(language);
+            } else {
+                CoreNlpPipelineModels.getInstance().unload(language);
+            }
+        }
+    }
+
+    public static class Stats {
+        public final int loaded_models;
+        public final long heap_used;
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long load_time_millis;
+
+        Stats(int loadedModels, long heapUsed, long hits, long misses, long evictions, long loadTimeMillis) {
+            this.loaded_models = loadedModels;
+            this.heap_used = heapUsed;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.load_time_millis = loadTimeMillis;
+        }
+
+        public double getHitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{loaded=" + loaded_models + ", heap=" + heap_used + ", hitRate=" + getHitRate() +
+                    ", misses=" + misses + ", evictions=" + evictions + ", loadTime=" + load_time_millis + "ms}";
+        }
+    }
+
+    private static class PooledModel {
+        final CompletableFuture<Void> loaded = new CompletableFuture<>();
+        int references = 0;
+        long size = 0;
+    }
+
+    private static class Key {
+        final NlpStage stage;
+        final Language language;
+
+        Key(NlpStage stage, Language language) {
+            this.stage = stage;
+            this.language = language;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return stage == key.stage && Objects.equals(language, key.language);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(stage, language);
+        }
+
+        @Override
+        public String toString() {
+            return (stage == null ? "PIPELINE" : stage.name()) + "/" + language;
+        }
+    }
+}
@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.icij.datashare.text.Language.*;
 import static org.icij.datashare.text.nlp.NlpStage.NER;
@@ -37,8 +38,11 @@ import static org.icij.datashare.text.nlp.NlpStage.NER;
  * Created by julien on 8/31/16.
  */
 public class CoreNlpNerModels extends CoreNlpModels<AbstractSequenceClassifier<CoreLabel>> {
+    public static final String ANNOTATOR_INSTANCES_PROP = "nlpAnnotatorInstances";
     private static volatile CoreNlpNerModels instance;
     private static final Object mutex = new Object();
+    private final Map<Language, CoreNlpAnnotatorPool<AbstractSequenceClassifier<CoreLabel>>> annotatorPools = new ConcurrentHashMap<>();
+    private volatile int annotatorInstances = 1;
 
     public static final Map<Language, String> POS_TAGSET = new HashMap<Language, String>() {{
         put(ENGLISH, "PENN TREEBANK");
@@ -78,6 +82,48 @@ public class CoreNlpNerModels extends CoreNlpModels<AbstractSequenceClassifier<C
         }
     }
 
+    /**
+     * leases a classifier of the language to the calling thread. Up to <code>nlpAnnotatorInstances</code>
+     * classifiers are loaded for each language, so that the NLP threads don't share the same classifier.
+     * With one instance (the default), the classifier is shared by the NLP threads.
+     */
+    public CoreNlpAnnotatorPool.Lease<AbstractSequenceClassifier<CoreLabel>> lease(Language language) throws InterruptedException {
+        CoreNlpAnnotatorPool<AbstractSequenceClassifier<CoreLabel>> pool = annotatorPools.get(language);
+        if (pool == null) {
+            CoreNlpAnnotator<AbstractSequenceClassifier<CoreLabel>> first = get(language);
+            pool = annotatorPools.computeIfAbsent(language, l -> new CoreNlpAnnotatorPool<>(first, () -> newClassifier(l), annotatorInstances));
+        }
+        return pool.lease();
+    }
+
+    /**
+     * the pools are created with the number of instances read at their creation,
+     * so the pools of a previous number of instances are dropped.
+     */
+    public synchronized void setAnnotatorInstances(int annotatorInstances) {
+        if (this.annotatorInstances != annotatorInstances) {
+            this.annotatorInstances = annotatorInstances;
+            annotatorPools.clear();
+        }
+    }
+
+    /**
+     * drops the classifiers leased for the language (the ones being used are garbage collected when returned)
+     */
+    void removeAnnotators(Language language) {
+        annotatorPools.remove(language);
+    }
+
+    private CoreNlpAnnotator<AbstractSequenceClassifier<CoreLabel>> newClassifier(Language language) {
+        LOGGER.info("loading another NER classifier for " + language);
+        try {
+            // the models jar is already in the classpath
+            return new CoreNlpAnnotator<>(CRFClassifier.getClassifier(getInJarModelPath(language)));
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("cannot load NER classifier for " + language, e);
+        }
+    }
+
     private CoreNlpNerModels() {
         super(NER);
         modelNames.put(ENGLISH, "ner/english.all.3class.caseless.distsim.crf.ser.gz");
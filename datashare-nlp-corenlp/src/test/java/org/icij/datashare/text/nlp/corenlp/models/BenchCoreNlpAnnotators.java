@@ -0,0 +1,67 @@
+package org.icij.datashare.text.nlp.corenlp.models;
+
+import edu.stanford.nlp.ie.AbstractSequenceClassifier;
+import edu.stanford.nlp.ling.CoreLabel;
+import org.icij.datashare.text.Language;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
+import static org.icij.datashare.text.Language.ENGLISH;
+
+/**
+ * compares the throughput of the NER classifier shared by all the threads
+ * with one classifier by thread (leased from the annotator pool).
+ *
+ * Needs the english models (downloaded in the models directory if they are missing).
+ */
+public class BenchCoreNlpAnnotators {
+    static Logger logger = LoggerFactory.getLogger(BenchCoreNlpAnnotators.class);
+    private static final Language LANGUAGE = ENGLISH;
+    private static final int NB_DOCS = 2000;
+    private static final int[] NB_THREADS = {1, 2, 4, 8, 16, 32};
+    private final String text = ("Jane Smith transferred the funds from the account of Acme Corporation in Panama " +
+            "to a bank in Geneva before flying to London with John Doe. ").repeat(20);
+
+    @Test
+    public void bench_docs_per_second() throws Exception {
+        CoreNlpNerModels models = CoreNlpNerModels.getInstance();
+        AbstractSequenceClassifier<CoreLabel> shared = models.get(LANGUAGE).annotator;
+        bench(4, () -> shared.classifyToCharacterOffsets(text)); // warm up
+
+        for (int nbThreads : NB_THREADS) {
+            double sharedRate = bench(nbThreads, () -> shared.classifyToCharacterOffsets(text));
+            models.removeAnnotators(LANGUAGE);
+            models.setAnnotatorInstances(nbThreads);
+            double leasedRate = bench(nbThreads, () -> {
+                try (CoreNlpAnnotatorPool.Lease<AbstractSequenceClassifier<CoreLabel>> classifier = models.lease(LANGUAGE)) {
+                    return classifier.annotator.classifyToCharacterOffsets(text);
+                }
+            });
+            logger.info("{} thread(s): shared classifier {} docs/s, classifier by thread {} docs/s",
+                    nbThreads, (long) sharedRate, (long) leasedRate);
+        }
+    }
+
+    private double bench(int nbThreads, Callable<?> classify) throws Exception {
+        ExecutorService executor = newFixedThreadPool(nbThreads);
+        try {
+            long before = System.nanoTime();
+            List<Future<?>> results = range(0, NB_DOCS).<Future<?>>mapToObj(i -> executor.submit(classify)).collect(toList());
+            for (Future<?> result : results) {
+                result.get();
+            }
+            return NB_DOCS * 1e9 / (System.nanoTime() - before);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.icij.datashare.text.nlp.corenlp.models;
+
+import edu.stanford.nlp.ie.AbstractSequenceClassifier;
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetBeginAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetEndAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.NamedEntityTagAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import org.icij.datashare.text.Language;
+import org.icij.datashare.text.NamedEntity;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static java.util.stream.Collectors.toList;
+import static org.icij.datashare.text.Language.ENGLISH;
+import static org.icij.datashare.text.Language.FRENCH;
+import static org.icij.datashare.text.Language.GERMAN;
+import static org.icij.datashare.text.Language.SPANISH;
+
+/**
+ * compares the throughput of the CoreNLP pipelines (tokenize, ssplit, pos, lemma and ner)
+ * with the NER classifier alone (used when NER is the only target stage), and checks that the named entities are the same.
+ *
+ * Needs the models of the languages (downloaded in the models directory if they are missing).
+ */
+public class BenchCoreNlpPipelineAnnotators {
+    static Logger logger = LoggerFactory.getLogger(BenchCoreNlpPipelineAnnotators.class);
+    private static final int NB_DOCS = 200;
+    private static final Map<Language, String> TEXTS = new HashMap<Language, String>() {{
+        put(ENGLISH, "Jane Smith transferred the funds from the account of Acme Corporation in Panama " +
+                "to a bank in Geneva before flying to London with John Doe. ");
+        put(FRENCH, "Jean Dupont a transféré les fonds du compte de la société Acme au Panama " +
+                "vers une banque de Genève avant de partir pour Londres avec Marie Martin. ");
+        put(SPANISH, "Juan García transfirió los fondos de la cuenta de la empresa Acme en Panamá " +
+                "a un banco de Ginebra antes de volar a Londres con María López. ");
+        put(GERMAN, "Hans Müller überwies das Geld vom Konto der Firma Acme in Panama " +
+                "an eine Bank in Genf, bevor er mit Anna Schmidt nach London flog. ");
+    }};
+
+    @Test
+    public void bench_docs_per_second() throws Exception {
+        for (Map.Entry<Language, String> entry : TEXTS.entrySet()) {
+            Language language = entry.getKey();
+            String text = entry.getValue().repeat(20);
+
+            StanfordCoreNLP pipeline = CoreNlpPipelineModels.getInstance().get(language);
+            List<String> pipelineEntities = pipelineEntities(pipeline, text);
+            double pipelineRate = bench(t -> pipeline.annotate(new Annotation(t)), text);
+            CoreNlpPipelineModels.getInstance().unload(language);
+
+            AbstractSequenceClassifier<CoreLabel> classifier = CoreNlpNerModels.getInstance().get(language).annotator;
+            List<String> classifierEntities = classifierEntities(classifier, text);
+            double classifierRate = bench(classifier::classifyToCharacterOffsets, text);
+
+            logger.info("{}: pipeline {} docs/s, ner classifier {} docs/s (x{}), same named entities: {}",
+                    language, (long) pipelineRate, (long) classifierRate, String.format("%.2f", classifierRate / pipelineRate),
+                    pipelineEntities.equals(classifierEntities));
+        }
+    }
+
+    private double bench(Consumer<String> annotate, String text) {
+        annotate.accept(text); // warm up
+        long before = System.nanoTime();
+        for (int i = 0; i < NB_DOCS; i++) {
+            annotate.accept(text);
+        }
+        return NB_DOCS * 1e9 / (System.nanoTime() - before);
+    }
+
+    private List<String> pipelineEntities(StanfordCoreNLP pipeline, String text) {
+        Annotation annotation = new Annotation(text);
+        pipeline.annotate(annotation);
+        List<String> entities = new ArrayList<>();
+        NamedEntity.Category prevCat = NamedEntity.Category.NONE;
+        int nerBegin = 0;
+        int prevEnd = 0;
+        for (CoreLabel token : annotation.get(TokensAnnotation.class)) {
+            NamedEntity.Category currCat = NamedEntity.Category.parse(token.get(NamedEntityTagAnnotation.class));
+            if (prevCat != currCat) {
+                if (prevCat != NamedEntity.Category.NONE) {
+                    entities.add(prevCat + " " + nerBegin + "-" + prevEnd);
+                }
+                nerBegin = token.get(CharacterOffsetBeginAnnotation.class);
+            }
+            prevEnd = token.get(CharacterOffsetEndAnnotation.class);
+            prevCat = currCat;
+        }
+        if (prevCat != NamedEntity.Category.NONE) {
+            entities.add(prevCat + " " + nerBegin + "-" + prevEnd);
+        }
+        return entities;
+    }
+
+    private List<String> classifierEntities(AbstractSequenceClassifier<CoreLabel> classifier, String text) {
+        return classifier.classifyToCharacterOffsets(text).stream()
+                .map(item -> NamedEntity.Category.parse(item.first()) + " " + item.second() + "-" + item.third())
+                .collect(toList());
+    }
+}
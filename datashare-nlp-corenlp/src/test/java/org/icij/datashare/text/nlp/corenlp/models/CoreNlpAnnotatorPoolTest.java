@@ -0,0 +1,80 @@
+package org.icij.datashare.text.nlp.corenlp.models;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CoreNlpAnnotatorPoolTest {
+    private final AtomicInteger nbCreated = new AtomicInteger();
+    private final CoreNlpAnnotatorPool<String> pool = new CoreNlpAnnotatorPool<>(new CoreNlpAnnotator<>("first"),
+            () -> new CoreNlpAnnotator<>("annotator" + nbCreated.incrementAndGet()), 2);
+
+    @Test
+    public void test_lease_reuses_returned_annotator() throws Exception {
+        try (CoreNlpAnnotatorPool.Lease<String> lease = pool.lease()) {
+            assertThat(lease.annotator).isEqualTo("first");
+        }
+        try (CoreNlpAnnotatorPool.Lease<String> lease = pool.lease()) {
+            assertThat(lease.annotator).isEqualTo("first");
+        }
+        assertThat(pool.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_lease_creates_annotator_when_all_are_leased() throws Exception {
+        try (CoreNlpAnnotatorPool.Lease<String> first = pool.lease();
+             CoreNlpAnnotatorPool.Lease<String> second = pool.lease()) {
+            assertThat(first.annotator).isEqualTo("first");
+            assertThat(second.annotator).isEqualTo("annotator1");
+        }
+        assertThat(pool.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void test_lease_waits_when_max_instances_are_leased() throws Exception {
+        CoreNlpAnnotatorPool.Lease<String> first = pool.lease();
+        CoreNlpAnnotatorPool.Lease<String> second = pool.lease();
+        CountDownLatch started = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> third = executor.submit(() -> {
+                started.countDown();
+                try (CoreNlpAnnotatorPool.Lease<String> lease = pool.lease()) {
+                    return lease.annotator;
+                }
+            });
+            started.await();
+            Thread.sleep(100);
+            assertThat(third.isDone()).isFalse();
+
+            second.close();
+
+            assertThat(third.get(5, TimeUnit.SECONDS)).isEqualTo("annotator1");
+            assertThat(pool.size()).isEqualTo(2);
+        } finally {
+            first.close();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_lease_shares_annotator_with_one_instance() throws Exception {
+        CoreNlpAnnotatorPool<String> sharedPool = new CoreNlpAnnotatorPool<>(new CoreNlpAnnotator<>("first"),
+                () -> new CoreNlpAnnotator<>("annotator" + nbCreated.incrementAndGet()), 1);
+
+        try (CoreNlpAnnotatorPool.Lease<String> first = sharedPool.lease();
+             CoreNlpAnnotatorPool.Lease<String> second = sharedPool.lease()) {
+            assertThat(first.annotator).isEqualTo("first");
+            assertThat(second.annotator).isEqualTo("first");
+        }
+        assertThat(sharedPool.size()).isEqualTo(1);
+        assertThat(nbCreated.get()).isEqualTo(0);
+    }
+}
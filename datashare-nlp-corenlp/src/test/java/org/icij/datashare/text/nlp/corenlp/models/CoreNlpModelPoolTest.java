@@ -0,0 +1,144 @@
+package org.icij.datashare.text.nlp.corenlp.models;
+
+import org.icij.datashare.text.Language;
+import org.icij.datashare.text.nlp.NlpStage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.icij.datashare.text.Language.ENGLISH;
+import static org.icij.datashare.text.Language.FRENCH;
+import static org.icij.datashare.text.Language.GERMAN;
+import static org.icij.datashare.text.nlp.NlpStage.NER;
+
+public class CoreNlpModelPoolTest {
+    private final FakeLoader loader = new FakeLoader();
+    private final CoreNlpModelPool pool = new CoreNlpModelPool(loader, 250);
+
+    @Test
+    public void test_released_model_is_not_reloaded() throws Exception {
+        pool.acquire(NER, ENGLISH);
+        pool.release(NER, ENGLISH);
+        pool.acquire(NER, ENGLISH);
+        pool.release(NER, ENGLISH);
+
+        assertThat(loader.loaded).containsExactly("NER/ENGLISH");
+        assertThat(pool.getStats().hits).isEqualTo(1);
+        assertThat(pool.getStats().misses).isEqualTo(1);
+        assertThat(pool.getStats().getHitRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void test_least_recently_used_model_is_unloaded_over_budget() throws Exception {
+        pool.acquire(NER, ENGLISH);
+        pool.release(NER, ENGLISH);
+        pool.acquire(NER, FRENCH);
+        pool.release(NER, FRENCH);
+        pool.acquire(NER, ENGLISH);
+        pool.release(NER, ENGLISH);
+
+        pool.acquire(NER, GERMAN);
+
+        assertThat(loader.unloaded).containsExactly("NER/FRENCH");
+        assertThat(pool.getStats().loaded_models).isEqualTo(2);
+        assertThat(pool.getStats().heap_used).isEqualTo(200);
+        assertThat(pool.getStats().evictions).isEqualTo(1);
+    }
+
+    @Test
+    public void test_model_in_use_is_not_unloaded() throws Exception {
+        pool.acquire(NER, ENGLISH);
+        pool.acquire(NER, FRENCH);
+        pool.acquire(NER, GERMAN);
+
+        assertThat(loader.unloaded).isEmpty();
+        assertThat(pool.getStats().heap_used).isEqualTo(300);
+
+        pool.release(NER, FRENCH);
+
+        assertThat(loader.unloaded).containsExactly("NER/FRENCH");
+    }
+
+    @Test
+    public void test_pipeline_and_ner_models_are_different_entries() throws Exception {
+        pool.acquire(null, ENGLISH);
+        pool.acquire(NER, ENGLISH);
+
+        assertThat(loader.loaded).containsExactly("PIPELINE/ENGLISH", "NER/ENGLISH");
+    }
+
+    @Test
+    public void test_concurrent_acquire_loads_once() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CoreNlpModelPool slowPool = new CoreNlpModelPool(new FakeLoader() {
+            @Override
+            public long load(NlpStage stage, Language language) throws InterruptedException {
+                loading.countDown();
+                release.await();
+                return super.load(stage, language);
+            }
+        }, 1000);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = executor.submit(() -> { slowPool.acquire(NER, ENGLISH); return null; });
+            loading.await();
+            Future<?> second = executor.submit(() -> { slowPool.acquire(NER, ENGLISH); return null; });
+            release.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+
+            assertThat(slowPool.getStats().misses).isEqualTo(1);
+            assertThat(slowPool.getStats().hits).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_failed_load_is_retried() throws Exception {
+        CoreNlpModelPool failingPool = new CoreNlpModelPool(new FakeLoader() {
+            private boolean failed = false;
+            @Override
+            public long load(NlpStage stage, Language language) throws InterruptedException {
+                if (!failed) {
+                    failed = true;
+                    throw new IllegalStateException("cannot load");
+                }
+                return super.load(stage, language);
+            }
+        }, 1000);
+        try {
+            failingPool.acquire(NER, ENGLISH);
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        failingPool.acquire(NER, ENGLISH);
+
+        assertThat(failingPool.getStats().loaded_models).isEqualTo(1);
+    }
+
+    static class FakeLoader implements CoreNlpModelPool.ModelLoader {
+        final List<String> loaded = new ArrayList<>();
+        final List<String> unloaded = new ArrayList<>();
+
+        @Override
+        public long load(NlpStage stage, Language language) throws InterruptedException {
+            loaded.add((stage == null ? "PIPELINE" : stage.name()) + "/" + language.name());
+            return 100;
+        }
+
+        @Override
+        public void unload(NlpStage stage, Language language) {
+            unloaded.add((stage == null ? "PIPELINE" : stage.name()) + "/" + language.name());
+        }
+    }
+}